@@ -0,0 +1,99 @@
+/**
+ * Measures the CPU time spent on the WebRTC audio threads.
+ * <p>
+ * Capture-side processing (AEC, NS, AGC, high-pass filter) runs on the audio
+ * record thread and playout on the audio track thread, so their summed CPU
+ * time is a good proxy for what a given set of audio options costs on a
+ * device. Times are read from /proc/self/task, no extra permission needed.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class AudioCpuMonitor {
+    private static final String[] AUDIO_THREAD_PREFIXES = {"AudioRecord", "AudioTrack"};
+
+    private final long clockTicksPerSecond;
+    private long baselineCpuMs;
+    private long baselineWallMs;
+
+    public AudioCpuMonitor() {
+        long ticks = 100;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ticks = Os.sysconf(OsConstants._SC_CLK_TCK);
+        }
+        clockTicksPerSecond = ticks > 0 ? ticks : 100;
+        reset();
+    }
+
+    /*
+     * Starts a new measurement window, typically after the audio options changed.
+     */
+    public void reset() {
+        baselineCpuMs = readAudioThreadCpuMs();
+        baselineWallMs = SystemClock.elapsedRealtime();
+    }
+
+    public long getCpuMs() {
+        return Math.max(0, readAudioThreadCpuMs() - baselineCpuMs);
+    }
+
+    public long getWallMs() {
+        return SystemClock.elapsedRealtime() - baselineWallMs;
+    }
+
+    private long readAudioThreadCpuMs() {
+        File[] tasks = new File("/proc/self/task").listFiles();
+        if (tasks == null) {
+            return 0;
+        }
+        long ticks = 0;
+        for (File task : tasks) {
+            ticks += readAudioThreadTicks(new File(task, "stat"));
+        }
+        return ticks * 1000 / clockTicksPerSecond;
+    }
+
+    private long readAudioThreadTicks(File stat) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(stat))) {
+            String line = reader.readLine();
+            if (line == null) {
+                return 0;
+            }
+            // Format: pid (comm) state ... with utime and stime as fields 14 and 15
+            int open = line.indexOf('(');
+            int close = line.lastIndexOf(')');
+            if (open < 0 || close < open) {
+                return 0;
+            }
+            String name = line.substring(open + 1, close);
+            if (!isAudioThread(name)) {
+                return 0;
+            }
+            String[] fields = line.substring(close + 2).split(" ");
+            // fields[0] is field 3 (state), so utime and stime are at 11 and 12
+            return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        } catch (IOException | RuntimeException e) {
+            // Threads can exit while being read
+            return 0;
+        }
+    }
+
+    private static boolean isAudioThread(String name) {
+        for (String prefix : AUDIO_THREAD_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Audio device module settings applied before the first audio track is created.
+ * <p>
+ * The WebRTC voice engine has two playout/recording backends: OpenSL ES and the
+ * Java AudioTrack/AudioRecord path. It works in 10 ms buffers, so the sample
+ * rate also sets the buffer size. These settings are process wide and take
+ * effect the next time the audio device starts.
+ */
+
+package com.twiliorn.library;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Build;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import org.webrtc.voiceengine.WebRtcAudioManager;
+import org.webrtc.voiceengine.WebRtcAudioUtils;
+
+public class AudioDeviceConfig {
+    static final String BACKEND_OPENSLES = "opensles";
+    static final String BACKEND_JAVA = "java";
+
+    String backend = null;
+    int sampleRate = 0;
+
+    public static AudioDeviceConfig fromReadableMap(ReadableMap map) {
+        AudioDeviceConfig config = new AudioDeviceConfig();
+        if (map == null) {
+            return config;
+        }
+        if (map.hasKey("backend") && !map.isNull("backend")) {
+            config.backend = map.getString("backend");
+        }
+        if (map.hasKey("sampleRate") && !map.isNull("sampleRate")) {
+            config.sampleRate = map.getInt("sampleRate");
+        }
+        return config;
+    }
+
+    /*
+     * Leaves the global defaults alone for anything that was not configured, so
+     * disableOpenSLES keeps working on its own.
+     */
+    public void apply() {
+        if (BACKEND_JAVA.equals(backend)) {
+            WebRtcAudioManager.setBlacklistDeviceForOpenSLESUsage(true);
+        } else if (BACKEND_OPENSLES.equals(backend)) {
+            WebRtcAudioManager.setBlacklistDeviceForOpenSLESUsage(false);
+        }
+        if (sampleRate > 0) {
+            WebRtcAudioUtils.setDefaultSampleRateHz(sampleRate);
+        }
+    }
+
+    /*
+     * What the device reports for its low latency output path.
+     */
+    public static WritableMap describeDevice(Context context) {
+        WritableMap result = new WritableNativeMap();
+        result.putString("deviceModel", Build.MANUFACTURER + " " + Build.MODEL);
+        result.putInt("nativeSampleRate", getNativeSampleRate(context));
+        result.putInt("outputFramesPerBuffer", getOutputFramesPerBuffer(context));
+        result.putBoolean("lowLatencyOutput",
+                context.getPackageManager().hasSystemFeature("android.hardware.audio.low_latency"));
+        return result;
+    }
+
+    static int getNativeSampleRate(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            String value = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+            if (value != null) {
+                try {
+                    return Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    // fall through to the default
+                }
+            }
+        }
+        return 44100;
+    }
+
+    static int getOutputFramesPerBuffer(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            String value = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER);
+            if (value != null) {
+                try {
+                    return Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    // fall through to the default
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Measures the audio round-trip latency of the device by playing a short pulse
+ * and listening for it on the microphone.
+ * <p>
+ * Meant to run before joining a room, since it needs the microphone and the
+ * speaker for itself. Results are cached per device model so the probe only
+ * runs once per model unless forced.
+ */
+
+package com.twiliorn.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.AudioTrack;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Arrays;
+
+public class AudioLatencyProbe {
+    private static final String TAG = "AudioLatencyProbe";
+    private static final String PREFERENCES_NAME = "TwilioAudioLatency";
+
+    private static final int ATTEMPTS = 3;
+    private static final int PULSE_MS = 5;
+    private static final int PULSE_FREQUENCY_HZ = 1000;
+    private static final int SETTLE_MS = 150;
+    private static final int LISTEN_MS = 1000;
+    private static final int MIN_THRESHOLD = 3000;
+
+    public interface Listener {
+        /*
+         * roundTripMs is negative when error is set.
+         */
+        void onResult(int roundTripMs, boolean cached, String error);
+    }
+
+    private static volatile boolean running = false;
+
+    private AudioLatencyProbe() {
+    }
+
+    public static int getCachedRoundTripMs(Context context) {
+        return preferences(context).getInt(deviceKey(), -1);
+    }
+
+    public static void measure(final Context context, boolean force, final Listener listener) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        int cached = getCachedRoundTripMs(context);
+        if (cached >= 0 && !force) {
+            listener.onResult(cached, true, null);
+            return;
+        }
+        if (running) {
+            listener.onResult(-1, false, "A latency measurement is already running");
+            return;
+        }
+        running = true;
+        new Thread(() -> {
+            int result = -1;
+            String error = null;
+            try {
+                result = measureMedian(AudioDeviceConfig.getNativeSampleRate(context));
+                if (result < 0) {
+                    error = "Pulse was not detected, is the volume up?";
+                } else {
+                    preferences(context).edit().putInt(deviceKey(), result).apply();
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Latency measurement failed", e);
+                error = e.getMessage();
+            } finally {
+                running = false;
+            }
+            final int roundTripMs = result;
+            final String errorMessage = error;
+            mainHandler.post(() -> listener.onResult(roundTripMs, false, errorMessage));
+        }, TAG).start();
+    }
+
+    private static int measureMedian(int sampleRate) {
+        int[] results = new int[ATTEMPTS];
+        int found = 0;
+        for (int i = 0; i < ATTEMPTS; i++) {
+            int roundTripMs = measureOnce(sampleRate);
+            if (roundTripMs >= 0) {
+                results[found++] = roundTripMs;
+            }
+        }
+        if (found == 0) {
+            return -1;
+        }
+        int[] valid = Arrays.copyOf(results, found);
+        Arrays.sort(valid);
+        return valid[found / 2];
+    }
+
+    /*
+     * The pulse is timed from the moment it is handed to AudioTrack to the moment its first
+     * sample shows up in a recorded chunk, which is what the voice engine experiences.
+     */
+    private static int measureOnce(int sampleRate) {
+        int recordBufferSize = Math.max(
+                AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT),
+                sampleRate / 50 * 2);
+        int trackBufferSize = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (recordBufferSize <= 0 || trackBufferSize <= 0) {
+            throw new IllegalStateException("Unsupported sample rate " + sampleRate);
+        }
+
+        // MIC rather than VOICE_COMMUNICATION, echo cancellation would remove the pulse
+        AudioRecord record = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, recordBufferSize);
+        AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate,
+                AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT, trackBufferSize, AudioTrack.MODE_STREAM);
+        try {
+            if (record.getState() != AudioRecord.STATE_INITIALIZED || track.getState() != AudioTrack.STATE_INITIALIZED) {
+                throw new IllegalStateException("Unable to open the audio device");
+            }
+            short[] chunk = new short[sampleRate / 100];
+            record.startRecording();
+            track.play();
+
+            // Learn the noise floor before sending the pulse
+            long settleUntil = System.nanoTime() + SETTLE_MS * 1000000L;
+            int noiseFloor = 0;
+            while (System.nanoTime() < settleUntil) {
+                int read = record.read(chunk, 0, chunk.length);
+                for (int i = 0; i < read; i++) {
+                    noiseFloor = Math.max(noiseFloor, Math.abs(chunk[i]));
+                }
+            }
+            int threshold = Math.max(MIN_THRESHOLD, noiseFloor * 4);
+
+            short[] pulse = buildPulse(sampleRate);
+            long pulseWrittenAt = System.nanoTime();
+            track.write(pulse, 0, pulse.length);
+
+            long listenUntil = pulseWrittenAt + LISTEN_MS * 1000000L;
+            while (System.nanoTime() < listenUntil) {
+                int read = record.read(chunk, 0, chunk.length);
+                long readReturnedAt = System.nanoTime();
+                for (int i = 0; i < read; i++) {
+                    if (Math.abs(chunk[i]) >= threshold) {
+                        // The last sample of the chunk was captured about when read returned
+                        long sampleAt = readReturnedAt - (read - i) * 1000000000L / sampleRate;
+                        return (int) Math.max(0, (sampleAt - pulseWrittenAt) / 1000000L);
+                    }
+                }
+            }
+            return -1;
+        } finally {
+            try {
+                record.stop();
+                track.stop();
+            } catch (IllegalStateException e) {
+                // Not started
+            }
+            record.release();
+            track.release();
+        }
+    }
+
+    private static short[] buildPulse(int sampleRate) {
+        short[] pulse = new short[sampleRate * PULSE_MS / 1000];
+        for (int i = 0; i < pulse.length; i++) {
+            pulse[i] = (short) (Short.MAX_VALUE * 0.9 * Math.sin(2 * Math.PI * PULSE_FREQUENCY_HZ * i / sampleRate));
+        }
+        return pulse;
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String deviceKey() {
+        return Build.MANUFACTURER + " " + Build.MODEL;
+    }
+}
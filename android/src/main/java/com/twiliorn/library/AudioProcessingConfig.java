@@ -0,0 +1,80 @@
+/**
+ * Audio processing switches for the local audio track.
+ * <p>
+ * The software stages map onto the SDK AudioOptions. The hardware flags pick
+ * the device's built-in echo canceler and noise suppressor over the WebRTC
+ * software implementation, which only takes effect when recording starts.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Build;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.AudioOptions;
+
+import org.webrtc.voiceengine.WebRtcAudioUtils;
+
+public class AudioProcessingConfig {
+    boolean echoCancellation = true;
+    boolean noiseSuppression = true;
+    boolean autoGainControl = true;
+    boolean highpassFilter = true;
+    boolean typingDetection = true;
+    boolean hardwareEchoCancellation = true;
+    boolean hardwareNoiseSuppression = true;
+
+    public static AudioProcessingConfig fromReadableMap(ReadableMap map) {
+        AudioProcessingConfig config = new AudioProcessingConfig();
+        if (map == null) {
+            return config;
+        }
+        config.echoCancellation = getBoolean(map, "echoCancellation", config.echoCancellation);
+        config.noiseSuppression = getBoolean(map, "noiseSuppression", config.noiseSuppression);
+        config.autoGainControl = getBoolean(map, "autoGainControl", config.autoGainControl);
+        config.highpassFilter = getBoolean(map, "highpassFilter", config.highpassFilter);
+        config.typingDetection = getBoolean(map, "typingDetection", config.typingDetection);
+        config.hardwareEchoCancellation = getBoolean(map, "hardwareEchoCancellation", config.hardwareEchoCancellation);
+        config.hardwareNoiseSuppression = getBoolean(map, "hardwareNoiseSuppression", config.hardwareNoiseSuppression);
+        return config;
+    }
+
+    private static boolean getBoolean(ReadableMap map, String key, boolean fallback) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getBoolean(key) : fallback;
+    }
+
+    public AudioOptions toAudioOptions() {
+        return new AudioOptions.Builder()
+                .echoCancellation(echoCancellation)
+                .noiseSuppression(noiseSuppression)
+                .autoGainControl(autoGainControl)
+                .highpassFilter(highpassFilter)
+                .typingDetection(typingDetection)
+                .build();
+    }
+
+    /*
+     * Selects hardware or software AEC/NS for the next time the audio device starts.
+     */
+    public void applyAudioEffects() {
+        WebRtcAudioUtils.setWebRtcBasedAcousticEchoCanceler(!hardwareEchoCancellation);
+        WebRtcAudioUtils.setWebRtcBasedNoiseSuppressor(!hardwareNoiseSuppression);
+    }
+
+    public WritableMap toWritableMap() {
+        WritableMap map = new WritableNativeMap();
+        map.putBoolean("echoCancellation", echoCancellation);
+        map.putBoolean("noiseSuppression", noiseSuppression);
+        map.putBoolean("autoGainControl", autoGainControl);
+        map.putBoolean("highpassFilter", highpassFilter);
+        map.putBoolean("typingDetection", typingDetection);
+        map.putBoolean("hardwareEchoCancellation", hardwareEchoCancellation);
+        map.putBoolean("hardwareNoiseSuppression", hardwareNoiseSuppression);
+        map.putBoolean("hardwareEchoCancellationAvailable", WebRtcAudioUtils.isAcousticEchoCancelerSupported());
+        map.putBoolean("hardwareNoiseSuppressionAvailable", WebRtcAudioUtils.isNoiseSuppressorSupported());
+        map.putString("deviceModel", Build.MANUFACTURER + " " + Build.MODEL);
+        return map;
+    }
+}
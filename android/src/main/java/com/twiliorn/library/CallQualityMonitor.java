@@ -0,0 +1,246 @@
+/**
+ * Turns periodic stats reports into per-track and per-call quality scores and
+ * only reports the moments a score crosses into another band.
+ * <p>
+ * Scores are on a MOS-like 1 to 5 scale. Audio uses a simplified E-model on
+ * jitter, packet loss and round trip time. Video uses frame rate against the
+ * target and packet loss. Steady calls produce no events at all.
+ */
+
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.LocalAudioTrackStats;
+import com.twilio.video.LocalVideoTrackStats;
+import com.twilio.video.RemoteAudioTrackStats;
+import com.twilio.video.RemoteTrackStats;
+import com.twilio.video.RemoteVideoTrackStats;
+import com.twilio.video.StatsReport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CallQualityMonitor {
+    static final String CALL_SCOPE = "call";
+    static final String TRACK_SCOPE = "track";
+    static final String KIND_AUDIO = "audio";
+    static final String KIND_VIDEO = "video";
+
+    private static final double[] DEFAULT_THRESHOLDS = {2.5, 3.1, 3.6, 4.0};
+    // A score has to move this far past a threshold before the band changes
+    private static final double HYSTERESIS = 0.1;
+    private static final int DEFAULT_TARGET_FPS = 15;
+
+    private final double[] thresholds;
+    private final int targetFps;
+    private final Map<String, TrackState> tracks = new HashMap<>();
+    private int callBand = -1;
+    private double callScore = 0;
+
+    public CallQualityMonitor(ReadableArray thresholds, int targetFps) {
+        if (thresholds == null || thresholds.size() == 0) {
+            this.thresholds = DEFAULT_THRESHOLDS;
+        } else {
+            this.thresholds = new double[thresholds.size()];
+            for (int i = 0; i < thresholds.size(); i++) {
+                this.thresholds[i] = thresholds.getDouble(i);
+            }
+        }
+        this.targetFps = targetFps > 0 ? targetFps : DEFAULT_TARGET_FPS;
+    }
+
+    public double getCallScore() {
+        return callScore;
+    }
+
+    public int getCallBand() {
+        return callBand;
+    }
+
+    /*
+     * Returns one event per track or call score that changed band since the previous report.
+     */
+    public List<WritableMap> process(List<StatsReport> statsReports) {
+        List<WritableMap> events = new ArrayList<>();
+
+        long roundTripTime = 0;
+        for (StatsReport sr : statsReports) {
+            for (LocalAudioTrackStats s : sr.getLocalAudioTrackStats()) {
+                roundTripTime = Math.max(roundTripTime, s.roundTripTime);
+            }
+            for (LocalVideoTrackStats s : sr.getLocalVideoTrackStats()) {
+                roundTripTime = Math.max(roundTripTime, s.roundTripTime);
+            }
+        }
+
+        Set<String> seen = new HashSet<>();
+        double audioTotal = 0;
+        int audioCount = 0;
+        double videoTotal = 0;
+        int videoCount = 0;
+        for (StatsReport sr : statsReports) {
+            for (RemoteAudioTrackStats s : sr.getRemoteAudioTrackStats()) {
+                TrackState state = trackState(s.trackSid, KIND_AUDIO);
+                double loss = state.updateLoss(s);
+                state.jitter = s.jitter;
+                state.roundTripTime = roundTripTime;
+                state.score = audioScore(s.jitter, loss, roundTripTime);
+                seen.add(s.trackSid);
+                audioTotal += state.score;
+                audioCount++;
+                addCrossing(events, state);
+            }
+            for (RemoteVideoTrackStats s : sr.getRemoteVideoTrackStats()) {
+                TrackState state = trackState(s.trackSid, KIND_VIDEO);
+                double loss = state.updateLoss(s);
+                state.frameRate = s.frameRate;
+                state.roundTripTime = roundTripTime;
+                state.score = videoScore(s.frameRate, loss);
+                seen.add(s.trackSid);
+                videoTotal += state.score;
+                videoCount++;
+                addCrossing(events, state);
+            }
+        }
+
+        // Tracks that went away start over if they come back
+        Iterator<String> iterator = tracks.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!seen.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+
+        // Audio drives perceived call quality, video only counts in video-only calls
+        if (audioCount > 0 || videoCount > 0) {
+            callScore = audioCount > 0 ? audioTotal / audioCount : videoTotal / videoCount;
+            int band = bandFor(callScore, callBand);
+            if (band != callBand) {
+                WritableMap event = new WritableNativeMap();
+                event.putString("scope", CALL_SCOPE);
+                event.putDouble("score", callScore);
+                event.putInt("band", band);
+                event.putInt("previousBand", callBand);
+                event.putDouble("roundTripTime", roundTripTime);
+                events.add(event);
+                callBand = band;
+            }
+        }
+        return events;
+    }
+
+    public void reset() {
+        tracks.clear();
+        callBand = -1;
+        callScore = 0;
+    }
+
+    private TrackState trackState(String trackSid, String kind) {
+        TrackState state = tracks.get(trackSid);
+        if (state == null) {
+            state = new TrackState(trackSid, kind);
+            tracks.put(trackSid, state);
+        }
+        return state;
+    }
+
+    private void addCrossing(List<WritableMap> events, TrackState state) {
+        int band = bandFor(state.score, state.band);
+        if (band == state.band) {
+            return;
+        }
+        WritableMap event = new WritableNativeMap();
+        event.putString("scope", TRACK_SCOPE);
+        event.putString("trackSid", state.trackSid);
+        event.putString("kind", state.kind);
+        event.putDouble("score", state.score);
+        event.putInt("band", band);
+        event.putInt("previousBand", state.band);
+        event.putDouble("packetLoss", state.packetLoss);
+        event.putDouble("roundTripTime", state.roundTripTime);
+        if (KIND_AUDIO.equals(state.kind)) {
+            event.putInt("jitter", state.jitter);
+        } else {
+            event.putInt("frameRate", state.frameRate);
+        }
+        events.add(event);
+        state.band = band;
+    }
+
+    /*
+     * Band is the number of thresholds at or below the score. Around the current band the
+     * thresholds are widened by HYSTERESIS so a score sitting on a threshold does not flap.
+     */
+    int bandFor(double score, int currentBand) {
+        int band = 0;
+        for (int i = 0; i < thresholds.length; i++) {
+            double threshold = thresholds[i];
+            if (currentBand >= 0) {
+                threshold += i < currentBand ? -HYSTERESIS : HYSTERESIS;
+            }
+            if (score >= threshold) {
+                band = i + 1;
+            }
+        }
+        return band;
+    }
+
+    static double audioScore(int jitterMs, double packetLoss, long roundTripTimeMs) {
+        double effectiveLatency = roundTripTimeMs / 2.0 + jitterMs * 2.0 + 10;
+        double r = 93.2;
+        if (effectiveLatency < 160) {
+            r -= effectiveLatency / 40;
+        } else {
+            r -= (effectiveLatency - 120) / 10;
+        }
+        r -= packetLoss * 100 * 2.5;
+        r = Math.max(0, Math.min(100, r));
+        double mos = 1 + 0.035 * r + 0.000007 * r * (r - 60) * (100 - r);
+        return Math.max(1, Math.min(5, mos));
+    }
+
+    double videoScore(int frameRate, double packetLoss) {
+        double fpsFactor = Math.min(1, frameRate / (double) targetFps);
+        double lossFactor = 1 - Math.min(1, packetLoss * 5);
+        return 1 + 4 * fpsFactor * lossFactor;
+    }
+
+    private static class TrackState {
+        final String trackSid;
+        final String kind;
+        int band = -1;
+        double score;
+        double packetLoss;
+        int jitter;
+        int frameRate;
+        long roundTripTime;
+        private int lastPacketsLost = -1;
+        private int lastPacketsReceived = -1;
+
+        TrackState(String trackSid, String kind) {
+            this.trackSid = trackSid;
+            this.kind = kind;
+        }
+
+        /*
+         * Loss ratio over the interval since the previous report, the counters are cumulative.
+         */
+        double updateLoss(RemoteTrackStats s) {
+            if (lastPacketsLost >= 0) {
+                int lost = Math.max(0, s.packetsLost - lastPacketsLost);
+                int received = Math.max(0, s.packetsReceived - lastPacketsReceived);
+                packetLoss = lost + received > 0 ? lost / (double) (lost + received) : 0;
+            }
+            lastPacketsLost = s.packetsLost;
+            lastPacketsReceived = s.packetsReceived;
+            return packetLoss;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Camera capturer that uses Camera2Capturer where the device supports it and
+ * falls back to the legacy CameraCapturer everywhere else.
+ */
+
+package com.twiliorn.library;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.util.Log;
+
+import com.twilio.video.Camera2Capturer;
+import com.twilio.video.CameraCapturer;
+import com.twilio.video.VideoCapturer;
+import com.twilio.video.VideoFormat;
+
+import java.util.List;
+
+public class CameraCapturerCompat {
+    private static final String TAG = "CameraCapturerCompat";
+
+    public interface Listener {
+        void onFirstFrameAvailable();
+
+        void onCameraSwitched();
+
+        void onError(String message);
+    }
+
+    private CameraCapturer camera1Capturer;
+    private Camera2Capturer camera2Capturer;
+    private String frontCameraId;
+    private String backCameraId;
+    private CameraCapturer.CameraSource cameraSource;
+
+    private CameraCapturerCompat() {
+    }
+
+    /*
+     * Returns null when the requested camera cannot be opened.
+     */
+    public static CameraCapturerCompat create(Context context,
+                                              CameraCapturer.CameraSource cameraSource,
+                                              boolean preferCamera2,
+                                              final Listener listener) {
+        CameraCapturerCompat compat = new CameraCapturerCompat();
+        compat.cameraSource = cameraSource;
+        try {
+            if (preferCamera2 && Camera2Capturer.isSupported(context) && compat.findCamera2Ids(context)) {
+                String cameraId = cameraSource == CameraCapturer.CameraSource.FRONT_CAMERA ?
+                        compat.frontCameraId : compat.backCameraId;
+                if (cameraId != null) {
+                    compat.camera2Capturer = new Camera2Capturer(context, cameraId, new Camera2Capturer.Listener() {
+                        @Override
+                        public void onFirstFrameAvailable() {
+                            listener.onFirstFrameAvailable();
+                        }
+
+                        @Override
+                        public void onCameraSwitched(String newCameraId) {
+                            listener.onCameraSwitched();
+                        }
+
+                        @Override
+                        public void onError(Camera2Capturer.Exception exception) {
+                            listener.onError(exception.getMessage());
+                        }
+                    });
+                    return compat;
+                }
+            }
+            compat.camera1Capturer = new CameraCapturer(context, cameraSource, new CameraCapturer.Listener() {
+                @Override
+                public void onFirstFrameAvailable() {
+                    listener.onFirstFrameAvailable();
+                }
+
+                @Override
+                public void onCameraSwitched() {
+                    listener.onCameraSwitched();
+                }
+
+                @Override
+                public void onError(int errorCode) {
+                    listener.onError("Camera error " + errorCode);
+                }
+            });
+            return compat;
+        } catch (Exception e) {
+            Log.i(TAG, "Unable to open camera", e);
+            return null;
+        }
+    }
+
+    public VideoCapturer getVideoCapturer() {
+        return camera2Capturer != null ? camera2Capturer : camera1Capturer;
+    }
+
+    public boolean isCamera2() {
+        return camera2Capturer != null;
+    }
+
+    public List<VideoFormat> getSupportedFormats() {
+        return getVideoCapturer().getSupportedFormats();
+    }
+
+    public CameraCapturer.CameraSource getCameraSource() {
+        if (camera1Capturer != null) {
+            return camera1Capturer.getCameraSource();
+        }
+        return cameraSource;
+    }
+
+    /*
+     * Returns false when no switch was started, the listener is not called in that case.
+     */
+    public boolean switchCamera() {
+        if (camera1Capturer != null) {
+            camera1Capturer.switchCamera();
+            return true;
+        }
+        if (cameraSource == CameraCapturer.CameraSource.FRONT_CAMERA && backCameraId != null) {
+            cameraSource = CameraCapturer.CameraSource.BACK_CAMERA;
+            camera2Capturer.switchCamera(backCameraId);
+            return true;
+        } else if (cameraSource == CameraCapturer.CameraSource.BACK_CAMERA && frontCameraId != null) {
+            cameraSource = CameraCapturer.CameraSource.FRONT_CAMERA;
+            camera2Capturer.switchCamera(frontCameraId);
+            return true;
+        }
+        return false;
+    }
+
+    public void stopCapture() {
+        getVideoCapturer().stopCapture();
+    }
+
+    private boolean findCamera2Ids(Context context) throws CameraAccessException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        if (cameraManager == null) {
+            return false;
+        }
+        for (String cameraId : cameraManager.getCameraIdList()) {
+            Integer facing = cameraManager.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.LENS_FACING);
+            if (facing == null) {
+                continue;
+            }
+            if (facing == CameraCharacteristics.LENS_FACING_FRONT && frontCameraId == null) {
+                frontCameraId = cameraId;
+            } else if (facing == CameraCharacteristics.LENS_FACING_BACK && backCameraId == null) {
+                backCameraId = cameraId;
+            }
+        }
+        return frontCameraId != null || backCameraId != null;
+    }
+}
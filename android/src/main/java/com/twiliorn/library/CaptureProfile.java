@@ -0,0 +1,132 @@
+/**
+ * Best local capture format for this device, probed once and cached.
+ * <p>
+ * Probing opens the camera parameters and walks the codec list, which is slow on
+ * some devices. The result is kept in SharedPreferences keyed by the build
+ * fingerprint, so later startups skip it until the OS is updated.
+ */
+
+package com.twiliorn.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+
+import com.twilio.video.VideoDimensions;
+import com.twilio.video.VideoFormat;
+
+import java.util.List;
+
+public class CaptureProfile {
+    private static final String PREFERENCES_NAME = "TwilioCaptureProfile";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_WIDTH = "width";
+    private static final String KEY_HEIGHT = "height";
+    private static final String KEY_FPS = "fps";
+    private static final String KEY_CAMERA2 = "camera2";
+
+    private static final String VP8_MIME_TYPE = "video/x-vnd.on2.vp8";
+    static final int MIN_FPS = 5;
+    static final int MAX_FPS = 15;
+
+    public final int width;
+    public final int height;
+    public final int fps;
+    public final boolean camera2;
+
+    CaptureProfile(int width, int height, int fps, boolean camera2) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.camera2 = camera2;
+    }
+
+    public VideoDimensions getDimensions() {
+        return new VideoDimensions(width, height);
+    }
+
+    /*
+     * Returns the cached profile, or null if this device build has not been probed yet.
+     */
+    public static CaptureProfile load(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (!Build.FINGERPRINT.equals(preferences.getString(KEY_FINGERPRINT, null))) {
+            return null;
+        }
+        return new CaptureProfile(
+                preferences.getInt(KEY_WIDTH, 0),
+                preferences.getInt(KEY_HEIGHT, 0),
+                preferences.getInt(KEY_FPS, MAX_FPS),
+                preferences.getBoolean(KEY_CAMERA2, false));
+    }
+
+    public void save(Context context) {
+        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                .putInt(KEY_WIDTH, width)
+                .putInt(KEY_HEIGHT, height)
+                .putInt(KEY_FPS, fps)
+                .putBoolean(KEY_CAMERA2, camera2)
+                .apply();
+    }
+
+    public static void clear(Context context) {
+        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+
+    /*
+     * Picks the smallest native camera format that covers CIF and that the hardware encoder
+     * can take, falling back to the largest format below CIF. Capturing a native format means
+     * the SDK does not need to crop or scale before encoding. Returns null if the camera
+     * reported no formats.
+     */
+    public static CaptureProfile probe(List<VideoFormat> formats, boolean camera2) {
+        VideoDimensions target = VideoDimensions.CIF_VIDEO_DIMENSIONS;
+        MediaCodecInfo.VideoCapabilities encoder = findHardwareEncoder();
+
+        VideoFormat above = null;
+        VideoFormat below = null;
+        for (VideoFormat format : formats) {
+            int w = format.dimensions.width;
+            int h = format.dimensions.height;
+            if (encoder != null && !encoder.isSizeSupported(w, h)) {
+                continue;
+            }
+            if (w >= target.width && h >= target.height) {
+                if (above == null || w * h < above.dimensions.width * above.dimensions.height) {
+                    above = format;
+                }
+            } else if (below == null || w * h > below.dimensions.width * below.dimensions.height) {
+                below = format;
+            }
+        }
+
+        VideoFormat best = above != null ? above : below;
+        if (best == null) {
+            return null;
+        }
+        int fps = Math.max(MIN_FPS, Math.min(MAX_FPS, best.framerate));
+        return new CaptureProfile(best.dimensions.width, best.dimensions.height, fps, camera2);
+    }
+
+    private static MediaCodecInfo.VideoCapabilities findHardwareEncoder() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            // Software encoders take any size, only hardware ones constrain the choice
+            if (!info.isEncoder() || info.getName().startsWith("OMX.google.") || info.getName().startsWith("c2.android.")) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (VP8_MIME_TYPE.equalsIgnoreCase(type)) {
+                    return info.getCapabilitiesForType(type).getVideoCapabilities();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Breaks the time from connect to flowing media down into its steps.
+ * <p>
+ * The SDK has no ICE callbacks, so the ICE steps are read off stats reports
+ * polled every POLL_INTERVAL_MS from the moment connect is called: the first
+ * local candidate seen, the first relay candidate seen and the first active
+ * candidate pair. All times are milliseconds since connect and are accurate
+ * to about one poll interval. The selected pair's candidate types are looked
+ * up by IP, stats do not carry candidate ids on both sides.
+ */
+
+package com.twiliorn.library;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.IceCandidatePairStats;
+import com.twilio.video.IceCandidateStats;
+import com.twilio.video.StatsReport;
+
+import java.util.List;
+
+public class ConnectionSetupTimer {
+    static final int POLL_INTERVAL_MS = 100;
+    // Rooms without a media connection yet, e.g. an empty peer-to-peer room, give up here
+    private static final int TIMEOUT_MS = 20000;
+
+    private static final String CANDIDATE_TYPE_RELAY = "relay";
+
+    private final String transportPolicy;
+    private final int iceServerCount;
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private long connectedMs = -1;
+    private long firstCandidateMs = -1;
+    private long firstRelayCandidateMs = -1;
+    private long iceConnectedMs = -1;
+    private boolean timedOut = false;
+
+    private String localCandidateType;
+    private String remoteCandidateType;
+    private String protocol;
+    private String relayProtocol;
+    private double roundTripTimeMs = -1;
+
+    public ConnectionSetupTimer(IceConfig iceConfig) {
+        this.transportPolicy = iceConfig != null ? iceConfig.getTransportPolicy() : IceConfig.TRANSPORT_POLICY_ALL;
+        this.iceServerCount = iceConfig != null ? iceConfig.getServerCount() : 0;
+    }
+
+    public void onConnected() {
+        if (connectedMs < 0) {
+            connectedMs = elapsedMs();
+        }
+    }
+
+    /*
+     * Returns true once the timings are complete, either with an active candidate pair or
+     * because the timeout passed.
+     */
+    public boolean process(List<StatsReport> statsReports) {
+        long now = elapsedMs();
+        for (StatsReport report : statsReports) {
+            for (IceCandidateStats candidate : report.getIceCandidateStats()) {
+                if (candidate.isRemote || candidate.deleted) {
+                    continue;
+                }
+                if (firstCandidateMs < 0) {
+                    firstCandidateMs = now;
+                }
+                if (firstRelayCandidateMs < 0 && CANDIDATE_TYPE_RELAY.equals(candidate.candidateType)) {
+                    firstRelayCandidateMs = now;
+                }
+            }
+            for (IceCandidatePairStats pair : report.getIceCandidatePairStats()) {
+                if (!pair.activeCandidatePair) {
+                    continue;
+                }
+                iceConnectedMs = now;
+                relayProtocol = pair.relayProtocol;
+                roundTripTimeMs = pair.currentRoundTripTime * 1000;
+                for (IceCandidateStats candidate : report.getIceCandidateStats()) {
+                    if (candidate.isRemote && remoteCandidateType == null
+                            && candidate.ip != null && candidate.ip.equals(pair.remoteCandidateIp)) {
+                        remoteCandidateType = candidate.candidateType;
+                    } else if (!candidate.isRemote && localCandidateType == null
+                            && candidate.ip != null && candidate.ip.equals(pair.localCandidateIp)) {
+                        localCandidateType = candidate.candidateType;
+                        protocol = candidate.protocol;
+                    }
+                }
+                return true;
+            }
+        }
+        if (now >= TIMEOUT_MS) {
+            timedOut = true;
+            return true;
+        }
+        return false;
+    }
+
+    private long elapsedMs() {
+        return SystemClock.elapsedRealtime() - startedAt;
+    }
+
+    public WritableMap buildEvent() {
+        WritableMap event = new WritableNativeMap();
+        event.putString("transportPolicy", transportPolicy);
+        event.putInt("iceServers", iceServerCount);
+        putTiming(event, "connectedMs", connectedMs);
+        putTiming(event, "firstCandidateMs", firstCandidateMs);
+        putTiming(event, "firstRelayCandidateMs", firstRelayCandidateMs);
+        putTiming(event, "iceConnectedMs", iceConnectedMs);
+        if (firstCandidateMs >= 0 && iceConnectedMs >= 0) {
+            event.putDouble("connectivityChecksMs", iceConnectedMs - firstCandidateMs);
+        }
+        event.putBoolean("timedOut", timedOut);
+        if (iceConnectedMs >= 0) {
+            WritableMap pair = new WritableNativeMap();
+            pair.putString("localCandidateType", localCandidateType);
+            pair.putString("remoteCandidateType", remoteCandidateType);
+            pair.putString("protocol", protocol);
+            pair.putString("relayProtocol", relayProtocol);
+            pair.putBoolean("relayed", CANDIDATE_TYPE_RELAY.equals(localCandidateType)
+                    || CANDIDATE_TYPE_RELAY.equals(remoteCandidateType));
+            pair.putDouble("roundTripTimeMs", roundTripTimeMs);
+            event.putMap("selectedCandidatePair", pair);
+        }
+        return event;
+    }
+
+    private static void putTiming(WritableMap event, String key, long value) {
+        if (value >= 0) {
+            event.putDouble(key, value);
+        }
+    }
+}
@@ -9,8 +9,8 @@
 package com.twiliorn.library;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -21,13 +21,16 @@ import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.os.Build;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
 import android.util.Log;
 import android.view.View;
 
 import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeArray;
@@ -38,6 +41,7 @@ import com.twilio.video.AudioTrackPublication;
 import com.twilio.video.BaseTrackStats;
 import com.twilio.video.CameraCapturer;
 import com.twilio.video.ConnectOptions;
+import com.twilio.video.EncodingParameters;
 import com.twilio.video.LocalAudioTrack;
 import com.twilio.video.LocalAudioTrackPublication;
 import com.twilio.video.LocalAudioTrackStats;
@@ -69,6 +73,8 @@ import com.twilio.video.StatsReport;
 import com.twilio.video.TrackPublication;
 import com.twilio.video.TwilioException;
 import com.twilio.video.Video;
+import com.twilio.video.VideoCapturer;
+import com.twilio.video.VideoTrackPublication;
 import com.twilio.video.VideoConstraints;
 import com.twilio.video.VideoDimensions;
 
@@ -76,16 +82,31 @@ import org.webrtc.voiceengine.WebRtcAudioManager;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_ACTIVE_VIDEO_TRACKS_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_AUDIO_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_AUDIO_LATENCY_MEASURED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_AUDIO_PROCESSING_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CALL_QUALITY_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CAMERA_SWITCHED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CONNECTED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CONNECT_FAILURE;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DISCONNECTED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DOMINANT_SPEAKER_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_COMPRESSION_STATS;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_MESSAGE_RECEIVED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_REQUEST_RECEIVED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_TRANSFER_PROGRESS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CONNECTION_SETUP_TIMINGS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_WORKER_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DEVICE_PRESSURE_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_NETWORK_QUALITY_LEVELS_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_NETWORK_QUALITY_SUMMARY;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_RECONNECTED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_RECONNECTING;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ADDED_DATA_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ADDED_AUDIO_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ADDED_VIDEO_TRACK;
@@ -98,15 +119,45 @@ import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_E
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_REMOVED_DATA_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_REMOVED_AUDIO_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_REMOVED_VIDEO_TRACK;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PREPROCESSING_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_RENDERER_POOL_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_ROOM_SNAPSHOT;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_ROOM_STATE_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_SIMULATION_REPORT;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_STATS_RECEIVED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_VIDEO_CHANGED;
 
 public class CustomTwilioVideoView extends View implements LifecycleEventListener, AudioManager.OnAudioFocusChangeListener {
     private static final String TAG = "CustomTwilioVideoView";
-    private static final String DATA_TRACK_MESSAGE_THREAD_NAME = "DataTrackMessages";
     private boolean enableRemoteAudio = false;
     private boolean enableNetworkQualityReporting = false;
     private boolean isVideoEnabled = false;
+    private String localNetworkQualityVerbosity = NETWORK_QUALITY_VERBOSITY_MINIMAL;
+    private String remoteNetworkQualityVerbosity = NETWORK_QUALITY_VERBOSITY_MINIMAL;
+
+    static final String NETWORK_QUALITY_VERBOSITY_NONE = "none";
+    static final String NETWORK_QUALITY_VERBOSITY_MINIMAL = "minimal";
+    static final String NETWORK_QUALITY_VERBOSITY_DETAILED = "detailed";
+
+    /*
+     * What happens to the local video track when the app goes to the background.
+     * RELEASE unpublishes and releases the track (camera is freed, track is recreated on resume),
+     * PAUSE keeps it published but disabled, REDUCED keeps it live with a capped video bitrate.
+     */
+    static final String BACKGROUND_VIDEO_POLICY_RELEASE = "release";
+    static final String BACKGROUND_VIDEO_POLICY_PAUSE = "pause";
+    static final String BACKGROUND_VIDEO_POLICY_REDUCED = "reduced";
+    private static final int DEFAULT_BACKGROUND_VIDEO_BITRATE_KBPS = 150;
+
+    private String backgroundVideoPolicy = BACKGROUND_VIDEO_POLICY_RELEASE;
+    private int backgroundVideoBitrateKbps = DEFAULT_BACKGROUND_VIDEO_BITRATE_KBPS;
+    // Policy applied by the last onHostPause, null while in the foreground
+    private String backgroundedWithPolicy = null;
+    /*
+     * PAUSE and REDUCED keep the camera open in the background, where the system may take it
+     * away (Android 9+ does so for idle apps). Such a capturer cannot be re-enabled.
+     */
+    private boolean capturerFailedInBackground = false;
 
     @Retention(RetentionPolicy.SOURCE)
     @StringDef({Events.ON_CAMERA_SWITCHED,
@@ -129,7 +180,26 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
             Events.ON_PARTICIPANT_ENABLED_AUDIO_TRACK,
             Events.ON_PARTICIPANT_DISABLED_AUDIO_TRACK,
             Events.ON_STATS_RECEIVED,
-            Events.ON_NETWORK_QUALITY_LEVELS_CHANGED})
+            Events.ON_NETWORK_QUALITY_LEVELS_CHANGED,
+            Events.ON_NETWORK_QUALITY_SUMMARY,
+            Events.ON_RECONNECTING,
+            Events.ON_RECONNECTED,
+            Events.ON_DEVICE_PRESSURE_CHANGED,
+            Events.ON_AUDIO_PROCESSING_STATS,
+            Events.ON_AUDIO_LATENCY_MEASURED,
+            Events.ON_CALL_QUALITY_CHANGED,
+            Events.ON_RENDERER_POOL_STATS,
+            Events.ON_SIMULATION_REPORT,
+            Events.ON_PREPROCESSING_STATS,
+            Events.ON_ROOM_SNAPSHOT,
+            Events.ON_ROOM_STATE_CHANGED,
+            Events.ON_DOMINANT_SPEAKER_CHANGED,
+            Events.ON_ACTIVE_VIDEO_TRACKS_CHANGED,
+            Events.ON_DATATRACK_REQUEST_RECEIVED,
+            Events.ON_DATATRACK_COMPRESSION_STATS,
+            Events.ON_DATATRACK_TRANSFER_PROGRESS,
+            Events.ON_DATATRACK_WORKER_STATS,
+            Events.ON_CONNECTION_SETUP_TIMINGS})
     public @interface Events {
         String ON_CAMERA_SWITCHED = "onCameraSwitched";
         String ON_VIDEO_CHANGED = "onVideoChanged";
@@ -152,6 +222,25 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         String ON_PARTICIPANT_DISABLED_AUDIO_TRACK = "onParticipantDisabledAudioTrack";
         String ON_STATS_RECEIVED = "onStatsReceived";
         String ON_NETWORK_QUALITY_LEVELS_CHANGED = "onNetworkQualityLevelsChanged";
+        String ON_NETWORK_QUALITY_SUMMARY = "onNetworkQualitySummary";
+        String ON_RECONNECTING = "onRoomIsReconnecting";
+        String ON_RECONNECTED = "onRoomDidReconnect";
+        String ON_DEVICE_PRESSURE_CHANGED = "onDevicePressureChanged";
+        String ON_AUDIO_PROCESSING_STATS = "onAudioProcessingStats";
+        String ON_AUDIO_LATENCY_MEASURED = "onAudioLatencyMeasured";
+        String ON_CALL_QUALITY_CHANGED = "onCallQualityChanged";
+        String ON_RENDERER_POOL_STATS = "onRendererPoolStats";
+        String ON_SIMULATION_REPORT = "onSimulationReport";
+        String ON_PREPROCESSING_STATS = "onPreprocessingStats";
+        String ON_ROOM_SNAPSHOT = "onRoomSnapshot";
+        String ON_ROOM_STATE_CHANGED = "onRoomStateChanged";
+        String ON_DOMINANT_SPEAKER_CHANGED = "onDominantSpeakerDidChange";
+        String ON_ACTIVE_VIDEO_TRACKS_CHANGED = "onActiveVideoTracksChanged";
+        String ON_DATATRACK_REQUEST_RECEIVED = "onDataTrackRequestReceived";
+        String ON_DATATRACK_COMPRESSION_STATS = "onDataTrackCompressionStats";
+        String ON_DATATRACK_TRANSFER_PROGRESS = "onDataTrackTransferProgress";
+        String ON_DATATRACK_WORKER_STATS = "onDataTrackWorkerStats";
+        String ON_CONNECTION_SETUP_TIMINGS = "onConnectionSetupTimings";
     }
 
     private final ThemedReactContext themedReactContext;
@@ -162,43 +251,153 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     private Handler handler = new Handler();
 
     /*
-     * A Room represents communication between the client and one or more participants.
+     * Room, local video track, capturer and renderers, shared with the preview views.
      */
-    private static Room room;
+    private final TwilioVideoSession session;
+    private boolean released = false;
     private String roomName = null;
     private String accessToken = null;
     private LocalParticipant localParticipant;
 
+    private CaptureProfile captureProfile;
+
+    // Optional processing between the camera and the local video track
+    private final FramePreprocessor framePreprocessor = new FramePreprocessor();
+
     /*
-     * A VideoView receives frames from a local or remote video track and renders them
-     * to an associated view.
+     * Camera switch in progress: start time (0 when idle) and thumbnail frame count at that time.
      */
-    private static PatchedVideoView thumbnailVideoView;
-    private static LocalVideoTrack localVideoTrack;
+    private long cameraSwitchStartedAt = 0;
+    private long cameraSwitchStartFrames = 0;
+    // A switch that never reports back must not block later switches or keep the thumbnail frozen
+    private static final int CAMERA_SWITCH_TIMEOUT_MS = 5000;
+    private final Runnable cameraSwitchTimeout = () -> onCameraSwitchCompleted("Camera switch timed out");
+
+    /*
+     * Reacts to thermal, battery saver and memory pressure while connected, if enabled at connect.
+     */
+    private DevicePressureGovernor devicePressureGovernor;
+    private int pressureLevel = DevicePressureGovernor.LEVEL_NORMAL;
+    private static final int MODERATE_PRESSURE_VIDEO_BITRATE_KBPS = 400;
+    private static final int SEVERE_PRESSURE_VIDEO_BITRATE_KBPS = 150;
 
-    private static CameraCapturer cameraCapturer;
     private LocalAudioTrack localAudioTrack;
+    private AudioProcessingConfig audioProcessingConfig = new AudioProcessingConfig();
+    private final AudioCpuMonitor audioCpuMonitor = new AudioCpuMonitor();
     private AudioManager audioManager;
     private int previousAudioMode;
     private boolean disconnectedFromOnDestroy;
     private IntentFilter intentFilter;
     private BecomingNoisyReceiver myNoisyAudioStreamReceiver;
+    // The receiver is kept for the next call, only its registration follows the audio focus
+    private boolean noisyReceiverRegistered;
 
-      // Dedicated thread and handler for messages received from a RemoteDataTrack
-    private final HandlerThread dataTrackMessageThread =
-            new HandlerThread(DATA_TRACK_MESSAGE_THREAD_NAME);
+    // Shared worker thread for messages received from a RemoteDataTrack, see DataTrackWorker
     private Handler dataTrackMessageThreadHandler;
 
-    private LocalDataTrack localDataTrack;
+    // Read on the data track worker as well
+    private volatile LocalDataTrack localDataTrack;
+
+    // Request/response calls framed on the data track, settled on the data track thread
+    private DataTrackRpc dataTrackRpc;
+
+    // Chunked transfers of files and large strings, received into temp files
+    private DataTrackTransfers dataTrackTransfers;
+
+    // Opt-in deflate of large sendString messages, incoming compressed messages are always inflated
+    private final DataTrackCompressor dataTrackCompressor = new DataTrackCompressor();
+
+    // Scripted stand-in for a room, only set while load testing
+    private SimulatedRoomDriver simulatedRoomDriver;
+
+    // Recent network quality levels per participant sid
+    private final NetworkQualityHistory networkQualityHistory = new NetworkQualityHistory();
 
-    // Map used to map remote data tracks to remote participants
-    private final Map<RemoteDataTrack, RemoteParticipant> dataTrackRemoteParticipantMap =
-            new HashMap<>();
+    /*
+     * Participants, publications and network quality of the current room. With room snapshots
+     * on, JS gets it as one snapshot on connect and batched diffs after that, instead of an
+     * event per participant and track.
+     */
+    private static final int ROOM_STATE_DIFF_BATCH_MS = 50;
+    private final RoomStateCache roomStateCache = new RoomStateCache();
+    private boolean enableRoomSnapshot = false;
+    private boolean roomStateFlushScheduled = false;
+    private final Runnable roomStateFlush = new Runnable() {
+        @Override
+        public void run() {
+            roomStateFlushScheduled = false;
+            if (roomStateCache.hasPendingDiffs()) {
+                pushEvent(CustomTwilioVideoView.this, ON_ROOM_STATE_CHANGED, roomStateCache.drainDiffs());
+            }
+        }
+    };
+
+    /*
+     * Reconnection bookkeeping for the current room. reconnectingSince is 0 while connected.
+     */
+    private long reconnectingSince = 0;
+    private int reconnectAttempts = 0;
+    private long totalReconnectingMs = 0;
+
+    /*
+     * ICE servers and transport policy of the current connect, null for the SDK defaults.
+     * The setup timer polls the stats until media flows and then reports once.
+     */
+    private IceConfig iceConfig;
+    private ConnectionSetupTimer connectionSetupTimer;
+    private final Runnable connectionSetupPoll = new Runnable() {
+        @Override
+        public void run() {
+            if (session.room == null || connectionSetupTimer == null) {
+                return;
+            }
+            final ConnectionSetupTimer timer = connectionSetupTimer;
+            session.room.getStats(statsReports -> {
+                if (connectionSetupTimer != timer) {
+                    return;
+                }
+                if (timer.process(statsReports)) {
+                    stopConnectionSetupTimer();
+                    pushEvent(CustomTwilioVideoView.this, ON_CONNECTION_SETUP_TIMINGS, timer.buildEvent());
+                } else {
+                    handler.postDelayed(connectionSetupPoll, ConnectionSetupTimer.POLL_INTERVAL_MS);
+                }
+            });
+        }
+    };
+
+    /*
+     * Native quality scoring, polls the stats while running and only reports band changes.
+     */
+    private CallQualityMonitor callQualityMonitor;
+    private long callQualityIntervalMs = 0;
+    private final Runnable callQualityPoll = new Runnable() {
+        @Override
+        public void run() {
+            if (callQualityMonitor == null) {
+                return;
+            }
+            // Keeps ticking without a room, the monitor may be started before connect
+            if (session.room != null) {
+                session.room.getStats(statsReports -> {
+                    if (callQualityMonitor == null) {
+                        return;
+                    }
+                    for (WritableMap event : callQualityMonitor.process(statsReports)) {
+                        pushEvent(CustomTwilioVideoView.this, ON_CALL_QUALITY_CHANGED, event);
+                    }
+                });
+            }
+            handler.postDelayed(this, callQualityIntervalMs);
+        }
+    };
 
     public CustomTwilioVideoView(ThemedReactContext context) {
         super(context);
         this.themedReactContext = context;
         this.eventEmitter = themedReactContext.getJSModule(RCTEventEmitter.class);
+        this.session = TwilioVideoSession.acquire();
+        this.session.controller = this;
 
         // add lifecycle for onResume and on onPause
         themedReactContext.addLifecycleEventListener(this);
@@ -219,16 +418,64 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         // Create the local data track
        // localDataTrack = LocalDataTrack.create(this);
        localDataTrack = LocalDataTrack.create(getContext());
+        VideoSdkWarmUp.handOff();
 
-       // Start the thread where data messages are received
-        dataTrackMessageThread.start();
-        dataTrackMessageThreadHandler = new Handler(dataTrackMessageThread.getLooper());
+        // Data messages are received on the shared data track worker
+        dataTrackMessageThreadHandler = DataTrackWorker.acquire();
+        dataTrackRpc = new DataTrackRpc(dataTrackMessageThreadHandler, this::sendDataTrackFrame,
+                this::onDataTrackRequest);
+        dataTrackTransfers = new DataTrackTransfers(dataTrackMessageThreadHandler, this::sendDataTrackFrame,
+                event -> pushEvent(CustomTwilioVideoView.this, ON_DATATRACK_TRANSFER_PROGRESS, event),
+                context.getCacheDir());
 
     }
 
     // ===== SETUP =================================================================================
 
+    /*
+     * The camera feeds the track directly unless a preprocessing chain is configured.
+     * Called right before a track is created, when no track uses the capturer, so this is
+     * also where the capturer is swapped when the chain needs the other camera API.
+     */
+    private VideoCapturer trackCapturer() {
+        if (session.cameraCapturer.isCamera2() != preferCamera2()) {
+            CameraCapturerCompat capturer = createCameraCaputer(getContext(), session.cameraCapturer.getCameraSource());
+            if (capturer != null) {
+                session.cameraCapturer = capturer;
+            }
+        }
+        VideoCapturer capturer = session.cameraCapturer.getVideoCapturer();
+        return framePreprocessor.isEnabled() ? framePreprocessor.wrap(capturer) : capturer;
+    }
+
     private VideoConstraints buildVideoConstraints() {
+        if (pressureLevel == DevicePressureGovernor.LEVEL_SEVERE) {
+            return new VideoConstraints.Builder()
+                    .minVideoDimensions(VideoDimensions.QCIF_VIDEO_DIMENSIONS)
+                    .maxVideoDimensions(VideoDimensions.QCIF_VIDEO_DIMENSIONS)
+                    .minFps(5)
+                    .maxFps(8)
+                    .build();
+        }
+        if (pressureLevel == DevicePressureGovernor.LEVEL_MODERATE) {
+            VideoDimensions dimensions = captureProfile != null ?
+                    captureProfile.getDimensions() : VideoDimensions.CIF_VIDEO_DIMENSIONS;
+            return new VideoConstraints.Builder()
+                    .minVideoDimensions(dimensions)
+                    .maxVideoDimensions(dimensions)
+                    .minFps(5)
+                    .maxFps(10)
+                    .build();
+        }
+        if (captureProfile != null) {
+            // Ask for the probed native format so the SDK can use it without scaling
+            return new VideoConstraints.Builder()
+                    .minVideoDimensions(captureProfile.getDimensions())
+                    .maxVideoDimensions(captureProfile.getDimensions())
+                    .minFps(CaptureProfile.MIN_FPS)
+                    .maxFps(captureProfile.fps)
+                    .build();
+        }
         return new VideoConstraints.Builder()
                 .minVideoDimensions(VideoDimensions.CIF_VIDEO_DIMENSIONS)
                 .maxVideoDimensions(VideoDimensions.CIF_VIDEO_DIMENSIONS)
@@ -237,54 +484,104 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
                 .build();
     }
 
-    private CameraCapturer createCameraCaputer(Context context, CameraCapturer.CameraSource cameraSource) {
-        CameraCapturer newCameraCapturer = null;
-        try {
-            newCameraCapturer = new CameraCapturer(
-                    context,
-                    cameraSource,
-                    new CameraCapturer.Listener() {
-                        @Override
-                        public void onFirstFrameAvailable() {
-                        }
-
-                        @Override
-                        public void onCameraSwitched() {
-                            setThumbnailMirror();
-                        }
-
-                        @Override
-                        public void onError(int i) {
-                            Log.i("CustomTwilioVideoView", "Error getting camera");
-                        }
+    /*
+     * Camera2 delivers texture frames, which the preprocessing chain cannot touch, so a
+     * configured chain needs the Camera1 capturer and its NV21 buffers.
+     */
+    private boolean preferCamera2() {
+        return !framePreprocessor.isEnabled() && (captureProfile == null || captureProfile.camera2);
+    }
+
+    private CameraCapturerCompat createCameraCaputer(Context context, CameraCapturer.CameraSource cameraSource) {
+        return CameraCapturerCompat.create(
+                context,
+                cameraSource,
+                preferCamera2(),
+                new CameraCapturerCompat.Listener() {
+                    @Override
+                    public void onFirstFrameAvailable() {
                     }
-            );
-            return newCameraCapturer;
-        } catch (Exception e) {
-            return null;
-        }
+
+                    @Override
+                    public void onCameraSwitched() {
+                        session.updateThumbnailMirror();
+                        onCameraSwitchCompleted(null);
+                    }
+
+                    @Override
+                    public void onError(final String message) {
+                        Log.i("CustomTwilioVideoView", "Error getting camera: " + message);
+                        handler.post(() -> {
+                            if (backgroundedWithPolicy != null) {
+                                capturerFailedInBackground = true;
+                            }
+                            onCameraSwitchCompleted(message);
+                        });
+                    }
+                }
+        );
     }
 
     private boolean createLocalVideo(boolean enableVideo) {
       isVideoEnabled = enableVideo;
+        if (captureProfile == null) {
+            captureProfile = CaptureProfile.load(getContext());
+        }
         // Share your camera
-        cameraCapturer = this.createCameraCaputer(getContext(), CameraCapturer.CameraSource.FRONT_CAMERA);
-        if (cameraCapturer == null){
-            cameraCapturer = this.createCameraCaputer(getContext(), CameraCapturer.CameraSource.BACK_CAMERA);
+        session.cameraCapturer = this.createCameraCaputer(getContext(), CameraCapturer.CameraSource.FRONT_CAMERA);
+        if (session.cameraCapturer == null){
+            session.cameraCapturer = this.createCameraCaputer(getContext(), CameraCapturer.CameraSource.BACK_CAMERA);
         }
-        if (cameraCapturer == null){
-            WritableMap event = new WritableNativeMap();
-            event.putString("error", "No camera is supported on this device");
-            pushEvent(CustomTwilioVideoView.this, ON_CONNECT_FAILURE, event);
+        if (session.cameraCapturer == null){
             return false;
         }
 
-        if (cameraCapturer.getSupportedFormats().size() > 0) {
-            localVideoTrack = LocalVideoTrack.create(getContext(), enableVideo, cameraCapturer, buildVideoConstraints());
-            if (thumbnailVideoView != null && localVideoTrack != null) {
-                localVideoTrack.addRenderer(thumbnailVideoView);
+        /*
+         * Probe the camera formats only once per device build, later startups reuse the cached profile.
+         */
+        if (captureProfile == null) {
+            captureProfile = CaptureProfile.probe(session.cameraCapturer.getSupportedFormats(), session.cameraCapturer.isCamera2());
+            if (captureProfile != null) {
+                captureProfile.save(getContext());
             }
-            setThumbnailMirror();
+        }
+
+        // Without a profile the default constraints apply
+        session.localVideoTrack = LocalVideoTrack.create(getContext(), enableVideo, trackCapturer(), buildVideoConstraints());
+        if (session.thumbnailVideoView != null && session.localVideoTrack != null) {
+            session.localVideoTrack.addRenderer(session.thumbnailVideoView);
+        }
+        session.updateThumbnailMirror();
+        return true;
+    }
+
+    /*
+     * Audio-only joins do not open the camera. The capturer and track are created the first
+     * time video is turned on and published right away when already connected.
+     */
+    private boolean createLocalVideoOnDemand() {
+        if (session.localVideoTrack != null) {
+            return true;
+        }
+        if (session.cameraCapturer == null) {
+            if (!createLocalVideo(true)) {
+                WritableMap event = new WritableNativeMap();
+                event.putBoolean("videoEnabled", false);
+                event.putString("error", "No camera is supported on this device");
+                pushEvent(CustomTwilioVideoView.this, ON_VIDEO_CHANGED, event);
+                return false;
+            }
+        } else {
+            session.localVideoTrack = LocalVideoTrack.create(getContext(), true, trackCapturer(), buildVideoConstraints());
+            if (session.thumbnailVideoView != null && session.localVideoTrack != null) {
+                session.localVideoTrack.addRenderer(session.thumbnailVideoView);
+            }
+        }
+        if (session.localVideoTrack == null) {
+            return false;
+        }
+        if (localParticipant != null) {
+            localParticipant.publishTrack(session.localVideoTrack);
         }
         return true;
     }
@@ -298,49 +595,106 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
          * In case it wasn't set.
          */
         if (themedReactContext.getCurrentActivity() != null) {
-            /*
-             * If the local video track was released when the app was put in the background, recreate.
-             */
-            if (cameraCapturer != null && localVideoTrack == null) {
-                localVideoTrack = LocalVideoTrack.create(getContext(), isVideoEnabled, cameraCapturer, buildVideoConstraints());
+            if (capturerFailedInBackground) {
+                /*
+                 * The camera died while kept open in the background, take the release path
+                 * and rebuild the capturer and track.
+                 */
+                capturerFailedInBackground = false;
+                discardFailedCapturer();
+                backgroundedWithPolicy = null;
+                applyVideoBitrateCap();
             }
-
-            if (localVideoTrack != null) {
-                if (thumbnailVideoView != null) {
-                    localVideoTrack.addRenderer(thumbnailVideoView);
+            if (BACKGROUND_VIDEO_POLICY_PAUSE.equals(backgroundedWithPolicy)) {
+                /*
+                 * The track stayed published with its renderers, re-enabling it is enough.
+                 */
+                if (session.localVideoTrack != null) {
+                    session.localVideoTrack.enable(isVideoEnabled);
                 }
-
+            } else if (BACKGROUND_VIDEO_POLICY_REDUCED.equals(backgroundedWithPolicy)) {
+                /*
+                 * Lift the background bitrate cap, a pressure cap stays.
+                 */
+                backgroundedWithPolicy = null;
+                applyVideoBitrateCap();
+            } else {
                 /*
-                 * If connected to a Room then share the local video track.
+                 * If the local video track was released when the app was put in the background, recreate.
                  */
-                if (localParticipant != null) {
-                    localParticipant.publishTrack(localVideoTrack);
+                if (session.cameraCapturer != null && session.localVideoTrack == null) {
+                    session.localVideoTrack = LocalVideoTrack.create(getContext(), isVideoEnabled, trackCapturer(), buildVideoConstraints());
+                }
+
+                if (session.localVideoTrack != null) {
+                    if (session.thumbnailVideoView != null) {
+                        session.localVideoTrack.addRenderer(session.thumbnailVideoView);
+                    }
+
+                    /*
+                     * If connected to a Room then share the local video track.
+                     */
+                    if (localParticipant != null) {
+                        localParticipant.publishTrack(session.localVideoTrack);
+                    }
                 }
             }
+            backgroundedWithPolicy = null;
 
             themedReactContext.getCurrentActivity().setVolumeControlStream(AudioManager.STREAM_VOICE_CALL);
 
         }
     }
 
+    private void discardFailedCapturer() {
+        if (session.localVideoTrack != null) {
+            if (localParticipant != null) {
+                localParticipant.unpublishTrack(session.localVideoTrack);
+            }
+            session.localVideoTrack.release();
+            session.localVideoTrack = null;
+        }
+        if (session.cameraCapturer != null) {
+            CameraCapturerCompat capturer = createCameraCaputer(getContext(), session.cameraCapturer.getCameraSource());
+            if (capturer != null) {
+                session.cameraCapturer = capturer;
+            }
+        }
+    }
+
     @Override
     public void onHostPause() {
-        /*
-         * Release the local video track before going in the background. This ensures that the
-         * camera can be used by other applications while this app is in the background.
-         */
-        if (localVideoTrack != null) {
+        if (session.localVideoTrack == null) {
+            return;
+        }
+        backgroundedWithPolicy = backgroundVideoPolicy;
+
+        if (BACKGROUND_VIDEO_POLICY_PAUSE.equals(backgroundVideoPolicy)) {
             /*
+             * Stay published so subscribers keep their track and no renegotiation is needed,
+             * but stop sending frames while in the background.
+             */
+            session.localVideoTrack.enable(false);
+        } else if (BACKGROUND_VIDEO_POLICY_REDUCED.equals(backgroundVideoPolicy)) {
+            /*
+             * Keep capturing, but cap the video bitrate so the encoder drops to a low frame rate.
+             */
+            applyVideoBitrateCap();
+        } else {
+            /*
+             * Release the local video track before going in the background. This ensures that the
+             * camera can be used by other applications while this app is in the background.
+             *
              * If this local video track is being shared in a Room, remove from local
              * participant before releasing the video track. Participants will be notified that
              * the track has been removed.
              */
             if (localParticipant != null) {
-                localParticipant.unpublishTrack(localVideoTrack);
+                localParticipant.unpublishTrack(session.localVideoTrack);
             }
 
-            localVideoTrack.release();
-            localVideoTrack = null;
+            session.localVideoTrack.release();
+            session.localVideoTrack = null;
         }
     }
 
@@ -350,17 +704,17 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
          * Always disconnect from the room before leaving the Activity to
          * ensure any memory allocated to the Room resource is freed.
          */
-        if (room != null && room.getState() != Room.State.DISCONNECTED) {
-            room.disconnect();
+        if (session.room != null && session.room.getState() != Room.State.DISCONNECTED) {
+            session.room.disconnect();
             disconnectedFromOnDestroy = true;
         }
 
         /*
          * Release the local media ensuring any memory allocated to audio or video is freed.
          */
-        if (localVideoTrack != null) {
-            localVideoTrack.release();
-            localVideoTrack = null;
+        if (session.localVideoTrack != null) {
+            session.localVideoTrack.release();
+            session.localVideoTrack = null;
         }
 
         if (localAudioTrack != null) {
@@ -368,41 +722,111 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
             localAudioTrack = null;
         }
 
-        // Quit the data track message thread
-        dataTrackMessageThread.quit();
-
-
+        stopDevicePressureGovernor();
     }
 
+    /*
+     * Drops everything this view owns and its reference on the session. The room is left
+     * when the view goes away, the local video track and capturer stay with the session
+     * until the last preview using them is gone. Safe to call more than once.
+     */
     public void releaseResource() {
+        if (released) {
+            return;
+        }
+        released = true;
         themedReactContext.removeLifecycleEventListener(this);
-        room = null;
-        localVideoTrack = null;
-        thumbnailVideoView = null;
-        cameraCapturer = null;
+
+        if (session.room != null && session.room.getState() != Room.State.DISCONNECTED) {
+            session.room.disconnect();
+        }
+        if (localAudioTrack != null) {
+            localAudioTrack.release();
+            localAudioTrack = null;
+        }
+        localParticipant = null;
+        stopDevicePressureGovernor();
+        stopCallQualityMonitor();
+        stopConnectionSetupTimer();
+        handler.removeCallbacks(cameraSwitchTimeout);
+        stopSimulatedRoom();
+        networkQualityHistory.clear();
+        clearRoomState();
+        /*
+         * Outgoing transfers send from the worker, so the data track is released there, after
+         * the cancellations have run. Sends from the main thread see the cleared field.
+         */
+        final LocalDataTrack releasedDataTrack = localDataTrack;
+        localDataTrack = null;
+        dataTrackRpc.cancelAll("The video view was released");
+        dataTrackTransfers.cancelAll("The video view was released");
+        if (releasedDataTrack != null) {
+            dataTrackMessageThreadHandler.post(releasedDataTrack::release);
+        }
+        dataTrackCompressor.release();
+        DataTrackWorker.release();
+
+        if (session.controller == this) {
+            session.controller = null;
+        }
+        session.release();
     }
 
     // ====== CONNECTING ===========================================================================
 
-    public void connectToRoomWrapper(
+    /*
+     * Returns false when the connect could not be started, onRoomDidFailToConnect has been
+     * sent then. Otherwise the room listener reports how it went.
+     */
+    public boolean connectToRoomWrapper(
             String roomName, String accessToken, boolean enableAudio, boolean enableVideo,
-            boolean enableRemoteAudio, boolean enableNetworkQualityReporting) {
+            boolean enableRemoteAudio, boolean enableNetworkQualityReporting,
+            String localNetworkQualityVerbosity, String remoteNetworkQualityVerbosity,
+            boolean enableDevicePressureGovernor, ReadableMap audioOptions,
+            ReadableMap audioDevice, boolean enableRoomSnapshot, ReadableMap largeRoom,
+            ReadableMap iceOptions) {
         this.roomName = roomName;
         this.accessToken = accessToken;
         this.enableRemoteAudio = enableAudio;
         this.enableNetworkQualityReporting = enableNetworkQualityReporting;
+        this.localNetworkQualityVerbosity = localNetworkQualityVerbosity;
+        this.remoteNetworkQualityVerbosity = remoteNetworkQualityVerbosity;
+        this.enableRoomSnapshot = enableRoomSnapshot;
+        roomStateCache.setRecordDiffs(enableRoomSnapshot);
+        session.largeRoomPolicy = LargeRoomPolicy.fromReadableMap(largeRoom);
+        iceConfig = IceConfig.fromReadableMap(iceOptions);
+
+        if (enableDevicePressureGovernor) {
+            if (devicePressureGovernor == null) {
+                devicePressureGovernor = new DevicePressureGovernor(getContext(), this::onDevicePressureChanged);
+            }
+            devicePressureGovernor.start();
+        }
 
-        // Share your microphone
-        localAudioTrack = LocalAudioTrack.create(getContext(), enableAudio);
+        // Audio device settings must be in place before the first audio track starts the device
+        AudioDeviceConfig.fromReadableMap(audioDevice).apply();
 
-        if (cameraCapturer == null) {
+        // Share your microphone
+        audioProcessingConfig = AudioProcessingConfig.fromReadableMap(audioOptions);
+        audioProcessingConfig.applyAudioEffects();
+        localAudioTrack = LocalAudioTrack.create(getContext(), enableAudio, audioProcessingConfig.toAudioOptions());
+        audioCpuMonitor.reset();
+
+        if (!enableVideo) {
+            // The camera is only opened once video gets enabled, see createLocalVideoOnDemand
+            isVideoEnabled = false;
+        } else if (session.cameraCapturer == null) {
             boolean createVideoStatus = createLocalVideo(enableVideo);
             if (!createVideoStatus) {
                 // No need to connect to room if video creation failed
-                return;
+                WritableMap event = new WritableNativeMap();
+                event.putString("error", "No camera is supported on this device");
+                pushEvent(CustomTwilioVideoView.this, ON_CONNECT_FAILURE, event);
+                return false;
+            }
         }
-    }
         connectToRoom(enableAudio);
+        return true;
     }
 
     public void connectToRoom(boolean enableAudio) {
@@ -420,8 +844,8 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
             connectOptionsBuilder.audioTracks(Collections.singletonList(localAudioTrack));
         }
 
-        if (localVideoTrack != null) {
-            connectOptionsBuilder.videoTracks(Collections.singletonList(localVideoTrack));
+        if (session.localVideoTrack != null) {
+            connectOptionsBuilder.videoTracks(Collections.singletonList(session.localVideoTrack));
         }
 
         //LocalDataTrack localDataTrack = LocalDataTrack.create(getContext());
@@ -433,11 +857,43 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
          if (enableNetworkQualityReporting) {
              connectOptionsBuilder.enableNetworkQuality(true);
              connectOptionsBuilder.networkQualityConfiguration(new NetworkQualityConfiguration(
-                     NetworkQualityVerbosity.NETWORK_QUALITY_VERBOSITY_MINIMAL,
-                     NetworkQualityVerbosity.NETWORK_QUALITY_VERBOSITY_MINIMAL));
+                     toNetworkQualityVerbosity(localNetworkQualityVerbosity),
+                     toNetworkQualityVerbosity(remoteNetworkQualityVerbosity)));
          }
 
-        room = Video.connect(getContext(), connectOptionsBuilder.build(), roomListener());
+        if (session.largeRoomPolicy != null) {
+            connectOptionsBuilder.bandwidthProfile(session.largeRoomPolicy.toBandwidthProfileOptions());
+            connectOptionsBuilder.enableDominantSpeaker(true);
+        }
+
+        if (iceConfig != null) {
+            connectOptionsBuilder.iceOptions(iceConfig.toIceOptions());
+        }
+
+        reconnectingSince = 0;
+        reconnectAttempts = 0;
+        totalReconnectingMs = 0;
+
+        stopConnectionSetupTimer();
+        connectionSetupTimer = new ConnectionSetupTimer(iceConfig);
+        session.room = Video.connect(getContext(), connectOptionsBuilder.build(), roomListener());
+        handler.postDelayed(connectionSetupPoll, ConnectionSetupTimer.POLL_INTERVAL_MS);
+    }
+
+    private void stopConnectionSetupTimer() {
+        handler.removeCallbacks(connectionSetupPoll);
+        connectionSetupTimer = null;
+    }
+
+    /*
+     * The Android SDK only knows NONE and MINIMAL. "detailed" is reported with the MINIMAL
+     * level and enriched locally with per-direction track stats, see pushNetworkQualityEvent.
+     */
+    private static NetworkQualityVerbosity toNetworkQualityVerbosity(String verbosity) {
+        if (NETWORK_QUALITY_VERBOSITY_NONE.equals(verbosity)) {
+            return NetworkQualityVerbosity.NETWORK_QUALITY_VERBOSITY_NONE;
+        }
+        return NetworkQualityVerbosity.NETWORK_QUALITY_VERBOSITY_MINIMAL;
     }
 
     private void setAudioFocus(boolean focus) {
@@ -469,7 +925,10 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
              */
             audioManager.setMode(AudioManager.MODE_IN_COMMUNICATION);
             audioManager.setSpeakerphoneOn(!audioManager.isWiredHeadsetOn());
-            getContext().registerReceiver(myNoisyAudioStreamReceiver, intentFilter);
+            if (!noisyReceiverRegistered) {
+                getContext().registerReceiver(myNoisyAudioStreamReceiver, intentFilter);
+                noisyReceiverRegistered = true;
+            }
 
         } else {
             if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
@@ -481,10 +940,10 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
             audioManager.setSpeakerphoneOn(false);
             audioManager.setMode(previousAudioMode);
             try {
-                if (myNoisyAudioStreamReceiver != null) {
+                if (noisyReceiverRegistered) {
+                    noisyReceiverRegistered = false;
                     getContext().unregisterReceiver(myNoisyAudioStreamReceiver);
                 }
-                myNoisyAudioStreamReceiver = null;
             } catch (Exception e) {
                 // already registered
                 e.printStackTrace();
@@ -510,62 +969,262 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     // ====== DISCONNECTING ========================================================================
 
     public void disconnect() {
-        if (room != null) {
-            room.disconnect();
+        if (session.room != null) {
+            session.room.disconnect();
         }
         if (localAudioTrack != null) {
             localAudioTrack.release();
             localAudioTrack = null;
         }
-        if (localVideoTrack != null) {
-            localVideoTrack.release();
-            localVideoTrack = null;
+        if (session.localVideoTrack != null) {
+            session.localVideoTrack.release();
+            session.localVideoTrack = null;
         }
         setAudioFocus(false);
-        if (cameraCapturer != null) {
-            cameraCapturer.stopCapture();
-            cameraCapturer = null;
+        if (session.cameraCapturer != null) {
+            session.cameraCapturer.stopCapture();
+            session.cameraCapturer = null;
+        }
+        stopDevicePressureGovernor();
+        stopCallQualityMonitor();
+    }
+
+    // ===== DEVICE PRESSURE =======================================================================
+
+    /*
+     * Steps the video bitrate, the number of attached remote renderers and the rendered frame
+     * rates down as pressure rises, and back up once it drops.
+     */
+    private void onDevicePressureChanged(int level, List<String> reasons) {
+        pressureLevel = level;
+
+        int thumbnailMaxFps;
+        int remoteMaxFps;
+        if (level == DevicePressureGovernor.LEVEL_SEVERE) {
+            session.maxRemoteRenderers = 2;
+            thumbnailMaxFps = 5;
+            remoteMaxFps = 10;
+        } else if (level == DevicePressureGovernor.LEVEL_MODERATE) {
+            session.maxRemoteRenderers = 4;
+            thumbnailMaxFps = 10;
+            remoteMaxFps = 15;
+        } else {
+            session.maxRemoteRenderers = Integer.MAX_VALUE;
+            thumbnailMaxFps = 0;
+            remoteMaxFps = 0;
+        }
+        if (session.thumbnailVideoView != null) {
+            session.thumbnailVideoView.setPressureMaxFps(thumbnailMaxFps);
+        }
+        session.setRemoteRendererMaxFps(remoteMaxFps);
+        session.applyRemoteRendererBindings();
+        // The published track is kept, recreating it would change its sid for every subscriber
+        applyVideoBitrateCap();
+
+        WritableMap event = new WritableNativeMap();
+        event.putInt("level", level);
+        WritableArray reasonsArray = new WritableNativeArray();
+        for (String reason : reasons) {
+            reasonsArray.pushString(reason);
+        }
+        event.putArray("reasons", reasonsArray);
+        event.putInt("maxRemoteRenderers", session.maxRemoteRenderers == Integer.MAX_VALUE ? -1 : session.maxRemoteRenderers);
+        event.putInt("thumbnailMaxFps", thumbnailMaxFps);
+        event.putInt("remoteMaxFps", remoteMaxFps);
+        event.putInt("maxVideoBitrateKbps", pressureVideoBitrateKbps());
+        pushEvent(CustomTwilioVideoView.this, ON_DEVICE_PRESSURE_CHANGED, event);
+    }
+
+    private int pressureVideoBitrateKbps() {
+        if (pressureLevel == DevicePressureGovernor.LEVEL_SEVERE) {
+            return SEVERE_PRESSURE_VIDEO_BITRATE_KBPS;
+        }
+        if (pressureLevel == DevicePressureGovernor.LEVEL_MODERATE) {
+            return MODERATE_PRESSURE_VIDEO_BITRATE_KBPS;
+        }
+        return 0;
+    }
+
+    /*
+     * Device pressure and the reduced background policy both cap the video bitrate, the
+     * lower cap wins. 0 lifts the cap.
+     */
+    private void applyVideoBitrateCap() {
+        if (localParticipant == null) {
+            return;
+        }
+        int capKbps = pressureVideoBitrateKbps();
+        if (BACKGROUND_VIDEO_POLICY_REDUCED.equals(backgroundedWithPolicy)) {
+            capKbps = capKbps > 0 ? Math.min(capKbps, backgroundVideoBitrateKbps) : backgroundVideoBitrateKbps;
+        }
+        localParticipant.setEncodingParameters(new EncodingParameters(0, capKbps * 1000));
+    }
+
+    /*
+     * Inserting or removing the preprocessor changes the track's capturer, which needs a
+     * new track.
+     */
+    private void recreateLocalVideoTrack() {
+        if (session.localVideoTrack == null || session.cameraCapturer == null) {
+            return;
+        }
+        boolean enabled = session.localVideoTrack.isEnabled();
+        boolean published = localParticipant != null;
+        if (published) {
+            localParticipant.unpublishTrack(session.localVideoTrack);
+        }
+        session.localVideoTrack.release();
+
+        session.localVideoTrack = LocalVideoTrack.create(getContext(), enabled, trackCapturer(), buildVideoConstraints());
+        if (session.localVideoTrack == null) {
+            return;
+        }
+        if (session.thumbnailVideoView != null) {
+            session.localVideoTrack.addRenderer(session.thumbnailVideoView);
+        }
+        if (published) {
+            localParticipant.publishTrack(session.localVideoTrack);
+        }
+    }
+
+    private void stopDevicePressureGovernor() {
+        if (devicePressureGovernor != null) {
+            devicePressureGovernor.stop();
+        }
+        if (pressureLevel != DevicePressureGovernor.LEVEL_NORMAL) {
+            pressureLevel = DevicePressureGovernor.LEVEL_NORMAL;
+            session.maxRemoteRenderers = Integer.MAX_VALUE;
+            if (session.thumbnailVideoView != null) {
+                session.thumbnailVideoView.setPressureMaxFps(0);
+            }
+            session.setRemoteRendererMaxFps(0);
+            session.applyRemoteRendererBindings();
+            applyVideoBitrateCap();
         }
     }
 
     // ===== SEND STRING ON DATA TRACK ======================================================================
     public void sendString(String message) {
-          if (localDataTrack != null) {
-                localDataTrack.send(message);
+          LocalDataTrack track = localDataTrack;
+          if (track != null && !dataTrackCompressor.compressAndSend(message, track)) {
+                track.send(message);
           }
         }
 
+    /*
+     * Receivers need this version of the library to read compressed messages, so it is
+     * only turned on when every participant can.
+     */
+    public void setDataTrackCompression(ReadableMap config) {
+        dataTrackCompressor.configure(config);
+    }
+
+    public void getDataTrackCompressionStats() {
+        pushEvent(CustomTwilioVideoView.this, ON_DATATRACK_COMPRESSION_STATS, dataTrackCompressor.getStats());
+    }
+
+    public void getDataTrackWorkerStats() {
+        pushEvent(CustomTwilioVideoView.this, ON_DATATRACK_WORKER_STATS, DataTrackWorker.getStats());
+    }
+
+    DataTrackRpc getDataTrackRpc() {
+        return dataTrackRpc;
+    }
+
+    DataTrackTransfers getDataTrackTransfers() {
+        return dataTrackTransfers;
+    }
+
+    private boolean sendDataTrackFrame(ByteBuffer frame) {
+        LocalDataTrack track = localDataTrack;
+        if (track == null || session.room == null) {
+            return false;
+        }
+        track.send(frame);
+        return true;
+    }
+
+    private void onDataTrackRequest(String requestId, RemoteParticipant participant, String payload) {
+        WritableMap event = new WritableNativeMap();
+        event.putString("requestId", requestId);
+        if (participant != null) {
+            event.putMap("participant", buildParticipant(participant));
+        }
+        event.putString("payload", payload);
+        pushEvent(CustomTwilioVideoView.this, ON_DATATRACK_REQUEST_RECEIVED, event);
+    }
+
     // ===== BUTTON LISTENERS ======================================================================
-    private static void setThumbnailMirror() {
-        if (cameraCapturer != null) {
-            CameraCapturer.CameraSource cameraSource = cameraCapturer.getCameraSource();
-            final boolean isBackCamera = (cameraSource == CameraCapturer.CameraSource.BACK_CAMERA);
-            if (thumbnailVideoView != null && thumbnailVideoView.getVisibility() == View.VISIBLE) {
-                thumbnailVideoView.setMirror(!isBackCamera);
+    /*
+     * The switch completes asynchronously, onCameraSwitched is pushed from the capturer
+     * listener once the new camera is running. With freezeLastFrame the thumbnail keeps
+     * showing the last frame of the old camera instead of the transition frames.
+     */
+    public void switchCamera(boolean freezeLastFrame) {
+        if (session.cameraCapturer != null && cameraSwitchStartedAt == 0) {
+            cameraSwitchStartedAt = SystemClock.elapsedRealtime();
+            if (session.thumbnailVideoView != null) {
+                cameraSwitchStartFrames = session.thumbnailVideoView.getFramesReceived();
+                session.thumbnailVideoView.setFrozen(freezeLastFrame);
             }
+            if (!session.cameraCapturer.switchCamera()) {
+                onCameraSwitchCompleted("No camera to switch to");
+                return;
+            }
+            handler.postDelayed(cameraSwitchTimeout, CAMERA_SWITCH_TIMEOUT_MS);
         }
     }
 
-    public void switchCamera() {
-        if (cameraCapturer != null) {
-            cameraCapturer.switchCamera();
-            CameraCapturer.CameraSource cameraSource = cameraCapturer.getCameraSource();
-            final boolean isBackCamera = cameraSource == CameraCapturer.CameraSource.BACK_CAMERA;
-            WritableMap event = new WritableNativeMap();
-            event.putBoolean("isBackCamera", isBackCamera);
-            pushEvent(CustomTwilioVideoView.this, ON_CAMERA_SWITCHED, event);
+    private void onCameraSwitchCompleted(String error) {
+        if (cameraSwitchStartedAt == 0) {
+            return;
+        }
+        handler.removeCallbacks(cameraSwitchTimeout);
+        long latencyMs = SystemClock.elapsedRealtime() - cameraSwitchStartedAt;
+        cameraSwitchStartedAt = 0;
+
+        /*
+         * Frames dropped is what the capture rate would have delivered to the thumbnail
+         * during the switch minus what actually arrived.
+         */
+        long framesDropped = 0;
+        if (session.thumbnailVideoView != null) {
+            session.thumbnailVideoView.setFrozen(false);
+            int fps = captureProfile != null ? captureProfile.fps : CaptureProfile.MAX_FPS;
+            long expectedFrames = latencyMs * fps / 1000;
+            long receivedFrames = session.thumbnailVideoView.getFramesReceived() - cameraSwitchStartFrames;
+            framesDropped = Math.max(0, expectedFrames - receivedFrames);
+        }
+
+        CameraCapturer.CameraSource cameraSource = session.cameraCapturer != null ? session.cameraCapturer.getCameraSource() : null;
+        final boolean isBackCamera = cameraSource == CameraCapturer.CameraSource.BACK_CAMERA;
+        WritableMap event = new WritableNativeMap();
+        event.putBoolean("isBackCamera", isBackCamera);
+        event.putDouble("latencyMs", latencyMs);
+        event.putDouble("framesDropped", framesDropped);
+        if (error != null) {
+            event.putString("error", error);
         }
+        pushEvent(CustomTwilioVideoView.this, ON_CAMERA_SWITCHED, event);
     }
 
-    public void toggleVideo(boolean enabled) {
+    /*
+     * Returns whether the local video track is enabled afterwards.
+     */
+    public boolean toggleVideo(boolean enabled) {
       isVideoEnabled = enabled;
-        if (localVideoTrack != null) {
-            localVideoTrack.enable(enabled);
+        if (enabled && !createLocalVideoOnDemand()) {
+            return false;
+        }
+        if (session.localVideoTrack != null) {
+            session.localVideoTrack.enable(enabled);
 
             WritableMap event = new WritableNativeMap();
             event.putBoolean("videoEnabled", enabled);
             pushEvent(CustomTwilioVideoView.this, ON_VIDEO_CHANGED, event);
+            return enabled;
         }
+        return false;
     }
 
     public void toggleSoundSetup(boolean speaker){
@@ -577,14 +1236,57 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
       }
     }
 
-    public void toggleAudio(boolean enabled) {
+    /*
+     * Returns whether the local audio track is enabled afterwards.
+     */
+    public boolean toggleAudio(boolean enabled) {
         if (localAudioTrack != null) {
             localAudioTrack.enable(enabled);
 
             WritableMap event = new WritableNativeMap();
             event.putBoolean("audioEnabled", enabled);
             pushEvent(CustomTwilioVideoView.this, ON_AUDIO_CHANGED, event);
+            return enabled;
         }
+        return false;
+    }
+
+    /*
+     * Audio options are fixed when a track is created, so the local audio track is replaced
+     * and republished. The hardware AEC/NS choice applies the next time recording starts.
+     */
+    public void setAudioOptions(ReadableMap audioOptions) {
+        audioProcessingConfig = AudioProcessingConfig.fromReadableMap(audioOptions);
+        audioProcessingConfig.applyAudioEffects();
+        if (localAudioTrack == null) {
+            return;
+        }
+        boolean enabled = localAudioTrack.isEnabled();
+        boolean published = localParticipant != null;
+        if (published) {
+            localParticipant.unpublishTrack(localAudioTrack);
+        }
+        localAudioTrack.release();
+
+        localAudioTrack = LocalAudioTrack.create(getContext(), enabled, audioProcessingConfig.toAudioOptions());
+        if (published && localAudioTrack != null) {
+            localParticipant.publishTrack(localAudioTrack);
+        }
+        audioCpuMonitor.reset();
+    }
+
+    /*
+     * CPU time of the audio threads since the options were last applied.
+     */
+    public void getAudioProcessingStats() {
+        long cpuMs = audioCpuMonitor.getCpuMs();
+        long wallMs = audioCpuMonitor.getWallMs();
+        WritableMap event = new WritableNativeMap();
+        event.putMap("options", audioProcessingConfig.toWritableMap());
+        event.putDouble("audioCpuMs", cpuMs);
+        event.putDouble("elapsedMs", wallMs);
+        event.putDouble("cpuLoad", wallMs > 0 ? cpuMs / (double) wallMs : 0);
+        pushEvent(CustomTwilioVideoView.this, ON_AUDIO_PROCESSING_STATS, event);
     }
 
     public void toggleBluetoothHeadset(boolean enabled) {
@@ -597,8 +1299,8 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     }
 
     public void toggleRemoteAudio(boolean enabled) {
-        if (room != null) {
-            for (RemoteParticipant rp : room.getRemoteParticipants()) {
+        if (session.room != null) {
+            for (RemoteParticipant rp : session.room.getRemoteParticipants()) {
                 for(AudioTrackPublication at : rp.getAudioTracks()) {
                     if(at.getAudioTrack() != null) {
                         ((RemoteAudioTrack)at.getAudioTrack()).enablePlayback(enabled);
@@ -609,11 +1311,16 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     }
 
     public void publishLocalVideo(boolean enabled) {
-        if (localParticipant != null && localVideoTrack != null) {
+        if (enabled && session.localVideoTrack == null) {
+            // Creating the track on demand also publishes it
+            isVideoEnabled = createLocalVideoOnDemand();
+            return;
+        }
+        if (localParticipant != null && session.localVideoTrack != null) {
             if (enabled) {
-                localParticipant.publishTrack(localVideoTrack);
+                localParticipant.publishTrack(session.localVideoTrack);
             } else {
-                localParticipant.unpublishTrack(localVideoTrack);
+                localParticipant.unpublishTrack(session.localVideoTrack);
             }
         }
     }
@@ -629,7 +1336,7 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     }
 
 
-    private void convertBaseTrackStats(BaseTrackStats bs, WritableMap result) {
+    private static void convertBaseTrackStats(BaseTrackStats bs, WritableMap result) {
         result.putString("codec", bs.codec);
         result.putInt("packetsLost", bs.packetsLost);
         result.putString("ssrc", bs.ssrc);
@@ -637,18 +1344,18 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         result.putString("trackSid", bs.trackSid);
     }
 
-    private void convertLocalTrackStats(LocalTrackStats ts, WritableMap result) {
+    private static void convertLocalTrackStats(LocalTrackStats ts, WritableMap result) {
         result.putDouble("bytesSent", ts.bytesSent);
         result.putInt("packetsSent", ts.packetsSent);
         result.putDouble("roundTripTime", ts.roundTripTime);
     }
 
-    private void convertRemoteTrackStats(RemoteTrackStats ts, WritableMap result) {
+    private static void convertRemoteTrackStats(RemoteTrackStats ts, WritableMap result) {
         result.putDouble("bytesReceived", ts.bytesReceived);
         result.putInt("packetsReceived", ts.packetsReceived);
     }
 
-    private WritableMap convertAudioTrackStats(RemoteAudioTrackStats as) {
+    private static WritableMap convertAudioTrackStats(RemoteAudioTrackStats as) {
         WritableMap result = new WritableNativeMap();
         result.putInt("audioLevel", as.audioLevel);
         result.putInt("jitter", as.jitter);
@@ -657,7 +1364,7 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         return result;
     }
 
-    private WritableMap convertLocalAudioTrackStats(LocalAudioTrackStats as) {
+    private static WritableMap convertLocalAudioTrackStats(LocalAudioTrackStats as) {
         WritableMap result = new WritableNativeMap();
         result.putInt("audioLevel", as.audioLevel);
         result.putInt("jitter", as.jitter);
@@ -666,7 +1373,7 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         return result;
     }
 
-    private WritableMap convertVideoTrackStats(RemoteVideoTrackStats vs) {
+    private static WritableMap convertVideoTrackStats(RemoteVideoTrackStats vs) {
         WritableMap result = new WritableNativeMap();
         WritableMap dimensions = new WritableNativeMap();
         dimensions.putInt("height", vs.dimensions.height);
@@ -678,7 +1385,7 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         return result;
     }
 
-    private WritableMap convertLocalVideoTrackStats(LocalVideoTrackStats vs) {
+    private static WritableMap convertLocalVideoTrackStats(LocalVideoTrackStats vs) {
         WritableMap result = new WritableNativeMap();
         WritableMap dimensions = new WritableNativeMap();
         dimensions.putInt("height", vs.dimensions.height);
@@ -691,48 +1398,519 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     }
 
     public void getStats() {
-        if (room != null) {
-            room.getStats(new StatsListener() {
+        if (session.room != null) {
+            session.room.getStats(new StatsListener() {
                 @Override
                 public void onStats(List<StatsReport> statsReports) {
-                    WritableMap event = new WritableNativeMap();
-                    for (StatsReport sr : statsReports) {
-                        WritableMap connectionStats = new WritableNativeMap();
-                        WritableArray as = new WritableNativeArray();
-                        for (RemoteAudioTrackStats s : sr.getRemoteAudioTrackStats()) {
-                            as.pushMap(convertAudioTrackStats(s));
-                        }
-                        connectionStats.putArray("remoteAudioTrackStats", as);
-
-                        WritableArray vs = new WritableNativeArray();
-                        for (RemoteVideoTrackStats s : sr.getRemoteVideoTrackStats()) {
-                            vs.pushMap(convertVideoTrackStats(s));
-                        }
-                        connectionStats.putArray("remoteVideoTrackStats", vs);
-
-                        WritableArray las = new WritableNativeArray();
-                        for (LocalAudioTrackStats s : sr.getLocalAudioTrackStats()) {
-                            las.pushMap(convertLocalAudioTrackStats(s));
-                        }
-                        connectionStats.putArray("localAudioTrackStats", las);
-
-                        WritableArray lvs = new WritableNativeArray();
-                        for (LocalVideoTrackStats s : sr.getLocalVideoTrackStats()) {
-                            lvs.pushMap(convertLocalVideoTrackStats(s));
-                        }
-                        connectionStats.putArray("localVideoTrackStats", lvs);
-                        event.putMap(sr.getPeerConnectionId(), connectionStats);
-                    }
-                    pushEvent(CustomTwilioVideoView.this, ON_STATS_RECEIVED, event);
+                    pushEvent(CustomTwilioVideoView.this, ON_STATS_RECEIVED, buildStatsEvent(statsReports));
                 }
             });
         }
     }
 
+    static WritableMap buildStatsEvent(List<StatsReport> statsReports) {
+        WritableMap event = new WritableNativeMap();
+        for (StatsReport sr : statsReports) {
+            WritableMap connectionStats = new WritableNativeMap();
+            WritableArray as = new WritableNativeArray();
+            for (RemoteAudioTrackStats s : sr.getRemoteAudioTrackStats()) {
+                as.pushMap(convertAudioTrackStats(s));
+            }
+            connectionStats.putArray("remoteAudioTrackStats", as);
+
+            WritableArray vs = new WritableNativeArray();
+            for (RemoteVideoTrackStats s : sr.getRemoteVideoTrackStats()) {
+                vs.pushMap(convertVideoTrackStats(s));
+            }
+            connectionStats.putArray("remoteVideoTrackStats", vs);
+
+            WritableArray las = new WritableNativeArray();
+            for (LocalAudioTrackStats s : sr.getLocalAudioTrackStats()) {
+                las.pushMap(convertLocalAudioTrackStats(s));
+            }
+            connectionStats.putArray("localAudioTrackStats", las);
+
+            WritableArray lvs = new WritableNativeArray();
+            for (LocalVideoTrackStats s : sr.getLocalVideoTrackStats()) {
+                lvs.pushMap(convertLocalVideoTrackStats(s));
+            }
+            connectionStats.putArray("localVideoTrackStats", lvs);
+            event.putMap(sr.getPeerConnectionId(), connectionStats);
+        }
+        return event;
+    }
+
+    public void startCallQualityMonitor(int intervalMs, ReadableArray thresholds, int targetFps) {
+        handler.removeCallbacks(callQualityPoll);
+        callQualityMonitor = new CallQualityMonitor(thresholds, targetFps);
+        callQualityIntervalMs = Math.max(250, intervalMs);
+        handler.post(callQualityPoll);
+    }
+
+    public void stopCallQualityMonitor() {
+        handler.removeCallbacks(callQualityPoll);
+        callQualityMonitor = null;
+    }
+
+    public void getNetworkQualitySummary() {
+        WritableMap event = new WritableNativeMap();
+        event.putArray("participants", networkQualityHistory.buildSummary());
+        pushEvent(CustomTwilioVideoView.this, ON_NETWORK_QUALITY_SUMMARY, event);
+    }
+
+    public void getRendererPoolStats() {
+        pushEvent(CustomTwilioVideoView.this, ON_RENDERER_POOL_STATS, RendererPool.getStats());
+    }
+
+    /*
+     * Pinned participants always stay within the active video tracks in large-room mode.
+     */
+    public void setPinnedParticipants(ReadableArray sids) {
+        if (session.largeRoomPolicy == null) {
+            return;
+        }
+        session.largeRoomPolicy.setPinnedParticipants(sids);
+        session.refreshActiveVideoTracks();
+    }
+
+    void onActiveVideoTracksChanged(LargeRoomPolicy policy) {
+        pushEvent(CustomTwilioVideoView.this, ON_ACTIVE_VIDEO_TRACKS_CHANGED, policy.buildEvent());
+    }
+
+    public void getRoomSnapshot() {
+        pushEvent(CustomTwilioVideoView.this, ON_ROOM_SNAPSHOT, buildRoomSnapshot());
+    }
+
+    /*
+     * Pending diffs go out first, so the snapshot version is never behind a later diff batch.
+     */
+    WritableMap buildRoomSnapshot() {
+        if (roomStateFlushScheduled) {
+            handler.removeCallbacks(roomStateFlush);
+            roomStateFlush.run();
+        }
+        return roomStateCache.buildSnapshot();
+    }
+
+    private void scheduleRoomStateFlush() {
+        if (enableRoomSnapshot && !roomStateFlushScheduled && roomStateCache.hasPendingDiffs()) {
+            roomStateFlushScheduled = true;
+            handler.postDelayed(roomStateFlush, ROOM_STATE_DIFF_BATCH_MS);
+        }
+    }
+
+    private void clearRoomState() {
+        handler.removeCallbacks(roomStateFlush);
+        roomStateFlushScheduled = false;
+        roomStateCache.clear();
+    }
+
+    /*
+     * Per participant and per track events. They are covered by the snapshot and its diffs
+     * when room snapshots are on.
+     */
+    private void pushRoomEvent(String name, WritableMap event) {
+        if (!enableRoomSnapshot) {
+            pushEvent(CustomTwilioVideoView.this, name, event);
+        }
+    }
+
+    /*
+     * Aggregates the stats of one direction (send or receive) for one kind of track.
+     * When trackSids is not null only the listed tracks are taken into account.
+     */
+    private WritableMap buildDirectionStats(List<? extends BaseTrackStats> stats, Set<String> trackSids) {
+        int tracks = 0;
+        int packetsLost = 0;
+        long packets = 0;
+        long bytes = 0;
+        int jitter = 0;
+        long roundTripTime = 0;
+        int frameRate = -1;
+        for (BaseTrackStats s : stats) {
+            if (trackSids != null && !trackSids.contains(s.trackSid)) {
+                continue;
+            }
+            tracks++;
+            packetsLost += s.packetsLost;
+            if (s instanceof LocalTrackStats) {
+                LocalTrackStats ls = (LocalTrackStats) s;
+                packets += ls.packetsSent;
+                bytes += ls.bytesSent;
+                roundTripTime = Math.max(roundTripTime, ls.roundTripTime);
+            } else if (s instanceof RemoteTrackStats) {
+                RemoteTrackStats rs = (RemoteTrackStats) s;
+                packets += rs.packetsReceived;
+                bytes += rs.bytesReceived;
+            }
+            if (s instanceof LocalAudioTrackStats) {
+                jitter = Math.max(jitter, ((LocalAudioTrackStats) s).jitter);
+            } else if (s instanceof RemoteAudioTrackStats) {
+                jitter = Math.max(jitter, ((RemoteAudioTrackStats) s).jitter);
+            } else if (s instanceof LocalVideoTrackStats) {
+                int fps = ((LocalVideoTrackStats) s).frameRate;
+                frameRate = frameRate < 0 ? fps : Math.min(frameRate, fps);
+            } else if (s instanceof RemoteVideoTrackStats) {
+                int fps = ((RemoteVideoTrackStats) s).frameRate;
+                frameRate = frameRate < 0 ? fps : Math.min(frameRate, fps);
+            }
+        }
+
+        WritableMap result = new WritableNativeMap();
+        result.putInt("tracks", tracks);
+        result.putInt("packetsLost", packetsLost);
+        result.putDouble("packets", packets);
+        result.putDouble("bytes", bytes);
+        result.putDouble("packetLossRatio", packets + packetsLost > 0 ? packetsLost / (double) (packets + packetsLost) : 0);
+        result.putInt("jitter", jitter);
+        result.putDouble("roundTripTime", roundTripTime);
+        if (frameRate >= 0) {
+            result.putInt("frameRate", frameRate);
+        }
+        return result;
+    }
+
+    /*
+     * Pushes a network quality change and records it in the history. With detailed verbosity
+     * the event is sent once the current stats are available, with audio and video stats split
+     * by direction. Remote participants only have a receive direction as seen from this device.
+     */
+    private void pushNetworkQualityEvent(Participant participant, boolean isLocalUser, NetworkQualityLevel networkQualityLevel) {
+        // Twilio SDK defines Enum 0 as UNKNOWN and 1 as Quality ZERO, so we subtract one to get the correct quality level as an integer
+        int quality = networkQualityLevel.ordinal() - 1;
+        networkQualityHistory.record(participant.getSid(), quality);
+        roomStateCache.networkQualityChanged(participant, quality);
+        scheduleRoomStateFlush();
+
+        final WritableMap event = new WritableNativeMap();
+        event.putMap("participant", buildParticipant(participant));
+        event.putBoolean("isLocalUser", isLocalUser);
+        event.putInt("quality", quality);
+
+        String verbosity = isLocalUser ? localNetworkQualityVerbosity : remoteNetworkQualityVerbosity;
+        if (!NETWORK_QUALITY_VERBOSITY_DETAILED.equals(verbosity) || session.room == null) {
+            pushEvent(CustomTwilioVideoView.this, ON_NETWORK_QUALITY_LEVELS_CHANGED, event);
+            return;
+        }
+
+        final Set<String> trackSids;
+        if (isLocalUser) {
+            trackSids = null;
+        } else {
+            trackSids = new HashSet<>();
+            for (AudioTrackPublication publication : participant.getAudioTracks()) {
+                trackSids.add(publication.getTrackSid());
+            }
+            for (VideoTrackPublication publication : participant.getVideoTracks()) {
+                trackSids.add(publication.getTrackSid());
+            }
+        }
+
+        session.room.getStats(statsReports -> {
+            List<BaseTrackStats> localAudio = new ArrayList<>();
+            List<BaseTrackStats> localVideo = new ArrayList<>();
+            List<BaseTrackStats> remoteAudio = new ArrayList<>();
+            List<BaseTrackStats> remoteVideo = new ArrayList<>();
+            for (StatsReport sr : statsReports) {
+                localAudio.addAll(sr.getLocalAudioTrackStats());
+                localVideo.addAll(sr.getLocalVideoTrackStats());
+                remoteAudio.addAll(sr.getRemoteAudioTrackStats());
+                remoteVideo.addAll(sr.getRemoteVideoTrackStats());
+            }
+
+            WritableMap audio = new WritableNativeMap();
+            WritableMap video = new WritableNativeMap();
+            if (isLocalUser) {
+                audio.putMap("send", buildDirectionStats(localAudio, null));
+                video.putMap("send", buildDirectionStats(localVideo, null));
+            }
+            audio.putMap("recv", buildDirectionStats(remoteAudio, trackSids));
+            video.putMap("recv", buildDirectionStats(remoteVideo, trackSids));
+            event.putMap("audio", audio);
+            event.putMap("video", video);
+            pushEvent(CustomTwilioVideoView.this, ON_NETWORK_QUALITY_LEVELS_CHANGED, event);
+        });
+    }
+
+    public void setBackgroundVideoPolicy(String policy, int bitrateKbps) {
+        backgroundVideoPolicy = policy;
+        backgroundVideoBitrateKbps = bitrateKbps > 0 ? bitrateKbps : DEFAULT_BACKGROUND_VIDEO_BITRATE_KBPS;
+    }
+
+    /*
+     * Round-trip latency of the audio path, cached per device model. Needs the microphone
+     * for itself, so it is only allowed while not connected to a room.
+     */
+    public void measureAudioLatency(boolean force) {
+        if (session.room != null) {
+            WritableMap event = AudioDeviceConfig.describeDevice(getContext());
+            event.putString("error", "Audio latency can only be measured before joining a room");
+            pushEvent(CustomTwilioVideoView.this, ON_AUDIO_LATENCY_MEASURED, event);
+            return;
+        }
+        AudioLatencyProbe.measure(getContext(), force, (roundTripMs, cached, error) -> {
+            WritableMap event = AudioDeviceConfig.describeDevice(getContext());
+            event.putBoolean("cached", cached);
+            if (error != null) {
+                event.putString("error", error);
+            } else {
+                event.putInt("roundTripMs", roundTripMs);
+            }
+            pushEvent(CustomTwilioVideoView.this, ON_AUDIO_LATENCY_MEASURED, event);
+        });
+    }
+
     public void disableOpenSLES() {
         WebRtcAudioManager.setBlacklistDeviceForOpenSLESUsage(true);
     }
 
+    // ====== VIDEO PREPROCESSING ==================================================================
+
+    /*
+     * Turning the chain on or off rebuilds the local video track so the preprocessor is
+     * inserted or removed, switching between the Camera1 and Camera2 capturers on the way.
+     * Changing an active chain applies from the next frame. When the camera can only
+     * deliver texture frames the chain would do nothing, that is reported as an error.
+     */
+    public void setVideoPreprocessing(ReadableMap config) {
+        boolean wasEnabled = framePreprocessor.isEnabled();
+        framePreprocessor.configure(config);
+        if (wasEnabled != framePreprocessor.isEnabled()) {
+            recreateLocalVideoTrack();
+        }
+        if (framePreprocessor.isEnabled() && session.cameraCapturer != null && session.cameraCapturer.isCamera2()) {
+            WritableMap event = framePreprocessor.getStats();
+            event.putString("error", "The camera only delivers texture frames, preprocessing is not applied");
+            pushEvent(CustomTwilioVideoView.this, ON_PREPROCESSING_STATS, event);
+        }
+    }
+
+    public void getPreprocessingStats() {
+        pushEvent(CustomTwilioVideoView.this, ON_PREPROCESSING_STATS, framePreprocessor.getStats());
+    }
+
+    // ====== SIMULATED ROOM =======================================================================
+
+    /*
+     * Runs scripted room traffic through the same event path as a real room, without any
+     * network. Only allowed while not connected, the report arrives in onSimulationReport.
+     */
+    public void startSimulatedRoom(ReadableMap options) {
+        if (session.room != null || (simulatedRoomDriver != null && simulatedRoomDriver.isRunning())) {
+            WritableMap event = new WritableNativeMap();
+            event.putString("error", "A room or a simulation is already active");
+            pushEvent(CustomTwilioVideoView.this, ON_SIMULATION_REPORT, event);
+            return;
+        }
+        simulatedRoomDriver = new SimulatedRoomDriver(SimulatedRoomDriver.Options.fromReadableMap(options),
+                simulatedRoomListener(), dataTrackMessageThreadHandler);
+        simulatedRoomDriver.start();
+    }
+
+    public void stopSimulatedRoom() {
+        if (simulatedRoomDriver != null) {
+            simulatedRoomDriver.stop();
+        }
+    }
+
+    private SimulatedRoomDriver.Listener simulatedRoomListener() {
+        return new SimulatedRoomDriver.Listener() {
+            // Simulated data messages have no track, they arrive with a null one
+            private final RemoteDataTrack.Listener dataTrackListener = remoteDataTrackListener();
+            private String roomName;
+            private String roomSid;
+
+            @Override
+            public void onConnected(String roomName, String roomSid) {
+                this.roomName = roomName;
+                this.roomSid = roomSid;
+                roomStateCache.reset(roomName, roomSid, null, null);
+                handleRoomConnected(roomName, roomSid, new WritableNativeArray());
+            }
+
+            @Override
+            public void onParticipantConnected(String identity, String sid) {
+                handleParticipantConnected(roomName, roomSid, identity, sid, Collections.<TrackPublication>emptyList());
+            }
+
+            @Override
+            public void onParticipantDisconnected(String identity, String sid) {
+                handleParticipantDisconnected(roomName, roomSid, identity, sid);
+            }
+
+            @Override
+            public void onTrackSubscribed(String identity, String sid, String kind, String trackSid, String trackName) {
+                handleTrackSubscribed(identity, sid, kind, trackSid, trackName, true, true);
+            }
+
+            @Override
+            public void onTrackUnsubscribed(String identity, String sid, String kind, String trackSid, String trackName) {
+                handleTrackSubscribed(identity, sid, kind, trackSid, trackName, true, false);
+            }
+
+            @Override
+            public void onTrackEnabledChanged(String identity, String sid, String kind, String trackSid, String trackName, boolean enabled) {
+                handleTrackEnabled(identity, sid, kind, trackSid, trackName, enabled);
+            }
+
+            @Override
+            public void onDataMessage(String message) {
+                dataTrackListener.onMessage(null, message);
+            }
+
+            @Override
+            public void onDataMessage(ByteBuffer frame) {
+                dataTrackListener.onMessage(null, frame);
+            }
+
+            @Override
+            public void onDisconnected(String roomName, String roomSid) {
+                handleRoomDisconnected(roomName, roomSid, null, 0);
+            }
+
+            @Override
+            public void onFinished(WritableMap report) {
+                pushEvent(CustomTwilioVideoView.this, ON_SIMULATION_REPORT, report);
+            }
+        };
+    }
+
+    // ====== ROOM EVENTS ==========================================================================
+
+    /*
+     * The bodies of the room, participant and data track callbacks, keyed by sid. The SDK
+     * listeners and the simulated room both call these, so a simulation measures the same
+     * flight recorder, room state, large room policy and event work as a real room. Anything
+     * that needs the SDK objects themselves stays in the listeners.
+     */
+
+    /*
+     * The room state cache is reset by the caller, a real room knows its participants and
+     * tracks up front.
+     */
+    private void handleRoomConnected(String roomName, String roomSid, WritableArray participants) {
+        FlightRecorder.record("room.onConnected", roomSid);
+        WritableMap event = new WritableNativeMap();
+        event.putString("roomName", roomName);
+        event.putString("roomSid", roomSid);
+        event.putArray("participants", participants);
+        if (enableRoomSnapshot) {
+            event.putMap("snapshot", roomStateCache.buildSnapshot());
+        }
+        pushEvent(CustomTwilioVideoView.this, ON_CONNECTED, event);
+    }
+
+    private void handleRoomDisconnected(String roomName, String roomSid, String error, int errorCode) {
+        FlightRecorder.record("room.onDisconnected", roomSid, null, errorCode);
+        WritableMap event = new WritableNativeMap();
+
+        if (localParticipant != null) {
+          event.putString("participant", localParticipant.getIdentity());
+        }
+        event.putString("roomName", roomName);
+        event.putString("roomSid", roomSid);
+        if (error != null) {
+          event.putString("error", error);
+        }
+        if (reconnectingSince > 0) {
+            totalReconnectingMs += SystemClock.elapsedRealtime() - reconnectingSince;
+            reconnectingSince = 0;
+        }
+        event.putInt("reconnectAttempts", reconnectAttempts);
+        event.putDouble("totalReconnectingMs", totalReconnectingMs);
+        pushEvent(CustomTwilioVideoView.this, ON_DISCONNECTED, event);
+
+        networkQualityHistory.clear();
+        clearRoomState();
+        dataTrackRpc.cancelAll("Disconnected from the room");
+        dataTrackTransfers.cancelAll("Disconnected from the room");
+        dataTrackRpc.setLocalParticipantSid(null);
+    }
+
+    /*
+     * publications are the tracks the participant already has when it joins.
+     */
+    private void handleParticipantConnected(String roomName, String roomSid, String identity, String sid,
+                                            List<? extends TrackPublication> publications) {
+        FlightRecorder.record("room.onParticipantConnected", roomSid, sid);
+        roomStateCache.participantConnected(sid, identity, publications);
+        scheduleRoomStateFlush();
+        pushParticipantConnected(roomName, roomSid, identity, sid);
+    }
+
+    private void pushParticipantConnected(String roomName, String roomSid, String identity, String sid) {
+        WritableMap event = new WritableNativeMap();
+        event.putString("roomName", roomName);
+        event.putString("roomSid", roomSid);
+        event.putMap("participant", buildParticipant(identity, sid));
+        pushRoomEvent(ON_PARTICIPANT_CONNECTED, event);
+    }
+
+    private void handleParticipantDisconnected(String roomName, String roomSid, String identity, String sid) {
+        FlightRecorder.record("room.onParticipantDisconnected", roomSid, sid);
+        roomStateCache.participantDisconnected(sid);
+        scheduleRoomStateFlush();
+
+        WritableMap event = new WritableNativeMap();
+        event.putString("roomName", roomName);
+        event.putString("roomSid", roomSid);
+        event.putMap("participant", buildParticipant(identity, sid));
+        pushRoomEvent(ON_PARTICIPANT_DISCONNECTED, event);
+        networkQualityHistory.remove(sid);
+        dataTrackTransfers.removeParticipant(sid);
+        if (session.largeRoomPolicy != null) {
+            session.largeRoomPolicy.removeParticipant(sid);
+            session.refreshActiveVideoTracks();
+        }
+    }
+
+    /*
+     * kind is one of the RoomStateCache kinds, enabled is the track's current state.
+     */
+    private void handleTrackSubscribed(String identity, String sid, String kind, String trackSid, String trackName,
+                                       boolean enabled, boolean subscribed) {
+        String name;
+        if (RoomStateCache.KIND_AUDIO.equals(kind)) {
+            FlightRecorder.record(subscribed ? "remote.onAudioTrackSubscribed" : "remote.onAudioTrackUnsubscribed", sid, trackSid);
+            name = subscribed ? ON_PARTICIPANT_ADDED_AUDIO_TRACK : ON_PARTICIPANT_REMOVED_AUDIO_TRACK;
+        } else if (RoomStateCache.KIND_VIDEO.equals(kind)) {
+            FlightRecorder.record(subscribed ? "remote.onVideoTrackSubscribed" : "remote.onVideoTrackUnsubscribed", sid, trackSid);
+            name = subscribed ? ON_PARTICIPANT_ADDED_VIDEO_TRACK : ON_PARTICIPANT_REMOVED_VIDEO_TRACK;
+        } else {
+            FlightRecorder.record(subscribed ? "remote.onDataTrackSubscribed" : "remote.onDataTrackUnsubscribed", sid, trackSid);
+            name = subscribed ? ON_PARTICIPANT_ADDED_DATA_TRACK : ON_PARTICIPANT_REMOVED_DATA_TRACK;
+        }
+        roomStateCache.trackSubscribed(sid, trackSid, kind, trackName, enabled, subscribed);
+        scheduleRoomStateFlush();
+        if (RoomStateCache.KIND_VIDEO.equals(kind) && session.largeRoomPolicy != null) {
+            session.refreshActiveVideoTracks();
+        }
+
+        WritableMap event = RoomStateCache.KIND_DATA.equals(kind)
+                ? buildParticipantDataEvent(identity, sid)
+                : buildParticipantVideoEvent(identity, sid, trackSid, trackName, enabled);
+        pushRoomEvent(name, event);
+    }
+
+    private void handleTrackEnabled(String identity, String sid, String kind, String trackSid, String trackName,
+                                    boolean enabled) {
+        String name;
+        if (RoomStateCache.KIND_AUDIO.equals(kind)) {
+            FlightRecorder.record(enabled ? "remote.onAudioTrackEnabled" : "remote.onAudioTrackDisabled", sid, trackSid);
+            name = enabled ? ON_PARTICIPANT_ENABLED_AUDIO_TRACK : ON_PARTICIPANT_DISABLED_AUDIO_TRACK;
+        } else {
+            FlightRecorder.record(enabled ? "remote.onVideoTrackEnabled" : "remote.onVideoTrackDisabled", sid, trackSid);
+            name = enabled ? ON_PARTICIPANT_ENABLED_VIDEO_TRACK : ON_PARTICIPANT_DISABLED_VIDEO_TRACK;
+        }
+        roomStateCache.trackEnabled(sid, trackSid, kind, trackName, enabled);
+        scheduleRoomStateFlush();
+        pushRoomEvent(name, buildParticipantVideoEvent(identity, sid, trackSid, trackName, enabled));
+    }
+
+    private void handleDataMessage(String message) {
+        pushEvent(CustomTwilioVideoView.this, ON_DATATRACK_MESSAGE_RECEIVED, buildDataTrackEvent(message));
+    }
+
     // ====== ROOM LISTENER ========================================================================
 
     /*
@@ -744,10 +1922,12 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
             public void onConnected(Room room) {
                 localParticipant = room.getLocalParticipant();
                 localParticipant.setListener(localListener());
+                dataTrackRpc.setLocalParticipantSid(localParticipant.getSid());
+                applyVideoBitrateCap();
+                if (connectionSetupTimer != null) {
+                    connectionSetupTimer.onConnected();
+                }
 
-                WritableMap event = new WritableNativeMap();
-                event.putString("roomName", room.getName());
-                event.putString("roomSid", room.getSid());
                 List<RemoteParticipant> participants = room.getRemoteParticipants();
 
                 WritableArray participantsArray = new WritableNativeArray();
@@ -755,21 +1935,24 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
                     participantsArray.pushMap(buildParticipant(participant));
                 }
                 participantsArray.pushMap(buildParticipant(localParticipant));
-                event.putArray("participants", participantsArray);
 
-                pushEvent(CustomTwilioVideoView.this, ON_CONNECTED, event);
+                roomStateCache.reset(room);
+                handleRoomConnected(room.getName(), room.getSid(), participantsArray);
 
 
                 //There is not .publish it's publishTrack
                 localParticipant.publishTrack(localDataTrack);
 
                 for (RemoteParticipant participant : participants) {
-                    addParticipant(room, participant);
+                    pushParticipantConnected(room.getName(), room.getSid(), participant.getIdentity(), participant.getSid());
+                    addParticipant(participant);
                 }
             }
 
             @Override
             public void onConnectFailure(Room room, TwilioException e) {
+                FlightRecorder.record("room.onConnectFailure", room.getSid(), null, e.getCode());
+                stopConnectionSetupTimer();
                 WritableMap event = new WritableNativeMap();
                 event.putString("roomName", room.getName());
                 event.putString("roomSid", room.getSid());
@@ -777,36 +1960,49 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
                 pushEvent(CustomTwilioVideoView.this, ON_CONNECT_FAILURE, event);
             }
 
+            /*
+             * The SDK keeps the local tracks, their renderers, remote subscriptions and data
+             * track listeners alive while it reconnects, so nothing is torn down here. JS is
+             * only told about the interruption and how long the recovery took.
+             */
             @Override
             public void onReconnecting(@NonNull Room room, @NonNull TwilioException twilioException) {
-
+                FlightRecorder.record("room.onReconnecting", room.getSid(), null, twilioException.getCode());
+                reconnectingSince = SystemClock.elapsedRealtime();
+                reconnectAttempts++;
+
+                WritableMap event = buildReconnectionEvent(room);
+                event.putString("error", twilioException.getMessage());
+                event.putInt("code", twilioException.getCode());
+                pushEvent(CustomTwilioVideoView.this, ON_RECONNECTING, event);
             }
 
             @Override
             public void onReconnected(@NonNull Room room) {
+                FlightRecorder.record("room.onReconnected", room.getSid());
+                long elapsedMs = 0;
+                if (reconnectingSince > 0) {
+                    elapsedMs = SystemClock.elapsedRealtime() - reconnectingSince;
+                    totalReconnectingMs += elapsedMs;
+                    reconnectingSince = 0;
+                }
 
+                WritableMap event = buildReconnectionEvent(room);
+                event.putDouble("elapsedMs", elapsedMs);
+                pushEvent(CustomTwilioVideoView.this, ON_RECONNECTED, event);
             }
 
             @Override
             public void onDisconnected(Room room, TwilioException e) {
-                WritableMap event = new WritableNativeMap();
-
-                if (localParticipant != null) {
-                  event.putString("participant", localParticipant.getIdentity());
-                }
-                event.putString("roomName", room.getName());
-                event.putString("roomSid", room.getSid());
-                if (e != null) {
-                  event.putString("error", e.getMessage());
-                }
-                pushEvent(CustomTwilioVideoView.this, ON_DISCONNECTED, event);
+                stopConnectionSetupTimer();
+                handleRoomDisconnected(room.getName(), room.getSid(),
+                        e != null ? e.getMessage() : null, e != null ? e.getCode() : 0);
 
                 localParticipant = null;
                 roomName = null;
                 accessToken = null;
 
-
-                CustomTwilioVideoView.room = null;
+                session.onRoomDisconnected(room);
                 // Only reinitialize the UI if disconnect was not called from onDestroy()
                 if (!disconnectedFromOnDestroy) {
                     setAudioFocus(false);
@@ -815,21 +2011,42 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
 
             @Override
             public void onParticipantConnected(Room room, RemoteParticipant participant) {
-                addParticipant(room, participant);
-
+                handleParticipantConnected(room.getName(), room.getSid(), participant.getIdentity(),
+                        participant.getSid(), RoomStateCache.publicationsOf(participant));
+                addParticipant(participant);
             }
 
             @Override
             public void onParticipantDisconnected(Room room, RemoteParticipant participant) {
-                removeParticipant(room, participant);
+                session.detachParticipant(participant);
+                handleParticipantDisconnected(room.getName(), room.getSid(), participant.getIdentity(), participant.getSid());
+            }
+
+            @Override
+            public void onDominantSpeakerChanged(@NonNull Room room, @Nullable RemoteParticipant remoteParticipant) {
+                FlightRecorder.record("room.onDominantSpeakerChanged", room.getSid(), remoteParticipant != null ? remoteParticipant.getSid() : null);
+                WritableMap event = new WritableNativeMap();
+                event.putString("roomName", room.getName());
+                event.putString("roomSid", room.getSid());
+                if (remoteParticipant != null) {
+                    event.putMap("participant", buildParticipant(remoteParticipant));
+                }
+                pushEvent(CustomTwilioVideoView.this, ON_DOMINANT_SPEAKER_CHANGED, event);
+
+                if (session.largeRoomPolicy != null) {
+                    session.largeRoomPolicy.setDominantSpeaker(remoteParticipant != null ? remoteParticipant.getSid() : null);
+                    session.refreshActiveVideoTracks();
+                }
             }
 
             @Override
             public void onRecordingStarted(Room room) {
+                FlightRecorder.record("room.onRecordingStarted", room.getSid());
             }
 
             @Override
             public void onRecordingStopped(Room room) {
+                FlightRecorder.record("room.onRecordingStopped", room.getSid());
             }
         };
     }
@@ -837,15 +2054,7 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
     /*
      * Called when participant joins the room
      */
-    private void addParticipant(Room room, RemoteParticipant remoteParticipant) {
-
-        WritableMap event = new WritableNativeMap();
-        event.putString("roomName", room.getName());
-        event.putString("roomSid", room.getSid());
-        event.putMap("participant", buildParticipant(remoteParticipant));
-
-        pushEvent(this, ON_PARTICIPANT_CONNECTED, event);
-
+    private void addParticipant(RemoteParticipant remoteParticipant) {
         /*
          * Start listening for participant media events
          */
@@ -864,21 +2073,8 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
       }
     }
 
-    /*
-     * Called when participant leaves the room
-     */
-    private void removeParticipant(Room room, RemoteParticipant participant) {
-        WritableMap event = new WritableNativeMap();
-        event.putString("roomName", room.getName());
-        event.putString("roomSid", room.getSid());
-        event.putMap("participant", buildParticipant(participant));
-        pushEvent(this, ON_PARTICIPANT_DISCONNECTED, event);
-        //something about this breaking.
-        //participant.setListener(null);
-    }
-
     private void addRemoteDataTrack(RemoteParticipant remoteParticipant, RemoteDataTrack remoteDataTrack) {
-        dataTrackRemoteParticipantMap.put(remoteDataTrack, remoteParticipant);
+        session.dataTrackRemoteParticipantMap.put(remoteDataTrack, remoteParticipant);
         remoteDataTrack.setListener(remoteDataTrackListener());
     }
 
@@ -889,119 +2085,116 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
             @Override
             public void onAudioTrackSubscribed(RemoteParticipant participant, RemoteAudioTrackPublication publication, RemoteAudioTrack audioTrack) {
               audioTrack.enablePlayback(enableRemoteAudio);
-              WritableMap event = buildParticipantVideoEvent(participant, publication);
-              pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_ADDED_AUDIO_TRACK, event);
+              handleTrackSubscribed(participant, publication, true);
             }
 
             @Override
             public void onAudioTrackUnsubscribed(RemoteParticipant participant, RemoteAudioTrackPublication publication, RemoteAudioTrack audioTrack) {
-              WritableMap event = buildParticipantVideoEvent(participant, publication);
-              pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_REMOVED_AUDIO_TRACK, event);
+              handleTrackSubscribed(participant, publication, false);
             }
 
             @Override
             public void onAudioTrackSubscriptionFailed(RemoteParticipant participant, RemoteAudioTrackPublication publication, TwilioException twilioException) {
+                FlightRecorder.record("remote.onAudioTrackSubscriptionFailed", participant.getSid(), publication.getTrackSid(), twilioException.getCode());
 
             }
 
             @Override
             public void onAudioTrackPublished(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
+                FlightRecorder.record("remote.onAudioTrackPublished", participant.getSid(), publication.getTrackSid());
+                updateTrackPublished(participant, publication, true);
             }
 
             @Override
             public void onAudioTrackUnpublished(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
-
+                FlightRecorder.record("remote.onAudioTrackUnpublished", participant.getSid(), publication.getTrackSid());
+                updateTrackPublished(participant, publication, false);
             }
 
 
 
             @Override
             public void onDataTrackSubscribed(RemoteParticipant remoteParticipant, RemoteDataTrackPublication remoteDataTrackPublication, RemoteDataTrack remoteDataTrack) {
-                 WritableMap event = buildParticipantDataEvent(remoteParticipant);
-                 pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_ADDED_DATA_TRACK, event);
+                 handleTrackSubscribed(remoteParticipant, remoteDataTrackPublication, true);
                  dataTrackMessageThreadHandler.post(() -> addRemoteDataTrack(remoteParticipant, remoteDataTrack));
             }
 
             @Override
             public void onDataTrackUnsubscribed(RemoteParticipant remoteParticipant, RemoteDataTrackPublication publication, RemoteDataTrack remoteDataTrack) {
-                 WritableMap event = buildParticipantDataEvent(remoteParticipant);
-                 pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_REMOVED_DATA_TRACK, event);
+                 handleTrackSubscribed(remoteParticipant, publication, false);
+                 session.dataTrackRemoteParticipantMap.remove(remoteDataTrack);
             }
 
             @Override
             public void onDataTrackSubscriptionFailed(RemoteParticipant participant, RemoteDataTrackPublication publication, TwilioException twilioException) {
+                FlightRecorder.record("remote.onDataTrackSubscriptionFailed", participant.getSid(), publication.getTrackSid(), twilioException.getCode());
 
             }
 
             @Override
             public void onDataTrackPublished(RemoteParticipant participant, RemoteDataTrackPublication publication) {
-
+                FlightRecorder.record("remote.onDataTrackPublished", participant.getSid(), publication.getTrackSid());
+                updateTrackPublished(participant, publication, true);
             }
 
             @Override
             public void onDataTrackUnpublished(RemoteParticipant participant, RemoteDataTrackPublication publication) {
-
+                FlightRecorder.record("remote.onDataTrackUnpublished", participant.getSid(), publication.getTrackSid());
+                updateTrackPublished(participant, publication, false);
             }
 
             @Override
             public void onVideoTrackSubscribed(RemoteParticipant participant, RemoteVideoTrackPublication publication, RemoteVideoTrack videoTrack) {
-                addParticipantVideo(participant, publication);
+                handleTrackSubscribed(participant, publication, true);
             }
 
             @Override
             public void onVideoTrackUnsubscribed(RemoteParticipant participant, RemoteVideoTrackPublication publication, RemoteVideoTrack videoTrack) {
-                removeParticipantVideo(participant, publication);
+                handleTrackSubscribed(participant, publication, false);
             }
 
             @Override
             public void onVideoTrackSubscriptionFailed(RemoteParticipant participant, RemoteVideoTrackPublication publication, TwilioException twilioException) {
+                FlightRecorder.record("remote.onVideoTrackSubscriptionFailed", participant.getSid(), publication.getTrackSid(), twilioException.getCode());
             }
 
             @Override
             public void onVideoTrackPublished(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
-
+                FlightRecorder.record("remote.onVideoTrackPublished", participant.getSid(), publication.getTrackSid());
+                updateTrackPublished(participant, publication, true);
             }
 
             @Override
             public void onVideoTrackUnpublished(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
-
+                FlightRecorder.record("remote.onVideoTrackUnpublished", participant.getSid(), publication.getTrackSid());
+                updateTrackPublished(participant, publication, false);
             }
 
             @Override
             public void onAudioTrackEnabled(RemoteParticipant participant, RemoteAudioTrackPublication publication) {//                Log.i(TAG, "onAudioTrackEnabled");
 //                publication.getRemoteAudioTrack().enablePlayback(false);
-                WritableMap event = buildParticipantVideoEvent(participant, publication);
-                pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_ENABLED_AUDIO_TRACK, event);
+                handleTrackEnabled(participant, publication, true);
             }
 
             @Override
             public void onAudioTrackDisabled(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
-                WritableMap event = buildParticipantVideoEvent(participant, publication);
-                pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_DISABLED_AUDIO_TRACK, event);
+                handleTrackEnabled(participant, publication, false);
             }
 
             @Override
             public void onVideoTrackEnabled(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
-                WritableMap event = buildParticipantVideoEvent(participant, publication);
-                pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_ENABLED_VIDEO_TRACK, event);
+                handleTrackEnabled(participant, publication, true);
             }
 
             @Override
             public void onVideoTrackDisabled(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
-                WritableMap event = buildParticipantVideoEvent(participant, publication);
-                pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_DISABLED_VIDEO_TRACK, event);
+                handleTrackEnabled(participant, publication, false);
             }
 
             @Override
             public void onNetworkQualityLevelChanged(RemoteParticipant remoteParticipant, NetworkQualityLevel networkQualityLevel) {
-                WritableMap event = new WritableNativeMap();
-                event.putMap("participant", buildParticipant(remoteParticipant));
-                event.putBoolean("isLocalUser", false);
-
-                // Twilio SDK defines Enum 0 as UNKNOWN and 1 as Quality ZERO, so we subtract one to get the correct quality level as an integer
-                event.putInt("quality", networkQualityLevel.ordinal() - 1);
-
-                pushEvent(CustomTwilioVideoView.this, ON_NETWORK_QUALITY_LEVELS_CHANGED, event);
+                FlightRecorder.record("remote.onNetworkQualityLevelChanged", remoteParticipant.getSid(), null, networkQualityLevel.ordinal() - 1);
+                pushNetworkQualityEvent(remoteParticipant, false, networkQualityLevel);
             }
         };
     }
@@ -1012,59 +2205,72 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
 
             @Override
             public void onAudioTrackPublished(LocalParticipant localParticipant, LocalAudioTrackPublication localAudioTrackPublication) {
+                FlightRecorder.record("local.onAudioTrackPublished", localParticipant.getSid(), localAudioTrackPublication.getTrackSid());
 
             }
 
             @Override
             public void onAudioTrackPublicationFailed(LocalParticipant localParticipant, LocalAudioTrack localAudioTrack, TwilioException twilioException) {
+                FlightRecorder.record("local.onAudioTrackPublicationFailed", localParticipant.getSid(), null, twilioException.getCode());
 
             }
 
             @Override
             public void onVideoTrackPublished(LocalParticipant localParticipant, LocalVideoTrackPublication localVideoTrackPublication) {
+                FlightRecorder.record("local.onVideoTrackPublished", localParticipant.getSid(), localVideoTrackPublication.getTrackSid());
 
             }
 
             @Override
             public void onVideoTrackPublicationFailed(LocalParticipant localParticipant, LocalVideoTrack localVideoTrack, TwilioException twilioException) {
+                FlightRecorder.record("local.onVideoTrackPublicationFailed", localParticipant.getSid(), null, twilioException.getCode());
 
             }
 
             @Override
             public void onDataTrackPublished(LocalParticipant localParticipant, LocalDataTrackPublication localDataTrackPublication) {
+                FlightRecorder.record("local.onDataTrackPublished", localParticipant.getSid(), localDataTrackPublication.getTrackSid());
 
             }
 
             @Override
             public void onDataTrackPublicationFailed(LocalParticipant localParticipant, LocalDataTrack localDataTrack, TwilioException twilioException) {
+                FlightRecorder.record("local.onDataTrackPublicationFailed", localParticipant.getSid(), null, twilioException.getCode());
 
             }
 
             @Override
             public void onNetworkQualityLevelChanged(LocalParticipant localParticipant, NetworkQualityLevel networkQualityLevel) {
-                WritableMap event = new WritableNativeMap();
-                event.putMap("participant", buildParticipant(localParticipant));
-                event.putBoolean("isLocalUser", true);
-
-                // Twilio SDK defines Enum 0 as UNKNOWN and 1 as Quality ZERO, so we subtract one to get the correct quality level as an integer
-                event.putInt("quality", networkQualityLevel.ordinal() - 1);
-
-                pushEvent(CustomTwilioVideoView.this, ON_NETWORK_QUALITY_LEVELS_CHANGED, event);
+                FlightRecorder.record("local.onNetworkQualityLevelChanged", localParticipant.getSid(), null, networkQualityLevel.ordinal() - 1);
+                pushNetworkQualityEvent(localParticipant, true, networkQualityLevel);
             }
         };
     }
 
+    private WritableMap buildReconnectionEvent(Room room) {
+        WritableMap event = new WritableNativeMap();
+        event.putString("roomName", room.getName());
+        event.putString("roomSid", room.getSid());
+        event.putInt("reconnectAttempts", reconnectAttempts);
+        event.putDouble("totalReconnectingMs", totalReconnectingMs);
+        return event;
+    }
+
     private WritableMap buildParticipant(Participant participant) {
+        return buildParticipant(participant.getIdentity(), participant.getSid());
+    }
+
+    private WritableMap buildParticipant(String identity, String sid) {
         WritableMap participantMap = new WritableNativeMap();
-        participantMap.putString("identity", participant.getIdentity());
-        participantMap.putString("sid", participant.getSid());
+        participantMap.putString("identity", identity);
+        participantMap.putString("sid", sid);
         return participantMap;
     }
 
 
-    private WritableMap buildParticipantDataEvent(Participant participant) {
-        WritableMap participantMap = buildParticipant(participant);
-        WritableMap participantMap2 = buildParticipant(participant);
+    private WritableMap buildParticipantDataEvent(String identity, String sid) {
+        WritableMap participantMap = buildParticipant(identity, sid);
+        WritableMap participantMap2 = buildParticipant(identity, sid);
 
         WritableMap event = new WritableNativeMap();
         event.putMap("participant", participantMap);
@@ -1072,13 +2278,13 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         return event;
     }
 
-    private WritableMap buildParticipantVideoEvent(Participant participant, TrackPublication publication) {
-        WritableMap participantMap = buildParticipant(participant);
+    private WritableMap buildParticipantVideoEvent(String identity, String sid, String trackSid, String trackName, boolean enabled) {
+        WritableMap participantMap = buildParticipant(identity, sid);
 
         WritableMap trackMap = new WritableNativeMap();
-        trackMap.putString("trackSid", publication.getTrackSid());
-        trackMap.putString("trackName", publication.getTrackName());
-        trackMap.putBoolean("enabled", publication.isTrackEnabled());
+        trackMap.putString("trackSid", trackSid);
+        trackMap.putString("trackName", trackName);
+        trackMap.putBoolean("enabled", enabled);
 
         WritableMap event = new WritableNativeMap();
         event.putMap("participant", participantMap);
@@ -1092,14 +2298,23 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         return event;
     }
 
-    private void addParticipantVideo(Participant participant, RemoteVideoTrackPublication publication) {
-        WritableMap event = this.buildParticipantVideoEvent(participant, publication);
-        pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_ADDED_VIDEO_TRACK, event);
+    private void updateTrackPublished(Participant participant, TrackPublication publication, boolean published) {
+        if (published) {
+            roomStateCache.trackPublished(participant, publication);
+        } else {
+            roomStateCache.trackUnpublished(participant, publication);
+        }
+        scheduleRoomStateFlush();
+    }
+
+    private void handleTrackSubscribed(Participant participant, TrackPublication publication, boolean subscribed) {
+        handleTrackSubscribed(participant.getIdentity(), participant.getSid(), RoomStateCache.kindOf(publication),
+                publication.getTrackSid(), publication.getTrackName(), publication.isTrackEnabled(), subscribed);
     }
 
-    private void removeParticipantVideo(Participant participant, RemoteVideoTrackPublication deleteVideoTrack) {
-        WritableMap event = this.buildParticipantVideoEvent(participant, deleteVideoTrack);
-        pushEvent(CustomTwilioVideoView.this, ON_PARTICIPANT_REMOVED_VIDEO_TRACK, event);
+    private void handleTrackEnabled(Participant participant, TrackPublication publication, boolean enabled) {
+        handleTrackEnabled(participant.getIdentity(), participant.getSid(), RoomStateCache.kindOf(publication),
+                publication.getTrackSid(), publication.getTrackName(), enabled);
     }
     // ===== EVENTS TO RN ==========================================================================
 
@@ -1107,46 +2322,31 @@ public class CustomTwilioVideoView extends View implements LifecycleEventListene
         eventEmitter.receiveEvent(view.getId(), name, data);
     }
 
-    public static void registerPrimaryVideoView(PatchedVideoView v, String trackSid) {
-        if (room != null) {
-
-            for (RemoteParticipant participant : room.getRemoteParticipants()) {
-                for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
-                    RemoteVideoTrack track = publication.getRemoteVideoTrack();
-                    if (track == null) {
-                        continue;
-                    }
-                    if (publication.getTrackSid().equals(trackSid)) {
-                        track.addRenderer(v);
-                    } else {
-                        track.removeRenderer(v);
-                    }
-                }
-            }
-        }
-    }
-
-    public static void registerThumbnailVideoView(PatchedVideoView v) {
-        thumbnailVideoView = v;
-        if (localVideoTrack != null) {
-            localVideoTrack.addRenderer(v);
-        }
-        setThumbnailMirror();
-    }
-
     private RemoteDataTrack.Listener remoteDataTrackListener() {
         return new RemoteDataTrack.Listener() {
 
             @Override
             public void onMessage(RemoteDataTrack remoteDataTrack, ByteBuffer byteBuffer) {
-
+                if (DataTrackCompressor.isCompressedText(byteBuffer)) {
+                    String message = dataTrackCompressor.decompress(byteBuffer);
+                    if (message != null) {
+                        onMessage(remoteDataTrack, message);
+                    }
+                    return;
+                }
+                RemoteParticipant participant = remoteDataTrack != null
+                        ? session.dataTrackRemoteParticipantMap.get(remoteDataTrack) : null;
+                if (DataTrackTransfers.isTransferFrame(byteBuffer)) {
+                    dataTrackTransfers.handleFrame(participant, byteBuffer);
+                    return;
+                }
+                dataTrackRpc.handleFrame(participant, byteBuffer);
             }
 
 
             @Override
             public void onMessage(RemoteDataTrack remoteDataTrack, String message) {
-                WritableMap event = buildDataTrackEvent(message);
-                pushEvent(CustomTwilioVideoView.this, ON_DATATRACK_MESSAGE_RECEIVED, event);
+                handleDataMessage(message);
             }
         };
     }
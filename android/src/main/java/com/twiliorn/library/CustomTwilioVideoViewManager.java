@@ -11,6 +11,7 @@ package com.twiliorn.library;
 import android.support.annotation.Nullable;
 
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.SimpleViewManager;
 import com.facebook.react.uimanager.ThemedReactContext;
@@ -18,19 +19,35 @@ import com.facebook.react.uimanager.annotations.ReactProp;
 
 import java.util.Map;
 
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_ACTIVE_VIDEO_TRACKS_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_AUDIO_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_AUDIO_LATENCY_MEASURED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_AUDIO_PROCESSING_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CALL_QUALITY_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CAMERA_SWITCHED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CONNECTED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CONNECT_FAILURE;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DISCONNECTED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DOMINANT_SPEAKER_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_CONNECTED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_DISCONNECTED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_VIDEO_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_REMOVED_DATA_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ADDED_DATA_TRACK;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_COMPRESSION_STATS;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_MESSAGE_RECEIVED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_REQUEST_RECEIVED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_TRANSFER_PROGRESS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_CONNECTION_SETUP_TIMINGS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DATATRACK_WORKER_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_DEVICE_PRESSURE_CHANGED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ADDED_VIDEO_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_REMOVED_VIDEO_TRACK;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PREPROCESSING_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_ROOM_SNAPSHOT;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_ROOM_STATE_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_RENDERER_POOL_STATS;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_SIMULATION_REPORT;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ADDED_AUDIO_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_REMOVED_AUDIO_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_ENABLED_VIDEO_TRACK;
@@ -39,6 +56,9 @@ import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_E
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_PARTICIPANT_DISABLED_AUDIO_TRACK;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_STATS_RECEIVED;
 import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_NETWORK_QUALITY_LEVELS_CHANGED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_NETWORK_QUALITY_SUMMARY;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_RECONNECTED;
+import static com.twiliorn.library.CustomTwilioVideoView.Events.ON_RECONNECTING;
 
 
 public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilioVideoView> {
@@ -58,6 +78,23 @@ public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilio
     private static final int SEND_STRING = 12;
     private static final int PUBLISH_VIDEO = 13;
     private static final int PUBLISH_AUDIO = 14;
+    private static final int GET_NETWORK_QUALITY_SUMMARY = 15;
+    private static final int SET_BACKGROUND_VIDEO_POLICY = 16;
+    private static final int SET_AUDIO_OPTIONS = 17;
+    private static final int GET_AUDIO_PROCESSING_STATS = 18;
+    private static final int MEASURE_AUDIO_LATENCY = 19;
+    private static final int START_CALL_QUALITY_MONITOR = 20;
+    private static final int STOP_CALL_QUALITY_MONITOR = 21;
+    private static final int GET_RENDERER_POOL_STATS = 22;
+    private static final int START_SIMULATED_ROOM = 23;
+    private static final int STOP_SIMULATED_ROOM = 24;
+    private static final int SET_VIDEO_PREPROCESSING = 25;
+    private static final int GET_PREPROCESSING_STATS = 26;
+    private static final int GET_ROOM_SNAPSHOT = 27;
+    private static final int SET_PINNED_PARTICIPANTS = 28;
+    private static final int SET_DATATRACK_COMPRESSION = 29;
+    private static final int GET_DATATRACK_COMPRESSION_STATS = 30;
+    private static final int GET_DATATRACK_WORKER_STATS = 31;
 
     @Override
     public String getName() {
@@ -69,6 +106,12 @@ public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilio
         return new CustomTwilioVideoView(reactContext);
     }
 
+    @Override
+    public void onDropViewInstance(CustomTwilioVideoView view) {
+        super.onDropViewInstance(view);
+        view.releaseResource();
+    }
+
     @Override
     public void receiveCommand(CustomTwilioVideoView view, int commandId, @Nullable ReadableArray args) {
         switch (commandId) {
@@ -79,13 +122,25 @@ public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilio
                 boolean enableVideo = args.getBoolean(3);
                 boolean enableRemoteAudio = args.getBoolean(4);
                 boolean enableNetworkQualityReporting = args.getBoolean(5);
-                view.connectToRoomWrapper(roomName, accessToken, enableAudio, enableVideo, enableRemoteAudio, enableNetworkQualityReporting);
+                String localNetworkQualityVerbosity = args.getString(6);
+                String remoteNetworkQualityVerbosity = args.getString(7);
+                boolean enableDevicePressureGovernor = args.getBoolean(8);
+                ReadableMap audioOptions = args.isNull(9) ? null : args.getMap(9);
+                ReadableMap audioDevice = args.isNull(10) ? null : args.getMap(10);
+                boolean enableRoomSnapshot = args.getBoolean(11);
+                ReadableMap largeRoom = args.isNull(12) ? null : args.getMap(12);
+                ReadableMap iceOptions = args.isNull(13) ? null : args.getMap(13);
+                view.connectToRoomWrapper(roomName, accessToken, enableAudio, enableVideo, enableRemoteAudio,
+                        enableNetworkQualityReporting, localNetworkQualityVerbosity, remoteNetworkQualityVerbosity,
+                        enableDevicePressureGovernor, audioOptions, audioDevice, enableRoomSnapshot, largeRoom,
+                        iceOptions);
                 break;
             case DISCONNECT:
                 view.disconnect();
                 break;
             case SWITCH_CAMERA:
-                view.switchCamera();
+                boolean freezeLastFrame = args != null && args.size() > 0 && args.getBoolean(0);
+                view.switchCamera(freezeLastFrame);
                 break;
             case TOGGLE_VIDEO:
                 Boolean videoEnabled = args.getBoolean(0);
@@ -125,6 +180,57 @@ public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilio
             case PUBLISH_AUDIO:
                 view.publishLocalAudio(args.getBoolean(0));
                 break;
+            case GET_NETWORK_QUALITY_SUMMARY:
+                view.getNetworkQualitySummary();
+                break;
+            case SET_BACKGROUND_VIDEO_POLICY:
+                view.setBackgroundVideoPolicy(args.getString(0), args.getInt(1));
+                break;
+            case SET_AUDIO_OPTIONS:
+                view.setAudioOptions(args.isNull(0) ? null : args.getMap(0));
+                break;
+            case GET_AUDIO_PROCESSING_STATS:
+                view.getAudioProcessingStats();
+                break;
+            case MEASURE_AUDIO_LATENCY:
+                view.measureAudioLatency(args.getBoolean(0));
+                break;
+            case START_CALL_QUALITY_MONITOR:
+                view.startCallQualityMonitor(args.getInt(0), args.isNull(1) ? null : args.getArray(1), args.getInt(2));
+                break;
+            case STOP_CALL_QUALITY_MONITOR:
+                view.stopCallQualityMonitor();
+                break;
+            case GET_RENDERER_POOL_STATS:
+                view.getRendererPoolStats();
+                break;
+            case START_SIMULATED_ROOM:
+                view.startSimulatedRoom(args.isNull(0) ? null : args.getMap(0));
+                break;
+            case STOP_SIMULATED_ROOM:
+                view.stopSimulatedRoom();
+                break;
+            case SET_VIDEO_PREPROCESSING:
+                view.setVideoPreprocessing(args.isNull(0) ? null : args.getMap(0));
+                break;
+            case GET_PREPROCESSING_STATS:
+                view.getPreprocessingStats();
+                break;
+            case GET_ROOM_SNAPSHOT:
+                view.getRoomSnapshot();
+                break;
+            case SET_PINNED_PARTICIPANTS:
+                view.setPinnedParticipants(args.isNull(0) ? null : args.getArray(0));
+                break;
+            case SET_DATATRACK_COMPRESSION:
+                view.setDataTrackCompression(args.isNull(0) ? null : args.getMap(0));
+                break;
+            case GET_DATATRACK_COMPRESSION_STATS:
+                view.getDataTrackCompressionStats();
+                break;
+            case GET_DATATRACK_WORKER_STATS:
+                view.getDataTrackWorkerStats();
+                break;
         }
     }
 
@@ -164,6 +270,34 @@ public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilio
                 ON_NETWORK_QUALITY_LEVELS_CHANGED, MapBuilder.of("registrationName", ON_NETWORK_QUALITY_LEVELS_CHANGED)
         ));
 
+        map.putAll(MapBuilder.of(
+                ON_NETWORK_QUALITY_SUMMARY, MapBuilder.of("registrationName", ON_NETWORK_QUALITY_SUMMARY),
+                ON_RECONNECTING, MapBuilder.of("registrationName", ON_RECONNECTING),
+                ON_RECONNECTED, MapBuilder.of("registrationName", ON_RECONNECTED),
+                ON_DEVICE_PRESSURE_CHANGED, MapBuilder.of("registrationName", ON_DEVICE_PRESSURE_CHANGED),
+                ON_AUDIO_PROCESSING_STATS, MapBuilder.of("registrationName", ON_AUDIO_PROCESSING_STATS),
+                ON_AUDIO_LATENCY_MEASURED, MapBuilder.of("registrationName", ON_AUDIO_LATENCY_MEASURED)
+        ));
+
+        map.putAll(MapBuilder.of(
+                ON_CALL_QUALITY_CHANGED, MapBuilder.of("registrationName", ON_CALL_QUALITY_CHANGED),
+                ON_RENDERER_POOL_STATS, MapBuilder.of("registrationName", ON_RENDERER_POOL_STATS),
+                ON_SIMULATION_REPORT, MapBuilder.of("registrationName", ON_SIMULATION_REPORT),
+                ON_PREPROCESSING_STATS, MapBuilder.of("registrationName", ON_PREPROCESSING_STATS),
+                ON_ROOM_SNAPSHOT, MapBuilder.of("registrationName", ON_ROOM_SNAPSHOT),
+                ON_ROOM_STATE_CHANGED, MapBuilder.of("registrationName", ON_ROOM_STATE_CHANGED)
+        ));
+
+        map.putAll(MapBuilder.of(
+                ON_DOMINANT_SPEAKER_CHANGED, MapBuilder.of("registrationName", ON_DOMINANT_SPEAKER_CHANGED),
+                ON_ACTIVE_VIDEO_TRACKS_CHANGED, MapBuilder.of("registrationName", ON_ACTIVE_VIDEO_TRACKS_CHANGED),
+                ON_DATATRACK_REQUEST_RECEIVED, MapBuilder.of("registrationName", ON_DATATRACK_REQUEST_RECEIVED),
+                ON_DATATRACK_COMPRESSION_STATS, MapBuilder.of("registrationName", ON_DATATRACK_COMPRESSION_STATS),
+                ON_DATATRACK_TRANSFER_PROGRESS, MapBuilder.of("registrationName", ON_DATATRACK_TRANSFER_PROGRESS),
+                ON_DATATRACK_WORKER_STATS, MapBuilder.of("registrationName", ON_DATATRACK_WORKER_STATS),
+                ON_CONNECTION_SETUP_TIMINGS, MapBuilder.of("registrationName", ON_CONNECTION_SETUP_TIMINGS)
+        ));
+
         return map;
     }
 
@@ -181,6 +315,23 @@ public class CustomTwilioVideoViewManager extends SimpleViewManager<CustomTwilio
                 .put("toggleRemoteSound", TOGGLE_REMOTE_SOUND)
                 .put("toggleBluetoothHeadset", TOGGLE_BLUETOOTH_HEADSET)
                 .put("sendString", SEND_STRING)
+                .put("getNetworkQualitySummary", GET_NETWORK_QUALITY_SUMMARY)
+                .put("setBackgroundVideoPolicy", SET_BACKGROUND_VIDEO_POLICY)
+                .put("setAudioOptions", SET_AUDIO_OPTIONS)
+                .put("getAudioProcessingStats", GET_AUDIO_PROCESSING_STATS)
+                .put("measureAudioLatency", MEASURE_AUDIO_LATENCY)
+                .put("startCallQualityMonitor", START_CALL_QUALITY_MONITOR)
+                .put("stopCallQualityMonitor", STOP_CALL_QUALITY_MONITOR)
+                .put("getRendererPoolStats", GET_RENDERER_POOL_STATS)
+                .put("startSimulatedRoom", START_SIMULATED_ROOM)
+                .put("stopSimulatedRoom", STOP_SIMULATED_ROOM)
+                .put("setVideoPreprocessing", SET_VIDEO_PREPROCESSING)
+                .put("getPreprocessingStats", GET_PREPROCESSING_STATS)
+                .put("getRoomSnapshot", GET_ROOM_SNAPSHOT)
+                .put("setPinnedParticipants", SET_PINNED_PARTICIPANTS)
+                .put("setDataTrackCompression", SET_DATATRACK_COMPRESSION)
+                .put("getDataTrackCompressionStats", GET_DATATRACK_COMPRESSION_STATS)
+                .put("getDataTrackWorkerStats", GET_DATATRACK_WORKER_STATS)
                 .build();
     }
 }
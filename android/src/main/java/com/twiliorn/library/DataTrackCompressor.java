@@ -0,0 +1,260 @@
+/**
+ * Optional deflate compression of data track text messages.
+ * <p>
+ * Messages of at least thresholdBytes are sent as a binary frame: one
+ * FRAME_COMPRESSED_TEXT header byte, the original length and the deflated
+ * UTF-8 text. Messages that would not get smaller go out as plain strings.
+ * Receiving is automatic. The Deflater, the Inflater, the encoder and their
+ * scratch buffers are kept and reused for every message. Buffers that had to
+ * grow past RETAINED_BUFFER_BYTES for one large message are dropped again
+ * afterwards. The original length in a received header is trusted only up
+ * to MAX_MESSAGE_BYTES.
+ */
+
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.LocalDataTrack;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class DataTrackCompressor {
+    static final byte FRAME_COMPRESSED_TEXT = 0x10;
+
+    private static final int DEFAULT_THRESHOLD_BYTES = 1024;
+    // 16 data track messages of 16 KiB, well past what deflate gets out of one message
+    static final int MAX_MESSAGE_BYTES = 16 * 16 * 1024;
+    private static final int INITIAL_BUFFER_BYTES = 4096;
+    private static final int RETAINED_BUFFER_BYTES = 64 * 1024;
+    private static final int HEADER_SIZE = 1 + 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private boolean enabled = false;
+    private boolean released = false;
+    private int thresholdBytes = DEFAULT_THRESHOLD_BYTES;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final Inflater inflater = new Inflater();
+    // Same replacement behaviour as String.getBytes
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    // Holds the whole outgoing frame, header first
+    private byte[] frameBuffer = new byte[INITIAL_BUFFER_BYTES];
+    private byte[] compressedBuffer = new byte[INITIAL_BUFFER_BYTES];
+    private byte[] inflateBuffer = new byte[INITIAL_BUFFER_BYTES];
+
+    private long messagesCompressed = 0;
+    private long messagesSentPlain = 0;
+    private long messagesDecompressed = 0;
+    private long bytesBeforeCompression = 0;
+    private long bytesAfterCompression = 0;
+    private long decompressionFailures = 0;
+
+    public synchronized void configure(ReadableMap map) {
+        if (released) {
+            return;
+        }
+        enabled = map != null && (!map.hasKey("enabled") || map.isNull("enabled") || map.getBoolean("enabled"));
+        thresholdBytes = DEFAULT_THRESHOLD_BYTES;
+        int level = Deflater.DEFAULT_COMPRESSION;
+        if (map != null) {
+            if (map.hasKey("thresholdBytes") && !map.isNull("thresholdBytes")) {
+                thresholdBytes = Math.max(0, map.getInt("thresholdBytes"));
+            }
+            if (map.hasKey("level") && !map.isNull("level")) {
+                level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, map.getInt("level")));
+            }
+        }
+        deflater.setLevel(level);
+    }
+
+    // ===== SEND ==================================================================================
+
+    /*
+     * Sends the message compressed and returns true, or returns false when it should be sent
+     * as a plain string. The frame is built in the reused buffer and sent as an exact-length
+     * copy, the track sends a buffer's whole backing array.
+     */
+    public synchronized boolean compressAndSend(String message, LocalDataTrack track) {
+        if (!enabled) {
+            return false;
+        }
+        // Every char is at least one byte, too long a message is not worth encoding
+        if (message.length() > MAX_MESSAGE_BYTES) {
+            messagesSentPlain++;
+            return false;
+        }
+        int inputLength = encode(message);
+        if (inputLength < thresholdBytes || inputLength > MAX_MESSAGE_BYTES) {
+            messagesSentPlain++;
+            shrinkBuffers();
+            return false;
+        }
+
+        deflater.reset();
+        deflater.setInput(encodeBuffer.array(), 0, inputLength);
+        deflater.finish();
+        int length = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (length == frameBuffer.length) {
+                if (length >= inputLength) {
+                    // Not getting any smaller, no point in finishing
+                    messagesSentPlain++;
+                    shrinkBuffers();
+                    return false;
+                }
+                frameBuffer = grow(frameBuffer, length);
+            }
+            length += deflater.deflate(frameBuffer, length, frameBuffer.length - length);
+        }
+        if (length >= inputLength) {
+            messagesSentPlain++;
+            shrinkBuffers();
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(frameBuffer, 0, HEADER_SIZE);
+        header.put(FRAME_COMPRESSED_TEXT);
+        header.putInt(inputLength);
+        track.send(ByteBuffer.wrap(Arrays.copyOf(frameBuffer, length)));
+
+        messagesCompressed++;
+        bytesBeforeCompression += inputLength;
+        bytesAfterCompression += length;
+        shrinkBuffers();
+        return true;
+    }
+
+    /*
+     * UTF-8 encodes the message into encodeBuffer and returns its length.
+     */
+    private int encode(String message) {
+        int maxLength = (int) Math.ceil(message.length() * (double) encoder.maxBytesPerChar());
+        if (encodeBuffer.capacity() < maxLength) {
+            encodeBuffer = ByteBuffer.allocate(maxLength);
+        }
+        encodeBuffer.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(message), encodeBuffer, true);
+        encoder.flush(encodeBuffer);
+        return encodeBuffer.position();
+    }
+
+    // ===== RECEIVE ===============================================================================
+
+    public static boolean isCompressedText(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.get(buffer.position()) == FRAME_COMPRESSED_TEXT;
+    }
+
+    /*
+     * Inflates a FRAME_COMPRESSED_TEXT frame, null when it is corrupt or claims to be larger
+     * than MAX_MESSAGE_BYTES.
+     */
+    public synchronized String decompress(ByteBuffer buffer) {
+        if (released) {
+            return null;
+        }
+        ByteBuffer frame = buffer.duplicate();
+        frame.get();
+        int originalLength = frame.getInt();
+        if (originalLength < 0 || originalLength > MAX_MESSAGE_BYTES) {
+            decompressionFailures++;
+            return null;
+        }
+        inflater.reset();
+        if (frame.hasArray()) {
+            inflater.setInput(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        } else {
+            int compressedLength = frame.remaining();
+            if (compressedBuffer.length < compressedLength) {
+                compressedBuffer = new byte[compressedLength];
+            }
+            frame.get(compressedBuffer, 0, compressedLength);
+            inflater.setInput(compressedBuffer, 0, compressedLength);
+        }
+        if (inflateBuffer.length < originalLength) {
+            inflateBuffer = new byte[Math.max(originalLength, inflateBuffer.length * 2)];
+        }
+
+        try {
+            int length = 0;
+            while (length < originalLength && !inflater.finished()) {
+                int inflated = inflater.inflate(inflateBuffer, length, originalLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != originalLength) {
+                decompressionFailures++;
+                return null;
+            }
+            messagesDecompressed++;
+            return new String(inflateBuffer, 0, originalLength, UTF_8);
+        } catch (DataFormatException e) {
+            decompressionFailures++;
+            return null;
+        } finally {
+            shrinkBuffers();
+        }
+    }
+
+    public synchronized WritableMap getStats() {
+        WritableMap stats = new WritableNativeMap();
+        stats.putBoolean("enabled", enabled);
+        stats.putInt("thresholdBytes", thresholdBytes);
+        stats.putDouble("messagesCompressed", messagesCompressed);
+        stats.putDouble("messagesSentPlain", messagesSentPlain);
+        stats.putDouble("messagesDecompressed", messagesDecompressed);
+        stats.putDouble("decompressionFailures", decompressionFailures);
+        stats.putDouble("bytesBeforeCompression", bytesBeforeCompression);
+        stats.putDouble("bytesAfterCompression", bytesAfterCompression);
+        stats.putDouble("bytesSaved", bytesBeforeCompression - bytesAfterCompression);
+        stats.putDouble("ratio", bytesBeforeCompression > 0
+                ? bytesAfterCompression / (double) bytesBeforeCompression : 1);
+        return stats;
+    }
+
+    /*
+     * Frees the native zlib state, the compressor cannot be used afterwards.
+     */
+    public synchronized void release() {
+        enabled = false;
+        released = true;
+        deflater.end();
+        inflater.end();
+    }
+
+    private void shrinkBuffers() {
+        if (encodeBuffer.capacity() > RETAINED_BUFFER_BYTES) {
+            encodeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        }
+        if (frameBuffer.length > RETAINED_BUFFER_BYTES) {
+            frameBuffer = new byte[INITIAL_BUFFER_BYTES];
+        }
+        if (compressedBuffer.length > RETAINED_BUFFER_BYTES) {
+            compressedBuffer = new byte[INITIAL_BUFFER_BYTES];
+        }
+        if (inflateBuffer.length > RETAINED_BUFFER_BYTES) {
+            inflateBuffer = new byte[INITIAL_BUFFER_BYTES];
+        }
+    }
+
+    private static byte[] grow(byte[] buffer, int length) {
+        byte[] grown = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        return grown;
+    }
+}
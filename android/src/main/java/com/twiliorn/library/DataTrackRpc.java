@@ -0,0 +1,209 @@
+/**
+ * Request/response calls between participants over the data track.
+ * <p>
+ * Frames are binary, so they never mix with plain sendString messages:
+ * one type byte, an 8 byte correlation id, the sid of the participant that
+ * should answer (empty for anyone) and the UTF-8 payload. Ids start from a
+ * random per-instance prefix. Responses are broadcast like everything else
+ * on the track, so only the requester finds a match. Any number of requests
+ * can be outstanding. Responses are matched and timeouts fire on the data
+ * track message thread, and each request settles its own promise.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Handler;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.RemoteParticipant;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DataTrackRpc {
+    static final byte FRAME_REQUEST = 0x01;
+    static final byte FRAME_RESPONSE = 0x02;
+    static final byte FRAME_ERROR = 0x03;
+
+    static final String E_RPC_TIMEOUT = "E_RPC_TIMEOUT";
+    static final String E_RPC_REMOTE_ERROR = "E_RPC_REMOTE_ERROR";
+    static final String E_RPC_CANCELLED = "E_RPC_CANCELLED";
+    static final String E_RPC_SEND_FAILED = "E_RPC_SEND_FAILED";
+
+    private static final int DEFAULT_TIMEOUT_MS = 10000;
+    // type + correlation id + target length
+    private static final int HEADER_SIZE = 1 + 8 + 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    interface Transport {
+        /*
+         * Sends one frame, false when there is no data track to send it on.
+         */
+        boolean send(ByteBuffer frame);
+    }
+
+    interface RequestListener {
+        void onRequest(String requestId, RemoteParticipant participant, String payload);
+    }
+
+    private static class PendingRequest implements Runnable {
+        final long id;
+        final Promise promise;
+        final Map<Long, PendingRequest> owner;
+
+        PendingRequest(long id, Promise promise, Map<Long, PendingRequest> owner) {
+            this.id = id;
+            this.promise = promise;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            if (owner.remove(id) != null) {
+                promise.reject(E_RPC_TIMEOUT, "No response to request " + Long.toString(id, 16));
+            }
+        }
+    }
+
+    private final Handler handler;
+    private final Transport transport;
+    private final RequestListener listener;
+    private final long idPrefix = ((long) new SecureRandom().nextInt()) << 32;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+    private volatile String localParticipantSid;
+
+    public DataTrackRpc(Handler handler, Transport transport, RequestListener listener) {
+        this.handler = handler;
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    /*
+     * Requests addressed to other participants are ignored, so this has to be set once
+     * connected.
+     */
+    public void setLocalParticipantSid(String sid) {
+        localParticipantSid = sid;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // ===== OUTGOING ==============================================================================
+
+    public void request(String targetSid, String payload, int timeoutMs, Promise promise) {
+        long id = idPrefix | (nextId.incrementAndGet() & 0xffffffffL);
+        PendingRequest request = new PendingRequest(id, promise, pending);
+        pending.put(id, request);
+        if (!transport.send(encode(FRAME_REQUEST, id, targetSid, payload))) {
+            pending.remove(id);
+            promise.reject(E_RPC_SEND_FAILED, "No data track to send the request on");
+            return;
+        }
+        handler.postDelayed(request, timeoutMs > 0 ? timeoutMs : DEFAULT_TIMEOUT_MS);
+    }
+
+    /*
+     * Answers a request received through RequestListener. A non-null error rejects the
+     * promise on the requesting side.
+     */
+    public boolean respond(String requestId, String payload, String error) {
+        long id = Long.parseLong(requestId, 16);
+        if (error != null) {
+            return transport.send(encode(FRAME_ERROR, id, null, error));
+        }
+        return transport.send(encode(FRAME_RESPONSE, id, null, payload));
+    }
+
+    public void cancelAll(String reason) {
+        Iterator<PendingRequest> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            iterator.remove();
+            handler.removeCallbacks(request);
+            request.promise.reject(E_RPC_CANCELLED, reason);
+        }
+    }
+
+    // ===== INCOMING ==============================================================================
+
+    /*
+     * Called on the data track message thread with every binary message. Returns false when
+     * the message is not an RPC frame.
+     */
+    public boolean handleFrame(RemoteParticipant participant, ByteBuffer buffer) {
+        ByteBuffer frame = buffer.duplicate();
+        if (frame.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        byte type = frame.get();
+        if (type != FRAME_REQUEST && type != FRAME_RESPONSE && type != FRAME_ERROR) {
+            return false;
+        }
+        long id = frame.getLong();
+        int targetLength = frame.getShort() & 0xffff;
+        if (frame.remaining() < targetLength) {
+            return false;
+        }
+        String targetSid = targetLength > 0 ? readString(frame, targetLength) : null;
+        String payload = readString(frame, frame.remaining());
+
+        if (type == FRAME_REQUEST) {
+            if (targetSid == null || targetSid.equals(localParticipantSid)) {
+                listener.onRequest(Long.toString(id, 16), participant, payload);
+            }
+            return true;
+        }
+
+        PendingRequest request = pending.remove(id);
+        if (request == null) {
+            // Somebody else's response, or one that arrived after the timeout
+            return true;
+        }
+        handler.removeCallbacks(request);
+        if (type == FRAME_ERROR) {
+            request.promise.reject(E_RPC_REMOTE_ERROR, payload);
+            return true;
+        }
+        WritableMap result = new WritableNativeMap();
+        result.putString("payload", payload);
+        if (participant != null) {
+            WritableMap participantMap = new WritableNativeMap();
+            participantMap.putString("identity", participant.getIdentity());
+            participantMap.putString("sid", participant.getSid());
+            result.putMap("participant", participantMap);
+        }
+        request.promise.resolve(result);
+        return true;
+    }
+
+    // ===== FRAMING ===============================================================================
+
+    private static ByteBuffer encode(byte type, long id, String targetSid, String payload) {
+        byte[] target = targetSid != null ? targetSid.getBytes(UTF_8) : new byte[0];
+        byte[] body = payload != null ? payload.getBytes(UTF_8) : new byte[0];
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + target.length + body.length);
+        frame.put(type);
+        frame.putLong(id);
+        frame.putShort((short) target.length);
+        frame.put(target);
+        frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    private static String readString(ByteBuffer frame, int length) {
+        byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,535 @@
+/**
+ * Sends and receives payloads larger than a single data track message.
+ * <p>
+ * A transfer starts with a FRAME_TRANSFER_START frame carrying the size, the
+ * chunk count and a name, followed by FRAME_TRANSFER_CHUNK frames with a
+ * sequence number. Chunks are written straight to their offset in a temp
+ * file, so nothing is assembled in memory. Each sender may only have a few
+ * transfers open and may only run a bounded number of chunks ahead of the
+ * first missing one. A chunk whose length does not match its place in the
+ * transfer drops the transfer. Transfers that go quiet are dropped and their
+ * files deleted. Transfers larger than MAX_TRANSFER_BYTES, or than the free
+ * space in the cache, are refused. Received files are left in the cache for JS to
+ * move and are deleted after COMPLETED_FILE_MAX_AGE_MS, together with any
+ * .part file a crashed session left behind. Everything runs on the data
+ * track message thread.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.RemoteParticipant;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class DataTrackTransfers {
+    private static final String TAG = "DataTrackTransfers";
+
+    static final byte FRAME_TRANSFER_START = 0x20;
+    static final byte FRAME_TRANSFER_CHUNK = 0x21;
+
+    static final String STATE_PROGRESS = "progress";
+    static final String STATE_COMPLETED = "completed";
+    static final String STATE_FAILED = "failed";
+    static final String DIRECTION_SEND = "send";
+    static final String DIRECTION_RECEIVE = "receive";
+
+    static final String E_TRANSFER_FAILED = "E_TRANSFER_FAILED";
+
+    // Stays below the 16 KiB message size every data channel implementation accepts
+    private static final int MAX_FRAME_SIZE = 16 * 1024;
+    private static final int START_HEADER_SIZE = 1 + 8 + 8 + 4 + 1;
+    private static final int CHUNK_HEADER_SIZE = 1 + 8 + 4;
+    static final int CHUNK_SIZE = MAX_FRAME_SIZE - CHUNK_HEADER_SIZE;
+
+    private static final int MAX_TRANSFERS_PER_SENDER = 4;
+    // How far past the first missing chunk a sender may go
+    private static final int REASSEMBLY_WINDOW_CHUNKS = 256;
+    private static final long TRANSFER_TIMEOUT_MS = 15000;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    // Paces the sender to about 1.6 MB/s, the SDK gives no view of the channel's send buffer
+    private static final long SEND_INTERVAL_MS = 10;
+    // Text transfers up to this size are handed to JS inline instead of as a file
+    private static final long MAX_INLINE_TEXT_BYTES = 1024 * 1024;
+    // totalBytes comes from the sender, larger transfers could fill the device
+    private static final long MAX_TRANSFER_BYTES = 256L * 1024 * 1024;
+    private static final long COMPLETED_FILE_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    private static final String PART_SUFFIX = ".part";
+
+    private static final byte FLAG_TEXT = 0x01;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    interface Listener {
+        void onTransferProgress(WritableMap event);
+    }
+
+    private static class IncomingTransfer {
+        final long id;
+        final RemoteParticipant participant;
+        final String name;
+        final boolean text;
+        final long totalBytes;
+        final int totalChunks;
+        final File file;
+        final RandomAccessFile output;
+        final BitSet received = new BitSet();
+        int firstMissing = 0;
+        int receivedChunks = 0;
+        long receivedBytes = 0;
+        long lastActivity = SystemClock.elapsedRealtime();
+        long lastProgress = 0;
+
+        IncomingTransfer(long id, RemoteParticipant participant, String name, boolean text,
+                         long totalBytes, int totalChunks, File file) throws IOException {
+            this.id = id;
+            this.participant = participant;
+            this.name = name;
+            this.text = text;
+            this.totalBytes = totalBytes;
+            this.totalChunks = totalChunks;
+            this.file = file;
+            this.output = new RandomAccessFile(file, "rw");
+        }
+    }
+
+    private class OutgoingTransfer implements Runnable {
+        final long id;
+        final String name;
+        final boolean text;
+        final long totalBytes;
+        final int totalChunks;
+        final InputStream input;
+        final Promise promise;
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        int sequence = 0;
+        long sentBytes = 0;
+        long lastProgress = 0;
+
+        OutgoingTransfer(long id, String name, boolean text, long totalBytes, InputStream input, Promise promise) {
+            this.id = id;
+            this.name = name;
+            this.text = text;
+            this.totalBytes = totalBytes;
+            this.totalChunks = (int) ((totalBytes + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.input = input;
+            this.promise = promise;
+        }
+
+        /*
+         * Sends one chunk per run and reposts itself, incoming messages are handled in between.
+         */
+        @Override
+        public void run() {
+            try {
+                if (sequence == 0 && !transport.send(encodeStart(this))) {
+                    fail("No data track to send on");
+                    return;
+                }
+                if (sequence < totalChunks) {
+                    int length = readFully(input, chunk);
+                    ByteBuffer frame = ByteBuffer.allocate(CHUNK_HEADER_SIZE + length);
+                    frame.put(FRAME_TRANSFER_CHUNK);
+                    frame.putLong(id);
+                    frame.putInt(sequence);
+                    frame.put(chunk, 0, length);
+                    frame.flip();
+                    if (!transport.send(frame)) {
+                        fail("No data track to send on");
+                        return;
+                    }
+                    sequence++;
+                    sentBytes += length;
+                }
+                if (sequence < totalChunks) {
+                    long now = SystemClock.elapsedRealtime();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        listener.onTransferProgress(buildEvent(id, DIRECTION_SEND, null, name,
+                                sentBytes, totalBytes, STATE_PROGRESS));
+                    }
+                    handler.postDelayed(this, SEND_INTERVAL_MS);
+                    return;
+                }
+                close(input);
+                outgoing.remove(id);
+                listener.onTransferProgress(buildEvent(id, DIRECTION_SEND, null, name,
+                        sentBytes, totalBytes, STATE_COMPLETED));
+                promise.resolve(Long.toString(id, 16));
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        }
+
+        void fail(String error) {
+            close(input);
+            outgoing.remove(id);
+            WritableMap event = buildEvent(id, DIRECTION_SEND, null, name, sentBytes, totalBytes, STATE_FAILED);
+            event.putString("error", error);
+            listener.onTransferProgress(event);
+            promise.reject(E_TRANSFER_FAILED, error);
+        }
+    }
+
+    private final Handler handler;
+    private final DataTrackRpc.Transport transport;
+    private final Listener listener;
+    private final File directory;
+    private final SecureRandom random = new SecureRandom();
+
+    // Only touched on the handler thread
+    private final Map<String, Map<Long, IncomingTransfer>> incoming = new HashMap<>();
+    private final Map<Long, OutgoingTransfer> outgoing = new HashMap<>();
+    private boolean sweepScheduled = false;
+
+    private final Runnable sweep = new Runnable() {
+        @Override
+        public void run() {
+            sweepScheduled = false;
+            long now = SystemClock.elapsedRealtime();
+            Iterator<Map<Long, IncomingTransfer>> senders = incoming.values().iterator();
+            while (senders.hasNext()) {
+                Map<Long, IncomingTransfer> transfers = senders.next();
+                Iterator<IncomingTransfer> iterator = transfers.values().iterator();
+                while (iterator.hasNext()) {
+                    IncomingTransfer transfer = iterator.next();
+                    if (now - transfer.lastActivity >= TRANSFER_TIMEOUT_MS) {
+                        iterator.remove();
+                        drop(transfer, "Timed out");
+                    }
+                }
+                if (transfers.isEmpty()) {
+                    senders.remove();
+                }
+            }
+            scheduleSweep();
+        }
+    };
+
+    public DataTrackTransfers(Handler handler, DataTrackRpc.Transport transport, Listener listener, File cacheDir) {
+        this.handler = handler;
+        this.transport = transport;
+        this.listener = listener;
+        this.directory = new File(cacheDir, "twilio-data-transfers");
+        handler.post(this::deleteStaleFiles);
+    }
+
+    /*
+     * A .part file that has not been written to for a while belongs to no live transfer,
+     * possibly of another view sharing the directory.
+     */
+    private void deleteStaleFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            long maxAgeMs = file.getName().endsWith(PART_SUFFIX) ? 2 * TRANSFER_TIMEOUT_MS : COMPLETED_FILE_MAX_AGE_MS;
+            if (now - file.lastModified() >= maxAgeMs) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    // ===== SEND ==================================================================================
+
+    public void sendFile(final String path, final String name, final Promise promise) {
+        handler.post(() -> {
+            File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+            try {
+                InputStream input = new FileInputStream(file);
+                start(name != null ? name : file.getName(), false, file.length(), input, promise);
+            } catch (IOException e) {
+                promise.reject(E_TRANSFER_FAILED, e);
+            }
+        });
+    }
+
+    public void sendText(final String data, final String name, final Promise promise) {
+        handler.post(() -> {
+            byte[] bytes = data.getBytes(UTF_8);
+            start(name, true, bytes.length, new ByteArrayInputStream(bytes), promise);
+        });
+    }
+
+    private void start(String name, boolean text, long totalBytes, InputStream input, Promise promise) {
+        long id = random.nextLong();
+        OutgoingTransfer transfer = new OutgoingTransfer(id, name, text, totalBytes, input, promise);
+        outgoing.put(id, transfer);
+        transfer.run();
+    }
+
+    private static ByteBuffer encodeStart(OutgoingTransfer transfer) {
+        byte[] name = transfer.name != null ? transfer.name.getBytes(UTF_8) : new byte[0];
+        int nameLength = Math.min(name.length, MAX_FRAME_SIZE - START_HEADER_SIZE);
+        ByteBuffer frame = ByteBuffer.allocate(START_HEADER_SIZE + nameLength);
+        frame.put(FRAME_TRANSFER_START);
+        frame.putLong(transfer.id);
+        frame.putLong(transfer.totalBytes);
+        frame.putInt(transfer.totalChunks);
+        frame.put(transfer.text ? FLAG_TEXT : 0);
+        frame.put(name, 0, nameLength);
+        frame.flip();
+        return frame;
+    }
+
+    // ===== RECEIVE ===============================================================================
+
+    public static boolean isTransferFrame(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+        byte type = buffer.get(buffer.position());
+        return type == FRAME_TRANSFER_START || type == FRAME_TRANSFER_CHUNK;
+    }
+
+    /*
+     * Called on the data track message thread with frames that passed isTransferFrame.
+     */
+    public void handleFrame(RemoteParticipant participant, ByteBuffer buffer) {
+        if (participant == null) {
+            return;
+        }
+        ByteBuffer frame = buffer.duplicate();
+        byte type = frame.get();
+        if (type == FRAME_TRANSFER_START && frame.remaining() >= START_HEADER_SIZE - 1) {
+            handleStart(participant, frame);
+        } else if (type == FRAME_TRANSFER_CHUNK && frame.remaining() >= CHUNK_HEADER_SIZE - 1) {
+            handleChunk(participant, frame);
+        }
+    }
+
+    private void handleStart(RemoteParticipant participant, ByteBuffer frame) {
+        long id = frame.getLong();
+        long totalBytes = frame.getLong();
+        int totalChunks = frame.getInt();
+        boolean text = (frame.get() & FLAG_TEXT) != 0;
+        byte[] nameBytes = new byte[frame.remaining()];
+        frame.get(nameBytes);
+        String name = new String(nameBytes, UTF_8);
+
+        Map<Long, IncomingTransfer> transfers = incoming.get(participant.getSid());
+        if (transfers == null) {
+            transfers = new HashMap<>();
+            incoming.put(participant.getSid(), transfers);
+        }
+        if (transfers.size() >= MAX_TRANSFERS_PER_SENDER || totalBytes < 0 || totalChunks < 0
+                || totalChunks != (totalBytes + CHUNK_SIZE - 1) / CHUNK_SIZE) {
+            Log.w(TAG, "Ignoring transfer from " + participant.getSid());
+            return;
+        }
+
+        try {
+            if (totalBytes > MAX_TRANSFER_BYTES) {
+                throw new IOException("Transfer of " + totalBytes + " bytes exceeds the limit of " + MAX_TRANSFER_BYTES);
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            if (totalBytes > directory.getUsableSpace()) {
+                throw new IOException("Not enough space for " + totalBytes + " bytes");
+            }
+            File file = new File(directory, Long.toHexString(id) + PART_SUFFIX);
+            IncomingTransfer transfer = new IncomingTransfer(id, participant, name, text, totalBytes, totalChunks, file);
+            transfers.put(id, transfer);
+            listener.onTransferProgress(buildEvent(id, DIRECTION_RECEIVE, participant, name, 0, totalBytes, STATE_PROGRESS));
+            if (totalChunks == 0) {
+                complete(transfers, transfer);
+            }
+            scheduleSweep();
+        } catch (IOException e) {
+            WritableMap event = buildEvent(id, DIRECTION_RECEIVE, participant, name, 0, totalBytes, STATE_FAILED);
+            event.putString("error", e.getMessage());
+            listener.onTransferProgress(event);
+        }
+    }
+
+    private void handleChunk(RemoteParticipant participant, ByteBuffer frame) {
+        Map<Long, IncomingTransfer> transfers = incoming.get(participant.getSid());
+        long id = frame.getLong();
+        IncomingTransfer transfer = transfers != null ? transfers.get(id) : null;
+        if (transfer == null) {
+            return;
+        }
+        int sequence = frame.getInt();
+        if (sequence < 0 || sequence >= transfer.totalChunks || transfer.received.get(sequence)) {
+            return;
+        }
+        if (sequence >= transfer.firstMissing + REASSEMBLY_WINDOW_CHUNKS) {
+            transfers.remove(id);
+            drop(transfer, "Chunk outside the reassembly window");
+            return;
+        }
+        // Every chunk but the last is full, anything else would overlap or leave a hole
+        int length = frame.remaining();
+        long offset = (long) sequence * CHUNK_SIZE;
+        long expectedLength = Math.min(CHUNK_SIZE, transfer.totalBytes - offset);
+        if (length != expectedLength) {
+            transfers.remove(id);
+            drop(transfer, "Chunk " + sequence + " has " + length + " bytes, expected " + expectedLength);
+            return;
+        }
+
+        try {
+            transfer.output.seek(offset);
+            transfer.output.getChannel().write(frame);
+            transfer.received.set(sequence);
+            transfer.receivedChunks++;
+            transfer.receivedBytes += length;
+            transfer.lastActivity = SystemClock.elapsedRealtime();
+            transfer.firstMissing = transfer.received.nextClearBit(transfer.firstMissing);
+        } catch (IOException e) {
+            transfers.remove(id);
+            drop(transfer, e.getMessage());
+            return;
+        }
+
+        if (transfer.receivedChunks == transfer.totalChunks) {
+            complete(transfers, transfer);
+        } else if (transfer.lastActivity - transfer.lastProgress >= PROGRESS_INTERVAL_MS) {
+            transfer.lastProgress = transfer.lastActivity;
+            listener.onTransferProgress(buildEvent(id, DIRECTION_RECEIVE, transfer.participant, transfer.name,
+                    transfer.receivedBytes, transfer.totalBytes, STATE_PROGRESS));
+        }
+    }
+
+    private void complete(Map<Long, IncomingTransfer> transfers, IncomingTransfer transfer) {
+        transfers.remove(transfer.id);
+        WritableMap event = buildEvent(transfer.id, DIRECTION_RECEIVE, transfer.participant, transfer.name,
+                transfer.receivedBytes, transfer.totalBytes, STATE_COMPLETED);
+        try {
+            if (transfer.text && transfer.totalBytes <= MAX_INLINE_TEXT_BYTES) {
+                byte[] data = new byte[(int) transfer.totalBytes];
+                transfer.output.seek(0);
+                transfer.output.readFully(data);
+                close(transfer.output);
+                deleteFile(transfer.file);
+                event.putString("data", new String(data, UTF_8));
+            } else {
+                close(transfer.output);
+                File completed = new File(directory, Long.toHexString(transfer.id));
+                File result = transfer.file.renameTo(completed) ? completed : transfer.file;
+                event.putString("filePath", result.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            drop(transfer, e.getMessage());
+            return;
+        }
+        listener.onTransferProgress(event);
+    }
+
+    private void drop(IncomingTransfer transfer, String error) {
+        close(transfer.output);
+        deleteFile(transfer.file);
+        WritableMap event = buildEvent(transfer.id, DIRECTION_RECEIVE, transfer.participant, transfer.name,
+                transfer.receivedBytes, transfer.totalBytes, STATE_FAILED);
+        event.putString("error", error);
+        listener.onTransferProgress(event);
+    }
+
+    /*
+     * Drops what a departed participant was still sending.
+     */
+    public void removeParticipant(final String sid) {
+        handler.post(() -> {
+            Map<Long, IncomingTransfer> transfers = incoming.remove(sid);
+            if (transfers != null) {
+                for (IncomingTransfer transfer : transfers.values()) {
+                    drop(transfer, "Participant disconnected");
+                }
+            }
+        });
+    }
+
+    /*
+     * Fails every transfer in either direction, used on disconnect and release.
+     */
+    public void cancelAll(final String reason) {
+        handler.post(() -> {
+            for (Map<Long, IncomingTransfer> transfers : incoming.values()) {
+                for (IncomingTransfer transfer : transfers.values()) {
+                    drop(transfer, reason);
+                }
+            }
+            incoming.clear();
+            for (OutgoingTransfer transfer : outgoing.values().toArray(new OutgoingTransfer[0])) {
+                handler.removeCallbacks(transfer);
+                transfer.fail(reason);
+            }
+            handler.removeCallbacks(sweep);
+            sweepScheduled = false;
+        });
+    }
+
+    // ===== HELPERS ===============================================================================
+
+    private void scheduleSweep() {
+        if (!sweepScheduled && !incoming.isEmpty()) {
+            sweepScheduled = true;
+            handler.postDelayed(sweep, TRANSFER_TIMEOUT_MS / 3);
+        }
+    }
+
+    private static WritableMap buildEvent(long id, String direction, RemoteParticipant participant, String name,
+                                          long bytesTransferred, long totalBytes, String state) {
+        WritableMap event = new WritableNativeMap();
+        event.putString("transferId", Long.toString(id, 16));
+        event.putString("direction", direction);
+        if (participant != null) {
+            WritableMap participantMap = new WritableNativeMap();
+            participantMap.putString("identity", participant.getIdentity());
+            participantMap.putString("sid", participant.getSid());
+            event.putMap("participant", participantMap);
+        }
+        event.putString("name", name);
+        event.putDouble("bytesTransferred", bytesTransferred);
+        event.putDouble("totalBytes", totalBytes);
+        event.putString("state", state);
+        return event;
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * The one thread that every video view uses for data track work.
+ * <p>
+ * Remote data track listeners deliver messages on the looper they were set
+ * on, and RPC, transfers and dispatch to JS run there too. Instead of a
+ * thread per view, all views share this one. It is started when the first
+ * view acquires it and quit once the last view has released it and its
+ * queued work has run, so remounting screens does not leave threads behind.
+ * The handler measures how late each of its own messages runs compared to
+ * when it was due. The SDK delivers remote data track messages through its
+ * own handler on the same looper, those are not counted, but a backlog of
+ * them shows up as latency on the messages that are.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+
+public class DataTrackWorker {
+    private static final String THREAD_NAME = "DataTrackMessages";
+
+    private static HandlerThread thread;
+    private static MeasuringHandler handler;
+    private static int users = 0;
+    private static int threadsStarted = 0;
+
+    private static class MeasuringHandler extends Handler {
+        private long messages = 0;
+        private long totalLatencyMs = 0;
+        private long maxLatencyMs = 0;
+
+        MeasuringHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void dispatchMessage(Message msg) {
+            long latencyMs = Math.max(0, SystemClock.uptimeMillis() - msg.getWhen());
+            synchronized (this) {
+                messages++;
+                totalLatencyMs += latencyMs;
+                maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+            }
+            super.dispatchMessage(msg);
+        }
+    }
+
+    private DataTrackWorker() {
+    }
+
+    /*
+     * Returns the shared handler, starting the thread if nobody is using it. Every acquire
+     * has to be balanced by a release.
+     */
+    public static synchronized Handler acquire() {
+        users++;
+        if (thread == null) {
+            thread = new HandlerThread(THREAD_NAME);
+            thread.start();
+            handler = new MeasuringHandler(thread.getLooper());
+            threadsStarted++;
+        }
+        return handler;
+    }
+
+    /*
+     * The thread is quit behind whatever the last user still queued, so cancellations
+     * posted just before releasing get to run.
+     */
+    public static synchronized void release() {
+        if (users == 0) {
+            return;
+        }
+        users--;
+        if (users > 0) {
+            return;
+        }
+        final HandlerThread releasedThread = thread;
+        handler.post(() -> {
+            synchronized (DataTrackWorker.class) {
+                if (users == 0 && thread == releasedThread) {
+                    thread.quit();
+                    thread = null;
+                    handler = null;
+                }
+            }
+        });
+    }
+
+    public static synchronized WritableMap getStats() {
+        WritableMap stats = new WritableNativeMap();
+        stats.putInt("threads", thread != null ? 1 : 0);
+        stats.putInt("threadsStarted", threadsStarted);
+        stats.putInt("users", users);
+        if (handler != null) {
+            synchronized (handler) {
+                stats.putDouble("messages", handler.messages);
+                stats.putDouble("averageQueueLatencyMs",
+                        handler.messages > 0 ? handler.totalLatencyMs / (double) handler.messages : 0);
+                stats.putDouble("maxQueueLatencyMs", handler.maxLatencyMs);
+            }
+        }
+        return stats;
+    }
+}
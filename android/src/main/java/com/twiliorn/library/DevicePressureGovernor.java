@@ -0,0 +1,188 @@
+/**
+ * Watches thermal, battery saver and memory trim signals and folds them into
+ * a single pressure level for the call to react to.
+ * <p>
+ * The thermal signal is the battery temperature from ACTION_BATTERY_CHANGED,
+ * which is available on every API level this library supports.
+ */
+
+package com.twiliorn.library;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Configuration;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DevicePressureGovernor {
+    public static final int LEVEL_NORMAL = 0;
+    public static final int LEVEL_MODERATE = 1;
+    public static final int LEVEL_SEVERE = 2;
+
+    public static final String REASON_THERMAL = "thermal";
+    public static final String REASON_BATTERY_SAVER = "batterySaver";
+    public static final String REASON_MEMORY = "memory";
+
+    // Battery temperature thresholds in tenths of a degree Celsius
+    private static final int THERMAL_MODERATE = 400;
+    private static final int THERMAL_SEVERE = 450;
+    private static final int THERMAL_HYSTERESIS = 20;
+
+    // There is no callback when memory pressure ends, so it is assumed to fade after a while
+    private static final long MEMORY_PRESSURE_DURATION_MS = 60000;
+
+    public interface Listener {
+        void onPressureChanged(int level, List<String> reasons);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private boolean started = false;
+    private int thermalLevel = LEVEL_NORMAL;
+    private boolean batterySaver = false;
+    private int memoryLevel = LEVEL_NORMAL;
+    private int level = LEVEL_NORMAL;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                int temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+                thermalLevel = thermalLevelFor(temperature);
+            } else {
+                batterySaver = isPowerSaveMode();
+            }
+            update();
+        }
+    };
+
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int trimLevel) {
+            int newLevel;
+            if (trimLevel == TRIM_MEMORY_RUNNING_CRITICAL || trimLevel >= TRIM_MEMORY_COMPLETE) {
+                newLevel = LEVEL_SEVERE;
+            } else if (trimLevel == TRIM_MEMORY_RUNNING_LOW || trimLevel == TRIM_MEMORY_RUNNING_MODERATE) {
+                newLevel = LEVEL_MODERATE;
+            } else {
+                return;
+            }
+            memoryLevel = Math.max(memoryLevel, newLevel);
+            handler.removeCallbacks(clearMemoryPressure);
+            handler.postDelayed(clearMemoryPressure, MEMORY_PRESSURE_DURATION_MS);
+            update();
+        }
+
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    private final Runnable clearMemoryPressure = new Runnable() {
+        @Override
+        public void run() {
+            memoryLevel = LEVEL_NORMAL;
+            update();
+        }
+    };
+
+    public DevicePressureGovernor(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        // ACTION_BATTERY_CHANGED is sticky, so the current temperature is delivered right away
+        context.registerReceiver(batteryReceiver, filter);
+        context.registerComponentCallbacks(memoryCallbacks);
+        batterySaver = isPowerSaveMode();
+        update();
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.unregisterReceiver(batteryReceiver);
+        context.unregisterComponentCallbacks(memoryCallbacks);
+        handler.removeCallbacks(clearMemoryPressure);
+        thermalLevel = LEVEL_NORMAL;
+        memoryLevel = LEVEL_NORMAL;
+        batterySaver = false;
+        level = LEVEL_NORMAL;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    private int thermalLevelFor(int temperature) {
+        // Step up at the threshold, step back down only once clearly below it
+        if (temperature >= THERMAL_SEVERE ||
+                (thermalLevel == LEVEL_SEVERE && temperature > THERMAL_SEVERE - THERMAL_HYSTERESIS)) {
+            return LEVEL_SEVERE;
+        }
+        if (temperature >= THERMAL_MODERATE ||
+                (thermalLevel >= LEVEL_MODERATE && temperature > THERMAL_MODERATE - THERMAL_HYSTERESIS)) {
+            return LEVEL_MODERATE;
+        }
+        return LEVEL_NORMAL;
+    }
+
+    private boolean isPowerSaveMode() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return powerManager != null && powerManager.isPowerSaveMode();
+    }
+
+    private void update() {
+        if (!started) {
+            return;
+        }
+        List<String> reasons = new ArrayList<>();
+        int newLevel = LEVEL_NORMAL;
+        if (thermalLevel > LEVEL_NORMAL) {
+            reasons.add(REASON_THERMAL);
+            newLevel = Math.max(newLevel, thermalLevel);
+        }
+        if (batterySaver) {
+            reasons.add(REASON_BATTERY_SAVER);
+            newLevel = Math.max(newLevel, LEVEL_MODERATE);
+        }
+        if (memoryLevel > LEVEL_NORMAL) {
+            reasons.add(REASON_MEMORY);
+            newLevel = Math.max(newLevel, memoryLevel);
+        }
+        if (newLevel != level) {
+            level = newLevel;
+            listener.onPressureChanged(level, reasons);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Process-wide ring buffer of the last SDK callbacks, for bug reports.
+ * <p>
+ * Every entry holds a System.nanoTime timestamp, the calling thread id, the
+ * event name and up to two ids plus an int argument. Slots are preallocated
+ * and claimed with one atomic increment. Event names are string constants
+ * and the ids are strings the SDK already holds, so recording takes no lock
+ * and allocates nothing. A per-slot sequence number lets dump skip slots
+ * that are being overwritten while it reads. Every field is written and read
+ * through an atomic array, so a field written by a newer record is always
+ * ordered after that record cleared the sequence, and dump's second sequence
+ * check catches it.
+ */
+
+package com.twiliorn.library;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class FlightRecorder {
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AtomicLong cursor = new AtomicLong();
+    // Index of the write a slot holds, -1 while it is being written
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final AtomicLongArray timestamps = new AtomicLongArray(CAPACITY);
+    private static final AtomicLongArray threadIds = new AtomicLongArray(CAPACITY);
+    private static final AtomicReferenceArray<String> events = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicReferenceArray<String> firstIds = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicReferenceArray<String> secondIds = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicIntegerArray args = new AtomicIntegerArray(CAPACITY);
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    private FlightRecorder() {
+    }
+
+    public static void record(String event, String firstId) {
+        record(event, firstId, null, 0);
+    }
+
+    public static void record(String event, String firstId, String secondId) {
+        record(event, firstId, secondId, 0);
+    }
+
+    public static void record(String event, String firstId, String secondId, int arg) {
+        long index = cursor.getAndIncrement();
+        int slot = (int) (index & MASK);
+        sequences.set(slot, -1);
+        timestamps.set(slot, System.nanoTime());
+        threadIds.set(slot, Thread.currentThread().getId());
+        events.set(slot, event);
+        firstIds.set(slot, firstId);
+        secondIds.set(slot, secondId);
+        args.set(slot, arg);
+        sequences.set(slot, index);
+    }
+
+    public static long getRecordedCount() {
+        return cursor.get();
+    }
+
+    /*
+     * Writes the buffered entries, oldest first, as tab separated lines of
+     * timestampNs, thread, event, firstId, secondId and arg. Returns the number of entries
+     * written.
+     */
+    public static int dump(File file) throws IOException {
+        long end = cursor.get();
+        long start = Math.max(0, end - CAPACITY);
+        int written = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write("# twilio-video flight recorder, nanoTime at dump " + System.nanoTime() + "\n");
+            for (long index = start; index < end; index++) {
+                int slot = (int) (index & MASK);
+                if (sequences.get(slot) != index) {
+                    continue;
+                }
+                long timestamp = timestamps.get(slot);
+                long threadId = threadIds.get(slot);
+                String event = events.get(slot);
+                String firstId = firstIds.get(slot);
+                String secondId = secondIds.get(slot);
+                int arg = args.get(slot);
+                if (sequences.get(slot) != index) {
+                    // Overwritten while reading
+                    continue;
+                }
+                writer.write(Long.toString(timestamp));
+                writer.write('\t');
+                writer.write(Long.toString(threadId));
+                writer.write('\t');
+                writer.write(event);
+                writer.write('\t');
+                writer.write(firstId != null ? firstId : "-");
+                writer.write('\t');
+                writer.write(secondId != null ? secondId : "-");
+                writer.write('\t');
+                writer.write(Integer.toString(arg));
+                writer.write('\n');
+                written++;
+            }
+        } finally {
+            writer.close();
+        }
+        return written;
+    }
+}
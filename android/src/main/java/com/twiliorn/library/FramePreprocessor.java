@@ -0,0 +1,490 @@
+/**
+ * Chain of processing stages between the camera capturer and the local video
+ * track, for things like region cropping and blur.
+ * <p>
+ * Frames are copied into pooled buffers and processed on a dedicated worker
+ * so the camera thread is never held up. A frame that arrives while the
+ * previous one is still being processed is dropped, and a stage that pushes
+ * the chain past the frame budget is skipped for a while. Per-stage timing
+ * is kept for the stats call.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.VideoCapturer;
+import com.twilio.video.VideoDimensions;
+import com.twilio.video.VideoFormat;
+import com.twilio.video.VideoFrame;
+import com.twilio.video.VideoPixelFormat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FramePreprocessor {
+    private static final String THREAD_NAME = "FramePreprocessor";
+    private static final int MAX_POOLED_BUFFERS = 4;
+    // Frames a stage sits out after it pushed a frame past the budget
+    private static final int SHED_FRAMES = 30;
+
+    /*
+     * A stage works in place on an NV21 frame. It may swap the frame buffer for one of a
+     * different size taken from the pool, cropping does.
+     */
+    public interface Stage {
+        String getName();
+
+        void process(Frame frame, FramePreprocessor pool);
+    }
+
+    public static class Frame {
+        byte[] data;
+        int width;
+        int height;
+    }
+
+    private static class StageState {
+        final Stage stage;
+        // Guarded by statsLock
+        long runs;
+        long skipped;
+        long totalNs;
+        long maxNs;
+        // Worker only
+        int shedUntilFrame;
+
+        StageState(Stage stage) {
+            this.stage = stage;
+        }
+    }
+
+    private volatile StageState[] stages = new StageState[0];
+    private final ArrayDeque<byte[]> bufferPool = new ArrayDeque<>();
+    private final AtomicBoolean frameInFlight = new AtomicBoolean(false);
+
+    // Written on the worker or capture thread, getStats takes a snapshot under the same lock
+    private final Object statsLock = new Object();
+    private long framesIn;
+    private long framesProcessed;
+    private long framesDropped;
+    private long framesPassedThrough;
+    private volatile long budgetNs;
+    private int frameIndex;
+
+    public boolean isEnabled() {
+        return stages.length > 0;
+    }
+
+    /*
+     * Replaces the chain. Passing null or an empty map turns preprocessing off.
+     */
+    public void configure(ReadableMap config) {
+        List<Stage> chain = new ArrayList<>();
+        if (config != null) {
+            if (config.hasKey("crop") && !config.isNull("crop")) {
+                chain.add(new CropStage(Region.fromReadableMap(config.getMap("crop"))));
+            }
+            if (config.hasKey("blur") && !config.isNull("blur")) {
+                ReadableMap blur = config.getMap("blur");
+                int radius = blur.hasKey("radius") && !blur.isNull("radius") ? blur.getInt("radius") : 8;
+                Region sharpRegion = blur.hasKey("sharpRegion") && !blur.isNull("sharpRegion")
+                        ? Region.fromReadableMap(blur.getMap("sharpRegion")) : null;
+                chain.add(new BlurStage(radius, sharpRegion));
+            }
+        }
+        setStages(chain);
+    }
+
+    public void setStages(List<Stage> chain) {
+        StageState[] states = new StageState[chain.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new StageState(chain.get(i));
+        }
+        stages = states;
+    }
+
+    public VideoCapturer wrap(VideoCapturer capturer) {
+        return new PreprocessingCapturer(capturer);
+    }
+
+    public WritableMap getStats() {
+        WritableMap stats = new WritableNativeMap();
+        WritableArray stageStats = new WritableNativeArray();
+        StageState[] chain = stages;
+        synchronized (statsLock) {
+            stats.putDouble("framesIn", framesIn);
+            stats.putDouble("framesProcessed", framesProcessed);
+            stats.putDouble("framesDropped", framesDropped);
+            stats.putDouble("framesPassedThrough", framesPassedThrough);
+            for (StageState state : chain) {
+                WritableMap stage = new WritableNativeMap();
+                stage.putString("name", state.stage.getName());
+                stage.putDouble("runs", state.runs);
+                stage.putDouble("skipped", state.skipped);
+                stage.putDouble("averageMs", state.runs > 0 ? state.totalNs / 1000000.0 / state.runs : 0);
+                stage.putDouble("maxMs", state.maxNs / 1000000.0);
+                stageStats.pushMap(stage);
+            }
+        }
+        stats.putDouble("budgetMs", budgetNs / 1000000.0);
+        stats.putArray("stages", stageStats);
+        return stats;
+    }
+
+    // ===== BUFFER POOL ===========================================================================
+
+    public byte[] obtainBuffer(int size) {
+        synchronized (bufferPool) {
+            Iterator<byte[]> iterator = bufferPool.iterator();
+            while (iterator.hasNext()) {
+                byte[] buffer = iterator.next();
+                if (buffer.length == size) {
+                    iterator.remove();
+                    return buffer;
+                }
+            }
+        }
+        return new byte[size];
+    }
+
+    public void recycleBuffer(byte[] buffer) {
+        synchronized (bufferPool) {
+            // Oldest buffers go first, they are the likeliest to be of a stale size
+            if (bufferPool.size() >= MAX_POOLED_BUFFERS) {
+                bufferPool.removeLast();
+            }
+            bufferPool.push(buffer);
+        }
+    }
+
+    // ===== CHAIN =================================================================================
+
+    /*
+     * Runs on the worker. When the chain runs over budget the slowest stage that ran is
+     * shed for the next SHED_FRAMES frames.
+     */
+    private void runStages(Frame frame) {
+        StageState[] chain = stages;
+        frameIndex++;
+        long chainNs = 0;
+        StageState slowest = null;
+        long slowestNs = 0;
+        for (StageState state : chain) {
+            if (frameIndex < state.shedUntilFrame) {
+                synchronized (statsLock) {
+                    state.skipped++;
+                }
+                continue;
+            }
+            long startedAt = System.nanoTime();
+            state.stage.process(frame, this);
+            long elapsedNs = System.nanoTime() - startedAt;
+            synchronized (statsLock) {
+                state.runs++;
+                state.totalNs += elapsedNs;
+                state.maxNs = Math.max(state.maxNs, elapsedNs);
+            }
+            chainNs += elapsedNs;
+            if (elapsedNs > slowestNs) {
+                slowestNs = elapsedNs;
+                slowest = state;
+            }
+        }
+        if (budgetNs > 0 && chainNs > budgetNs && slowest != null) {
+            slowest.shedUntilFrame = frameIndex + SHED_FRAMES;
+        }
+    }
+
+    /*
+     * Hands processed frames to the SDK until the capture it belongs to is stopped. The
+     * lock makes stopCapture wait for a delivery in progress, so no frame reaches a
+     * listener whose native side is gone.
+     */
+    private static class Delivery {
+        private final VideoCapturer.Listener listener;
+        private boolean stopped = false;
+
+        Delivery(VideoCapturer.Listener listener) {
+            this.listener = listener;
+        }
+
+        synchronized boolean deliver(VideoFrame frame) {
+            if (stopped) {
+                return false;
+            }
+            listener.onFrameCaptured(frame);
+            return true;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+        }
+    }
+
+    private class PreprocessingCapturer implements VideoCapturer {
+        private final VideoCapturer capturer;
+        private HandlerThread thread;
+        private Handler handler;
+        private Delivery delivery;
+
+        PreprocessingCapturer(VideoCapturer capturer) {
+            this.capturer = capturer;
+        }
+
+        @Override
+        public List<VideoFormat> getSupportedFormats() {
+            return capturer.getSupportedFormats();
+        }
+
+        @Override
+        public boolean isScreencast() {
+            return capturer.isScreencast();
+        }
+
+        @Override
+        public void startCapture(final VideoFormat captureFormat, final Listener capturerListener) {
+            budgetNs = captureFormat.framerate > 0 ? 1000000000L / captureFormat.framerate : 0;
+            final boolean nv21 = captureFormat.pixelFormat == VideoPixelFormat.NV21;
+            thread = new HandlerThread(THREAD_NAME);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+            final Delivery delivery = new Delivery(capturerListener);
+            this.delivery = delivery;
+
+            capturer.startCapture(captureFormat, new Listener() {
+                @Override
+                public void onCapturerStarted(boolean success) {
+                    capturerListener.onCapturerStarted(success);
+                }
+
+                @Override
+                public void onFrameCaptured(VideoFrame videoFrame) {
+                    // Texture frames and other pixel formats go through untouched
+                    if (!nv21 || videoFrame.imageBuffer == null || !isEnabled()) {
+                        synchronized (statsLock) {
+                            framesIn++;
+                            framesPassedThrough++;
+                        }
+                        capturerListener.onFrameCaptured(videoFrame);
+                        return;
+                    }
+                    if (!frameInFlight.compareAndSet(false, true)) {
+                        synchronized (statsLock) {
+                            framesIn++;
+                            framesDropped++;
+                        }
+                        return;
+                    }
+                    synchronized (statsLock) {
+                        framesIn++;
+                    }
+                    // The camera reuses its buffer once this returns
+                    final Frame frame = new Frame();
+                    frame.width = videoFrame.dimensions.width;
+                    frame.height = videoFrame.dimensions.height;
+                    frame.data = obtainBuffer(videoFrame.imageBuffer.length);
+                    System.arraycopy(videoFrame.imageBuffer, 0, frame.data, 0, frame.data.length);
+                    final VideoFrame.RotationAngle orientation = videoFrame.orientation;
+                    final long timestamp = videoFrame.timestamp;
+                    boolean posted = handler.post(() -> {
+                        try {
+                            runStages(frame);
+                            if (delivery.deliver(new VideoFrame(frame.data,
+                                    new VideoDimensions(frame.width, frame.height), orientation, timestamp))) {
+                                synchronized (statsLock) {
+                                    framesProcessed++;
+                                }
+                            }
+                        } finally {
+                            recycleBuffer(frame.data);
+                            frameInFlight.set(false);
+                        }
+                    });
+                    if (!posted) {
+                        recycleBuffer(frame.data);
+                        frameInFlight.set(false);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void stopCapture() {
+            if (delivery != null) {
+                delivery.stop();
+                delivery = null;
+            }
+            capturer.stopCapture();
+            if (thread != null) {
+                thread.quit();
+                thread = null;
+            }
+            frameInFlight.set(false);
+        }
+    }
+
+    // ===== STAGES ================================================================================
+
+    /*
+     * Rectangle in normalized 0..1 coordinates of the frame.
+     */
+    static class Region {
+        double x;
+        double y;
+        double width = 1;
+        double height = 1;
+
+        static Region fromReadableMap(ReadableMap map) {
+            Region region = new Region();
+            region.x = getDouble(map, "x", region.x);
+            region.y = getDouble(map, "y", region.y);
+            region.width = getDouble(map, "width", region.width);
+            region.height = getDouble(map, "height", region.height);
+            return region;
+        }
+
+        private static double getDouble(ReadableMap map, String key, double fallback) {
+            return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : fallback;
+        }
+
+        // Pixel bounds rounded to even values so the chroma plane stays aligned
+        int left(int frameWidth) {
+            return even(clamp(x) * frameWidth);
+        }
+
+        int top(int frameHeight) {
+            return even(clamp(y) * frameHeight);
+        }
+
+        int right(int frameWidth) {
+            return Math.max(left(frameWidth) + 2, even(clamp(x + width) * frameWidth));
+        }
+
+        int bottom(int frameHeight) {
+            return Math.max(top(frameHeight) + 2, even(clamp(y + height) * frameHeight));
+        }
+
+        private static double clamp(double value) {
+            return Math.max(0, Math.min(1, value));
+        }
+
+        private static int even(double value) {
+            return ((int) value) & ~1;
+        }
+    }
+
+    static class CropStage implements Stage {
+        private final Region region;
+
+        CropStage(Region region) {
+            this.region = region;
+        }
+
+        @Override
+        public String getName() {
+            return "crop";
+        }
+
+        @Override
+        public void process(Frame frame, FramePreprocessor pool) {
+            int left = region.left(frame.width);
+            int top = region.top(frame.height);
+            int right = Math.min(frame.width, region.right(frame.width));
+            int bottom = Math.min(frame.height, region.bottom(frame.height));
+            int width = right - left;
+            int height = bottom - top;
+            if (width <= 0 || height <= 0 || (width == frame.width && height == frame.height)) {
+                return;
+            }
+
+            byte[] cropped = pool.obtainBuffer(width * height * 3 / 2);
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(frame.data, (top + row) * frame.width + left, cropped, row * width, width);
+            }
+            // Interleaved VU plane, one row per two luma rows
+            int srcChroma = frame.width * frame.height;
+            int dstChroma = width * height;
+            for (int row = 0; row < height / 2; row++) {
+                System.arraycopy(frame.data, srcChroma + (top / 2 + row) * frame.width + left,
+                        cropped, dstChroma + row * width, width);
+            }
+            pool.recycleBuffer(frame.data);
+            frame.data = cropped;
+            frame.width = width;
+            frame.height = height;
+        }
+    }
+
+    /*
+     * Box blur on the luma plane, two separable passes with running sums. Pixels inside the
+     * sharp region are left alone, which is enough to soften everything around a subject.
+     */
+    static class BlurStage implements Stage {
+        private final int radius;
+        private final Region sharpRegion;
+
+        BlurStage(int radius, Region sharpRegion) {
+            this.radius = Math.max(1, radius);
+            this.sharpRegion = sharpRegion;
+        }
+
+        @Override
+        public String getName() {
+            return "blur";
+        }
+
+        @Override
+        public void process(Frame frame, FramePreprocessor pool) {
+            int width = frame.width;
+            int height = frame.height;
+            byte[] y = frame.data;
+            byte[] temp = pool.obtainBuffer(width * height);
+            int window = radius * 2 + 1;
+
+            for (int row = 0; row < height; row++) {
+                int offset = row * width;
+                int sum = 0;
+                for (int i = -radius; i <= radius; i++) {
+                    sum += y[offset + Math.max(0, Math.min(width - 1, i))] & 0xff;
+                }
+                for (int col = 0; col < width; col++) {
+                    temp[offset + col] = (byte) (sum / window);
+                    int out = Math.max(0, col - radius);
+                    int in = Math.min(width - 1, col + radius + 1);
+                    sum += (y[offset + in] & 0xff) - (y[offset + out] & 0xff);
+                }
+            }
+
+            int sharpLeft = sharpRegion != null ? sharpRegion.left(width) : 0;
+            int sharpTop = sharpRegion != null ? sharpRegion.top(height) : 0;
+            int sharpRight = sharpRegion != null ? sharpRegion.right(width) : 0;
+            int sharpBottom = sharpRegion != null ? sharpRegion.bottom(height) : 0;
+            for (int col = 0; col < width; col++) {
+                boolean sharpColumn = col >= sharpLeft && col < sharpRight;
+                int sum = 0;
+                for (int i = -radius; i <= radius; i++) {
+                    sum += temp[Math.max(0, Math.min(height - 1, i)) * width + col] & 0xff;
+                }
+                for (int row = 0; row < height; row++) {
+                    if (!sharpColumn || row < sharpTop || row >= sharpBottom) {
+                        y[row * width + col] = (byte) (sum / window);
+                    }
+                    int out = Math.max(0, row - radius);
+                    int in = Math.min(height - 1, row + radius + 1);
+                    sum += (temp[in * width + col] & 0xff) - (temp[out * width + col] & 0xff);
+                }
+            }
+            pool.recycleBuffer(temp);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * ICE servers and transport policy passed to connect.
+ * <p>
+ * iceServers is a list of { urls, username, credential }, where urls is a
+ * single stun:/turn:/turns: url or a list of them. When servers are given
+ * they replace the STUN/TURN servers Twilio would otherwise hand out, so
+ * include your own TURN server when forcing relay. transportPolicy "relay"
+ * only allows relayed candidates, anything else allows all of them.
+ */
+
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.twilio.video.IceOptions;
+import com.twilio.video.IceServer;
+import com.twilio.video.IceTransportPolicy;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class IceConfig {
+    static final String TRANSPORT_POLICY_ALL = "all";
+    static final String TRANSPORT_POLICY_RELAY = "relay";
+
+    private final Set<IceServer> iceServers = new LinkedHashSet<>();
+    private String transportPolicy = TRANSPORT_POLICY_ALL;
+
+    /*
+     * Returns null when nothing was configured, connect then leaves IceOptions unset.
+     */
+    public static IceConfig fromReadableMap(ReadableMap map) {
+        if (map == null) {
+            return null;
+        }
+        IceConfig config = new IceConfig();
+        if (map.hasKey("iceServers") && !map.isNull("iceServers")) {
+            ReadableArray servers = map.getArray("iceServers");
+            for (int i = 0; i < servers.size(); i++) {
+                if (servers.getType(i) == ReadableType.Map) {
+                    config.addServer(servers.getMap(i));
+                }
+            }
+        }
+        if (map.hasKey("transportPolicy") && !map.isNull("transportPolicy")
+                && TRANSPORT_POLICY_RELAY.equals(map.getString("transportPolicy"))) {
+            config.transportPolicy = TRANSPORT_POLICY_RELAY;
+        }
+        return config;
+    }
+
+    private void addServer(ReadableMap server) {
+        if (!server.hasKey("urls") || server.isNull("urls")) {
+            return;
+        }
+        String username = server.hasKey("username") && !server.isNull("username")
+                ? server.getString("username") : null;
+        String credential = server.hasKey("credential") && !server.isNull("credential")
+                ? server.getString("credential") : null;
+        if (server.getType("urls") == ReadableType.Array) {
+            ReadableArray urls = server.getArray("urls");
+            for (int i = 0; i < urls.size(); i++) {
+                addServer(urls.getString(i), username, credential);
+            }
+        } else {
+            addServer(server.getString("urls"), username, credential);
+        }
+    }
+
+    private void addServer(String url, String username, String credential) {
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+        if (username != null && credential != null) {
+            iceServers.add(new IceServer(url, username, credential));
+        } else {
+            iceServers.add(new IceServer(url));
+        }
+    }
+
+    public String getTransportPolicy() {
+        return transportPolicy;
+    }
+
+    public int getServerCount() {
+        return iceServers.size();
+    }
+
+    public IceOptions toIceOptions() {
+        IceOptions.Builder builder = new IceOptions.Builder()
+                .iceTransportPolicy(TRANSPORT_POLICY_RELAY.equals(transportPolicy)
+                        ? IceTransportPolicy.RELAY : IceTransportPolicy.ALL);
+        if (!iceServers.isEmpty()) {
+            builder.iceServers(iceServers);
+        }
+        return builder.build();
+    }
+}
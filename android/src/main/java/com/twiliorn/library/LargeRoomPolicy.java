@@ -0,0 +1,243 @@
+/**
+ * Last-N policy for rooms with many video publishers.
+ * <p>
+ * At most maxVideoTracks remote video tracks are kept active. Pinned
+ * participants come first, then tracks bound to an on-screen preview, then
+ * the dominant speaker and the most recent previous speakers, then everybody
+ * else in join order. Active tracks get a standard or high priority and the
+ * rest a low one. The bandwidth profile's maxTracks switches the low tracks
+ * off on the server side, and their local renderers are parked, so decoding
+ * stays bounded however big the room gets.
+ */
+
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.BandwidthProfileMode;
+import com.twilio.video.BandwidthProfileOptions;
+import com.twilio.video.RemoteParticipant;
+import com.twilio.video.RemoteVideoTrack;
+import com.twilio.video.RemoteVideoTrackPublication;
+import com.twilio.video.Room;
+import com.twilio.video.TrackPriority;
+import com.twilio.video.VideoBandwidthProfileOptions;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class LargeRoomPolicy {
+    static final String MODE_GRID = "grid";
+    static final String MODE_COLLABORATION = "collaboration";
+    static final String MODE_PRESENTATION = "presentation";
+
+    private static final int DEFAULT_MAX_VIDEO_TRACKS = 4;
+    private static final int MAX_RECENT_SPEAKERS = 8;
+
+    private final int maxVideoTracks;
+    private final String mode;
+
+    private final Set<String> pinnedParticipantSids = new LinkedHashSet<>();
+    // Previous dominant speakers, most recent first
+    private final LinkedList<String> recentSpeakerSids = new LinkedList<>();
+    private String dominantSpeakerSid;
+
+    private Set<String> activeTrackSids = new LinkedHashSet<>();
+    private final Map<String, TrackPriority> appliedPriorities = new HashMap<>();
+
+    private LargeRoomPolicy(int maxVideoTracks, String mode) {
+        this.maxVideoTracks = maxVideoTracks;
+        this.mode = mode;
+    }
+
+    /*
+     * Returns null when large-room mode is not requested.
+     */
+    public static LargeRoomPolicy fromReadableMap(ReadableMap map) {
+        if (map == null) {
+            return null;
+        }
+        int maxVideoTracks = DEFAULT_MAX_VIDEO_TRACKS;
+        if (map.hasKey("maxVideoTracks") && !map.isNull("maxVideoTracks")) {
+            maxVideoTracks = Math.max(1, map.getInt("maxVideoTracks"));
+        }
+        String mode = MODE_COLLABORATION;
+        if (map.hasKey("mode") && !map.isNull("mode")) {
+            mode = map.getString("mode");
+        }
+        return new LargeRoomPolicy(maxVideoTracks, mode);
+    }
+
+    public BandwidthProfileOptions toBandwidthProfileOptions() {
+        BandwidthProfileMode profileMode = BandwidthProfileMode.COLLABORATION;
+        if (MODE_GRID.equals(mode)) {
+            profileMode = BandwidthProfileMode.GRID;
+        } else if (MODE_PRESENTATION.equals(mode)) {
+            profileMode = BandwidthProfileMode.PRESENTATION;
+        }
+        VideoBandwidthProfileOptions videoOptions = new VideoBandwidthProfileOptions.Builder()
+                .mode(profileMode)
+                .maxTracks((long) maxVideoTracks)
+                .dominantSpeakerPriority(TrackPriority.HIGH)
+                .build();
+        return new BandwidthProfileOptions(videoOptions);
+    }
+
+    // ===== INPUTS ================================================================================
+
+    public void setPinnedParticipants(ReadableArray sids) {
+        pinnedParticipantSids.clear();
+        if (sids == null) {
+            return;
+        }
+        for (int i = 0; i < sids.size(); i++) {
+            pinnedParticipantSids.add(sids.getString(i));
+        }
+    }
+
+    public void setDominantSpeaker(String sid) {
+        if (dominantSpeakerSid != null && !dominantSpeakerSid.equals(sid)) {
+            recentSpeakerSids.remove(dominantSpeakerSid);
+            recentSpeakerSids.addFirst(dominantSpeakerSid);
+            while (recentSpeakerSids.size() > MAX_RECENT_SPEAKERS) {
+                recentSpeakerSids.removeLast();
+            }
+        }
+        dominantSpeakerSid = sid;
+        if (sid != null) {
+            recentSpeakerSids.remove(sid);
+        }
+    }
+
+    public void removeParticipant(String sid) {
+        pinnedParticipantSids.remove(sid);
+        recentSpeakerSids.remove(sid);
+        if (sid.equals(dominantSpeakerSid)) {
+            dominantSpeakerSid = null;
+        }
+    }
+
+    // ===== SELECTION =============================================================================
+
+    public boolean isActive(String trackSid) {
+        return activeTrackSids.contains(trackSid);
+    }
+
+    /*
+     * Picks the active tracks and applies their priorities. Returns true when the active set
+     * changed.
+     */
+    public boolean update(Room room, Collection<String> boundTrackSids) {
+        List<RemoteParticipant> participants = room.getRemoteParticipants();
+        Map<String, RemoteParticipant> bySid = new HashMap<>();
+        for (RemoteParticipant participant : participants) {
+            bySid.put(participant.getSid(), participant);
+        }
+
+        Set<String> selected = new LinkedHashSet<>();
+        Set<String> highPriority = new LinkedHashSet<>();
+        for (String sid : pinnedParticipantSids) {
+            selectParticipant(bySid.get(sid), selected, highPriority);
+        }
+        for (String trackSid : boundTrackSids) {
+            if (selected.size() >= maxVideoTracks) {
+                break;
+            }
+            if (trackSid != null && findTrack(participants, trackSid) != null) {
+                selected.add(trackSid);
+            }
+        }
+        selectParticipant(dominantSpeakerSid != null ? bySid.get(dominantSpeakerSid) : null, selected, highPriority);
+        for (String sid : recentSpeakerSids) {
+            selectParticipant(bySid.get(sid), selected, null);
+        }
+        for (RemoteParticipant participant : participants) {
+            selectParticipant(participant, selected, null);
+        }
+
+        for (RemoteParticipant participant : participants) {
+            for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
+                RemoteVideoTrack track = publication.getRemoteVideoTrack();
+                if (track == null) {
+                    continue;
+                }
+                String trackSid = publication.getTrackSid();
+                TrackPriority priority = highPriority.contains(trackSid) ? TrackPriority.HIGH
+                        : selected.contains(trackSid) ? TrackPriority.STANDARD : TrackPriority.LOW;
+                if (priority != appliedPriorities.get(trackSid)) {
+                    track.setPriority(priority);
+                    appliedPriorities.put(trackSid, priority);
+                }
+            }
+        }
+        appliedPriorities.keySet().retainAll(collectTrackSids(participants));
+
+        boolean changed = !selected.equals(activeTrackSids);
+        activeTrackSids = selected;
+        return changed;
+    }
+
+    /*
+     * Adds the subscribed video tracks of the participant while there is room. Tracks picked
+     * here also go into highPriority when it is given.
+     */
+    private void selectParticipant(RemoteParticipant participant, Set<String> selected, Set<String> highPriority) {
+        if (participant == null) {
+            return;
+        }
+        for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
+            if (selected.size() >= maxVideoTracks) {
+                return;
+            }
+            if (publication.getRemoteVideoTrack() == null) {
+                continue;
+            }
+            selected.add(publication.getTrackSid());
+            if (highPriority != null) {
+                highPriority.add(publication.getTrackSid());
+            }
+        }
+    }
+
+    private static RemoteVideoTrack findTrack(List<RemoteParticipant> participants, String trackSid) {
+        for (RemoteParticipant participant : participants) {
+            for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
+                if (publication.getTrackSid().equals(trackSid)) {
+                    return publication.getRemoteVideoTrack();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> collectTrackSids(List<RemoteParticipant> participants) {
+        Set<String> trackSids = new LinkedHashSet<>();
+        for (RemoteParticipant participant : participants) {
+            for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
+                trackSids.add(publication.getTrackSid());
+            }
+        }
+        return trackSids;
+    }
+
+    public WritableMap buildEvent() {
+        WritableMap event = new WritableNativeMap();
+        WritableArray trackSids = new WritableNativeArray();
+        for (String trackSid : activeTrackSids) {
+            trackSids.pushString(trackSid);
+        }
+        event.putArray("trackSids", trackSids);
+        event.putString("dominantSpeakerSid", dominantSpeakerSid);
+        event.putInt("maxVideoTracks", maxVideoTracks);
+        return event;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Bounded per-participant history of network quality levels.
+ * <p>
+ * Keeps the last few samples for each participant in native memory so JS can
+ * ask for a trend summary instead of storing every quality event itself.
+ */
+
+package com.twiliorn.library;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class NetworkQualityHistory {
+
+    private static final int DEFAULT_CAPACITY = 60;
+
+    private final int capacity;
+    private final Map<String, Samples> samplesBySid = new HashMap<>();
+
+    public NetworkQualityHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public NetworkQualityHistory(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void record(String participantSid, int level) {
+        Samples samples = samplesBySid.get(participantSid);
+        if (samples == null) {
+            samples = new Samples(capacity);
+            samplesBySid.put(participantSid, samples);
+        }
+        samples.add(level, SystemClock.elapsedRealtime());
+    }
+
+    public synchronized void remove(String participantSid) {
+        samplesBySid.remove(participantSid);
+    }
+
+    public synchronized void clear() {
+        samplesBySid.clear();
+    }
+
+    /*
+     * One summary entry per participant: latest level, min/max/average over the window,
+     * the number of level changes and the age of the oldest sample kept.
+     */
+    public synchronized WritableArray buildSummary() {
+        WritableArray result = new WritableNativeArray();
+        long now = SystemClock.elapsedRealtime();
+        for (Map.Entry<String, Samples> entry : samplesBySid.entrySet()) {
+            Samples samples = entry.getValue();
+            if (samples.size == 0) {
+                continue;
+            }
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int sum = 0;
+            int changes = 0;
+            int previous = samples.get(0);
+            for (int i = 0; i < samples.size; i++) {
+                int level = samples.get(i);
+                min = Math.min(min, level);
+                max = Math.max(max, level);
+                sum += level;
+                if (i > 0 && level != previous) {
+                    changes++;
+                }
+                previous = level;
+            }
+
+            WritableMap summary = new WritableNativeMap();
+            summary.putString("participantSid", entry.getKey());
+            summary.putInt("samples", samples.size);
+            summary.putInt("latest", samples.get(samples.size - 1));
+            summary.putInt("min", min);
+            summary.putInt("max", max);
+            summary.putDouble("average", sum / (double) samples.size);
+            summary.putInt("changes", changes);
+            summary.putDouble("windowMs", now - samples.timestampAt(0));
+            result.pushMap(summary);
+        }
+        return result;
+    }
+
+    /*
+     * Fixed size ring of (level, timestamp) samples, oldest first.
+     */
+    private static class Samples {
+        private final int[] levels;
+        private final long[] timestamps;
+        private int head = 0;
+        private int size = 0;
+
+        Samples(int capacity) {
+            levels = new int[capacity];
+            timestamps = new long[capacity];
+        }
+
+        void add(int level, long timestamp) {
+            int index = (head + size) % levels.length;
+            levels[index] = level;
+            timestamps[index] = timestamp;
+            if (size < levels.length) {
+                size++;
+            } else {
+                head = (head + 1) % levels.length;
+            }
+        }
+
+        int get(int i) {
+            return levels[(head + i) % levels.length];
+        }
+
+        long timestampAt(int i) {
+            return timestamps[(head + i) % timestamps.length];
+        }
+    }
+}
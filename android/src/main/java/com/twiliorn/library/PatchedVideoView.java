@@ -22,6 +22,15 @@ public class PatchedVideoView extends VideoView {
 
     private boolean notifyFrameRendered = false;
     private Listener listener;
+    // Frames handed to this view, rendered or not
+    private volatile long framesReceived = 0;
+    // While frozen incoming frames are dropped so the last rendered frame stays on screen
+    private volatile boolean frozen = false;
+    // Render frame rate caps set by the view and by the pressure governor, 0 means no cap
+    private volatile int maxFps = 0;
+    private volatile int pressureMaxFps = 0;
+    private volatile long minFrameIntervalNs = 0;
+    private long lastRenderedAtNs = 0;
     private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
     public PatchedVideoView(Context context) {
@@ -34,6 +43,21 @@ public class PatchedVideoView extends VideoView {
 
     @Override
     public void renderFrame(I420Frame frame) {
+        framesReceived++;
+        if (frozen) {
+            frame.release();
+            return;
+        }
+        long minIntervalNs = minFrameIntervalNs;
+        if (minIntervalNs > 0) {
+            // Decimate before the frame reaches the GL thread, dropped frames still have to be released
+            long now = System.nanoTime();
+            if (now - lastRenderedAtNs < minIntervalNs) {
+                frame.release();
+                return;
+            }
+            lastRenderedAtNs = now;
+        }
         if (notifyFrameRendered) {
             notifyFrameRendered = false;
             mainThreadHandler.post(new Runnable() {
@@ -53,6 +77,48 @@ public class PatchedVideoView extends VideoView {
         this.listener = listener;
     }
 
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    public void setMaxFps(int maxFps) {
+        this.maxFps = Math.max(0, maxFps);
+        updateMinFrameInterval();
+    }
+
+    public void setPressureMaxFps(int pressureMaxFps) {
+        this.pressureMaxFps = Math.max(0, pressureMaxFps);
+        updateMinFrameInterval();
+    }
+
+    /*
+     * The lower of the two caps wins. The interval gets 10% slack so frames arriving with
+     * normal jitter at a multiple of the cap are not dropped, which would halve the rate.
+     */
+    private void updateMinFrameInterval() {
+        int fps = maxFps;
+        if (pressureMaxFps > 0 && (fps == 0 || pressureMaxFps < fps)) {
+            fps = pressureMaxFps;
+        }
+        minFrameIntervalNs = fps > 0 ? 900000000L / fps : 0;
+    }
+
+    /*
+     * Clears per-use state before the view goes back to the RendererPool.
+     */
+    public void reset() {
+        notifyFrameRendered = false;
+        frozen = false;
+        maxFps = 0;
+        pressureMaxFps = 0;
+        minFrameIntervalNs = 0;
+        lastRenderedAtNs = 0;
+    }
+
     /*
      * Reset the listener so next frame rendered results in callback
      */
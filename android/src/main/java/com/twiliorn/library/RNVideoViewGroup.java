@@ -48,7 +48,7 @@ public class RNVideoViewGroup extends ViewGroup {
     public RNVideoViewGroup(ThemedReactContext themedReactContext) {
         super(themedReactContext);
         this.eventEmitter = themedReactContext.getJSModule(RCTEventEmitter.class);
-        surfaceViewRenderer = new PatchedVideoView(themedReactContext);
+        surfaceViewRenderer = RendererPool.lease(themedReactContext);
         surfaceViewRenderer.setVideoScaleType(VideoScaleType.ASPECT_FILL);
         addView(surfaceViewRenderer);
         surfaceViewRenderer.setListener(
@@ -86,6 +86,14 @@ public class RNVideoViewGroup extends ViewGroup {
         return surfaceViewRenderer;
     }
 
+    /*
+     * Hands the renderer back to the pool once the view is dropped. Detach it from its
+     * track first.
+     */
+    public void recycleRenderer() {
+        RendererPool.recycle(surfaceViewRenderer);
+    }
+
     public void setScalingType(RendererCommon.ScalingType scalingType) {
         this.scalingType = scalingType;
     }
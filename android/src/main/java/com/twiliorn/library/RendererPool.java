@@ -0,0 +1,141 @@
+/**
+ * Bounded pool of renderer views shared by the local and remote previews.
+ * <p>
+ * Virtualized participant grids mount and unmount tiles constantly while
+ * scrolling. Leasing a renderer that was already constructed skips creating a
+ * new SurfaceView and VideoView for every tile. Hit and miss counters tell how
+ * well the pool size fits the grid. Pooled renderers hold on to the context,
+ * and through it the Activity, they were created with, so they are released
+ * when that context's host is destroyed.
+ */
+
+package com.twiliorn.library;
+
+import android.content.Context;
+import android.view.ViewGroup;
+
+import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.VideoRenderer;
+import com.twilio.video.VideoScaleType;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public class RendererPool {
+    private static final int MAX_POOLED = 8;
+
+    private static final ArrayDeque<PatchedVideoView> pool = new ArrayDeque<>();
+    // Weak keys, a context only stays registered while something else keeps it alive
+    private static final Map<ReactContext, LifecycleEventListener> hostListeners = new WeakHashMap<>();
+    private static int hits = 0;
+    private static int misses = 0;
+    private static int returned = 0;
+    private static int discarded = 0;
+
+    private RendererPool() {
+    }
+
+    /*
+     * Renderers are tied to the context they were created with, pooled ones from another
+     * context (a reloaded bundle) are dropped instead of being reused.
+     */
+    public static synchronized PatchedVideoView lease(Context context) {
+        if (context instanceof ReactContext) {
+            watchHost((ReactContext) context);
+        }
+        Iterator<PatchedVideoView> iterator = pool.iterator();
+        while (iterator.hasNext()) {
+            PatchedVideoView renderer = iterator.next();
+            iterator.remove();
+            if (renderer.getContext() == context) {
+                hits++;
+                return renderer;
+            }
+            renderer.release();
+            discarded++;
+        }
+        misses++;
+        return new PatchedVideoView(context);
+    }
+
+    /*
+     * The caller has already detached the renderer from every track.
+     */
+    public static synchronized void recycle(PatchedVideoView renderer) {
+        if (renderer.getParent() instanceof ViewGroup) {
+            ((ViewGroup) renderer.getParent()).removeView(renderer);
+        }
+        renderer.setListener((VideoRenderer.Listener) null);
+        renderer.setListener((PatchedVideoView.Listener) null);
+        renderer.reset();
+        renderer.setMirror(false);
+        renderer.applyZOrder(false);
+        renderer.setVideoScaleType(VideoScaleType.ASPECT_FILL);
+
+        if (pool.size() >= MAX_POOLED || !hostListeners.containsKey(renderer.getContext())) {
+            renderer.release();
+            discarded++;
+            return;
+        }
+        pool.push(renderer);
+        returned++;
+    }
+
+    /*
+     * Releases the pooled renderers of the context once its host is destroyed. Renderers still
+     * leased at that point are released when their views recycle them.
+     */
+    private static void watchHost(final ReactContext context) {
+        if (hostListeners.containsKey(context)) {
+            return;
+        }
+        LifecycleEventListener listener = new LifecycleEventListener() {
+            @Override
+            public void onHostResume() {
+            }
+
+            @Override
+            public void onHostPause() {
+            }
+
+            @Override
+            public void onHostDestroy() {
+                releaseContext(context);
+            }
+        };
+        hostListeners.put(context, listener);
+        context.addLifecycleEventListener(listener);
+    }
+
+    private static synchronized void releaseContext(ReactContext context) {
+        LifecycleEventListener listener = hostListeners.remove(context);
+        if (listener != null) {
+            context.removeLifecycleEventListener(listener);
+        }
+        Iterator<PatchedVideoView> iterator = pool.iterator();
+        while (iterator.hasNext()) {
+            PatchedVideoView renderer = iterator.next();
+            if (renderer.getContext() == context) {
+                iterator.remove();
+                renderer.release();
+                discarded++;
+            }
+        }
+    }
+
+    public static synchronized WritableMap getStats() {
+        WritableMap stats = new WritableNativeMap();
+        stats.putInt("hits", hits);
+        stats.putInt("misses", misses);
+        stats.putInt("returned", returned);
+        stats.putInt("discarded", discarded);
+        stats.putInt("pooled", pool.size());
+        stats.putInt("capacity", MAX_POOLED);
+        return stats;
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Native copy of the room state: participants, their track publications with
+ * enabled and subscribed flags, and network quality levels.
+ * <p>
+ * JS can get the whole state as one compact snapshot instead of replaying
+ * a burst of participant and track events on join. Every change bumps a
+ * version number, and when diff recording is on the changes are kept so
+ * they can be delivered in batches. A gap in versions tells JS to ask for a
+ * fresh snapshot.
+ */
+
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.AudioTrackPublication;
+import com.twilio.video.DataTrackPublication;
+import com.twilio.video.LocalParticipant;
+import com.twilio.video.Participant;
+import com.twilio.video.RemoteAudioTrackPublication;
+import com.twilio.video.RemoteDataTrackPublication;
+import com.twilio.video.RemoteParticipant;
+import com.twilio.video.RemoteVideoTrackPublication;
+import com.twilio.video.Room;
+import com.twilio.video.TrackPublication;
+import com.twilio.video.VideoTrackPublication;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RoomStateCache {
+    static final String KIND_AUDIO = "audio";
+    static final String KIND_VIDEO = "video";
+    static final String KIND_DATA = "data";
+
+    private static class TrackState {
+        final String sid;
+        final String kind;
+        final String name;
+        boolean enabled;
+        boolean subscribed;
+
+        TrackState(String sid, String kind, String name) {
+            this.sid = sid;
+            this.kind = kind;
+            this.name = name;
+        }
+    }
+
+    private static class ParticipantState {
+        final String sid;
+        final String identity;
+        int networkQualityLevel = -1;
+        final Map<String, TrackState> tracks = new LinkedHashMap<>();
+
+        ParticipantState(String sid, String identity) {
+            this.sid = sid;
+            this.identity = identity;
+        }
+    }
+
+    private String roomName;
+    private String roomSid;
+    private ParticipantState localParticipant;
+    private final Map<String, ParticipantState> participants = new LinkedHashMap<>();
+    private long version = 0;
+
+    private boolean recordDiffs = false;
+    private long pendingFromVersion = 0;
+    private WritableArray pendingDiffs = new WritableNativeArray();
+    private int pendingDiffCount = 0;
+
+    public void setRecordDiffs(boolean recordDiffs) {
+        this.recordDiffs = recordDiffs;
+        pendingDiffs = new WritableNativeArray();
+        pendingDiffCount = 0;
+    }
+
+    public void reset(Room room) {
+        LocalParticipant local = room.getLocalParticipant();
+        reset(room.getName(), room.getSid(),
+                local != null ? local.getSid() : null, local != null ? local.getIdentity() : null);
+        for (RemoteParticipant participant : room.getRemoteParticipants()) {
+            participants.put(participant.getSid(), buildParticipantState(participant.getSid(),
+                    participant.getIdentity(), publicationsOf(participant)));
+        }
+    }
+
+    /*
+     * Starts over for a room without remote participants yet, localSid may be null.
+     */
+    public void reset(String roomName, String roomSid, String localSid, String localIdentity) {
+        clear();
+        this.roomName = roomName;
+        this.roomSid = roomSid;
+        if (localSid != null) {
+            localParticipant = new ParticipantState(localSid, localIdentity);
+        }
+        pendingFromVersion = version;
+    }
+
+    public void clear() {
+        roomName = null;
+        roomSid = null;
+        localParticipant = null;
+        participants.clear();
+        pendingDiffs = new WritableNativeArray();
+        pendingDiffCount = 0;
+    }
+
+    // ===== UPDATES ===============================================================================
+
+    /*
+     * publications are the tracks the participant already has when it joins.
+     */
+    public void participantConnected(String sid, String identity, List<? extends TrackPublication> publications) {
+        ParticipantState state = buildParticipantState(sid, identity, publications);
+        participants.put(sid, state);
+        WritableMap diff = newDiff("participantConnected", sid);
+        if (diff != null) {
+            diff.putMap("participant", buildParticipant(state));
+            record(diff);
+        }
+    }
+
+    public void participantDisconnected(String sid) {
+        if (participants.remove(sid) != null) {
+            record(newDiff("participantDisconnected", sid));
+        }
+    }
+
+    public void trackPublished(Participant participant, TrackPublication publication) {
+        ParticipantState state = participants.get(participant.getSid());
+        if (state == null) {
+            return;
+        }
+        TrackState track = buildTrackState(publication);
+        state.tracks.put(track.sid, track);
+        WritableMap diff = newDiff("trackPublished", participant.getSid());
+        if (diff != null) {
+            diff.putMap("track", buildTrack(track));
+            record(diff);
+        }
+    }
+
+    public void trackUnpublished(Participant participant, TrackPublication publication) {
+        ParticipantState state = participants.get(participant.getSid());
+        if (state != null && state.tracks.remove(publication.getTrackSid()) != null) {
+            WritableMap diff = newDiff("trackUnpublished", participant.getSid());
+            if (diff != null) {
+                diff.putString("trackSid", publication.getTrackSid());
+                record(diff);
+            }
+        }
+    }
+
+    /*
+     * kind, name and enabled are only used when the track is not known yet.
+     */
+    public void trackSubscribed(String participantSid, String trackSid, String kind, String name,
+                                boolean enabled, boolean subscribed) {
+        TrackState track = findOrAddTrack(participantSid, trackSid, kind, name, enabled, subscribed);
+        if (track == null || track.subscribed == subscribed) {
+            return;
+        }
+        track.subscribed = subscribed;
+        WritableMap diff = newDiff(subscribed ? "trackSubscribed" : "trackUnsubscribed", participantSid);
+        if (diff != null) {
+            diff.putString("trackSid", track.sid);
+            record(diff);
+        }
+    }
+
+    public void trackEnabled(String participantSid, String trackSid, String kind, String name,
+                             boolean enabled) {
+        TrackState track = findOrAddTrack(participantSid, trackSid, kind, name, enabled, false);
+        if (track == null || track.enabled == enabled) {
+            return;
+        }
+        track.enabled = enabled;
+        WritableMap diff = newDiff(enabled ? "trackEnabled" : "trackDisabled", participantSid);
+        if (diff != null) {
+            diff.putString("trackSid", track.sid);
+            record(diff);
+        }
+    }
+
+    public void networkQualityChanged(Participant participant, int level) {
+        ParticipantState state = localParticipant != null && localParticipant.sid.equals(participant.getSid())
+                ? localParticipant : participants.get(participant.getSid());
+        if (state == null || state.networkQualityLevel == level) {
+            return;
+        }
+        state.networkQualityLevel = level;
+        WritableMap diff = newDiff("networkQuality", participant.getSid());
+        if (diff != null) {
+            diff.putInt("level", level);
+            record(diff);
+        }
+    }
+
+    // ===== OUTPUT ================================================================================
+
+    public WritableMap buildSnapshot() {
+        WritableMap snapshot = new WritableNativeMap();
+        snapshot.putDouble("version", version);
+        snapshot.putString("roomName", roomName);
+        snapshot.putString("roomSid", roomSid);
+        if (localParticipant != null) {
+            snapshot.putMap("localParticipant", buildParticipant(localParticipant));
+        }
+        WritableArray participantsArray = new WritableNativeArray();
+        for (ParticipantState state : participants.values()) {
+            participantsArray.pushMap(buildParticipant(state));
+        }
+        snapshot.putArray("participants", participantsArray);
+        return snapshot;
+    }
+
+    public boolean hasPendingDiffs() {
+        return pendingDiffCount > 0;
+    }
+
+    /*
+     * One event for everything that changed since the last drain. fromVersion is the
+     * version the changes apply on top of.
+     */
+    public WritableMap drainDiffs() {
+        WritableMap event = new WritableNativeMap();
+        event.putDouble("fromVersion", pendingFromVersion);
+        event.putDouble("version", version);
+        event.putArray("changes", pendingDiffs);
+        pendingDiffs = new WritableNativeArray();
+        pendingDiffCount = 0;
+        pendingFromVersion = version;
+        return event;
+    }
+
+    // ===== HELPERS ===============================================================================
+
+    /*
+     * Bumps the version and returns the diff entry to fill in, or null when diffs are not
+     * recorded. Native maps are copied when pushed, so entries are filled before record.
+     */
+    private WritableMap newDiff(String type, String participantSid) {
+        version++;
+        if (!recordDiffs) {
+            pendingFromVersion = version;
+            return null;
+        }
+        WritableMap diff = new WritableNativeMap();
+        diff.putString("type", type);
+        diff.putString("participantSid", participantSid);
+        return diff;
+    }
+
+    private void record(WritableMap diff) {
+        if (diff != null) {
+            pendingDiffs.pushMap(diff);
+            pendingDiffCount++;
+        }
+    }
+
+    /*
+     * A track that shows up without a publish event starts out in the state it is reported
+     * in, the same as one read off its publication.
+     */
+    private TrackState findOrAddTrack(String participantSid, String trackSid, String kind, String name,
+                                      boolean enabled, boolean subscribed) {
+        ParticipantState state = participants.get(participantSid);
+        if (state == null) {
+            return null;
+        }
+        TrackState track = state.tracks.get(trackSid);
+        if (track == null) {
+            track = new TrackState(trackSid, kind, name);
+            track.enabled = enabled;
+            track.subscribed = subscribed;
+            state.tracks.put(track.sid, track);
+        }
+        return track;
+    }
+
+    static List<TrackPublication> publicationsOf(RemoteParticipant participant) {
+        List<TrackPublication> publications = new ArrayList<>();
+        publications.addAll(participant.getRemoteAudioTracks());
+        publications.addAll(participant.getRemoteVideoTracks());
+        publications.addAll(participant.getRemoteDataTracks());
+        return publications;
+    }
+
+    private static ParticipantState buildParticipantState(String sid, String identity,
+                                                          List<? extends TrackPublication> publications) {
+        ParticipantState state = new ParticipantState(sid, identity);
+        for (TrackPublication publication : publications) {
+            TrackState track = buildTrackState(publication);
+            state.tracks.put(track.sid, track);
+        }
+        return state;
+    }
+
+    private static TrackState buildTrackState(TrackPublication publication) {
+        TrackState track = new TrackState(publication.getTrackSid(), kindOf(publication), publication.getTrackName());
+        track.enabled = publication.isTrackEnabled();
+        track.subscribed = isSubscribed(publication);
+        return track;
+    }
+
+    private static boolean isSubscribed(TrackPublication publication) {
+        if (publication instanceof RemoteAudioTrackPublication) {
+            return ((RemoteAudioTrackPublication) publication).isTrackSubscribed();
+        }
+        if (publication instanceof RemoteVideoTrackPublication) {
+            return ((RemoteVideoTrackPublication) publication).isTrackSubscribed();
+        }
+        if (publication instanceof RemoteDataTrackPublication) {
+            return ((RemoteDataTrackPublication) publication).isTrackSubscribed();
+        }
+        return false;
+    }
+
+    static String kindOf(TrackPublication publication) {
+        if (publication instanceof AudioTrackPublication) {
+            return KIND_AUDIO;
+        }
+        if (publication instanceof VideoTrackPublication) {
+            return KIND_VIDEO;
+        }
+        if (publication instanceof DataTrackPublication) {
+            return KIND_DATA;
+        }
+        return null;
+    }
+
+    private static WritableMap buildParticipant(ParticipantState state) {
+        WritableMap participant = new WritableNativeMap();
+        participant.putString("sid", state.sid);
+        participant.putString("identity", state.identity);
+        participant.putInt("networkQuality", state.networkQualityLevel);
+        WritableArray tracks = new WritableNativeArray();
+        for (TrackState track : state.tracks.values()) {
+            tracks.pushMap(buildTrack(track));
+        }
+        participant.putArray("tracks", tracks);
+        return participant;
+    }
+
+    private static WritableMap buildTrack(TrackState track) {
+        WritableMap map = new WritableNativeMap();
+        map.putString("sid", track.sid);
+        map.putString("kind", track.kind);
+        map.putString("name", track.name);
+        map.putBoolean("enabled", track.enabled);
+        map.putBoolean("subscribed", track.subscribed);
+        return map;
+    }
+}
@@ -0,0 +1,512 @@
+/**
+ * Stand-in for a room that generates participant churn, track flapping and
+ * data message floods locally, without any network.
+ * <p>
+ * Events are generated on a worker thread and delivered on the main thread,
+ * the way the SDK delivers room callbacks, so the native event path can be
+ * load tested with many participants. Data messages are delivered on the data
+ * track thread instead, where the SDK delivers them, and take turns being a
+ * plain string, compressed text, an RPC request and the start of a transfer.
+ * Dispatch latency, main and data thread time and allocation are measured
+ * over the run and reported when it ends.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+public class SimulatedRoomDriver {
+    static final String KIND_AUDIO = "audio";
+    static final String KIND_VIDEO = "video";
+    static final String KIND_DATA = "data";
+
+    private static final String THREAD_NAME = "SimulatedRoom";
+    private static final int TICK_MS = 10;
+    private static final int MAX_LATENCY_SAMPLES = 20000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public interface Listener {
+        void onConnected(String roomName, String roomSid);
+
+        void onParticipantConnected(String identity, String sid);
+
+        void onParticipantDisconnected(String identity, String sid);
+
+        void onTrackSubscribed(String identity, String sid, String kind, String trackSid, String trackName);
+
+        void onTrackUnsubscribed(String identity, String sid, String kind, String trackSid, String trackName);
+
+        void onTrackEnabledChanged(String identity, String sid, String kind, String trackSid, String trackName, boolean enabled);
+
+        /*
+         * The data message callbacks run on the data track thread.
+         */
+        void onDataMessage(String message);
+
+        void onDataMessage(ByteBuffer frame);
+
+        void onDisconnected(String roomName, String roomSid);
+
+        void onFinished(WritableMap report);
+    }
+
+    public static class Options {
+        int participants = 50;
+        double joinsPerSecond = 5;
+        double churnPerSecond = 1;
+        double trackFlapsPerSecond = 2;
+        double dataMessagesPerSecond = 20;
+        int dataMessageSize = 64;
+        long durationMs = 30000;
+
+        public static Options fromReadableMap(ReadableMap map) {
+            Options options = new Options();
+            if (map == null) {
+                return options;
+            }
+            options.participants = (int) getDouble(map, "participants", options.participants);
+            options.joinsPerSecond = getDouble(map, "joinsPerSecond", options.joinsPerSecond);
+            options.churnPerSecond = getDouble(map, "churnPerSecond", options.churnPerSecond);
+            options.trackFlapsPerSecond = getDouble(map, "trackFlapsPerSecond", options.trackFlapsPerSecond);
+            options.dataMessagesPerSecond = getDouble(map, "dataMessagesPerSecond", options.dataMessagesPerSecond);
+            options.dataMessageSize = (int) getDouble(map, "dataMessageSize", options.dataMessageSize);
+            options.durationMs = (long) getDouble(map, "durationMs", options.durationMs);
+            return options;
+        }
+
+        private static double getDouble(ReadableMap map, String key, double fallback) {
+            return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : fallback;
+        }
+    }
+
+    private static class SimulatedParticipant {
+        final String identity;
+        final String sid;
+        final String[] trackSids = new String[2];
+        final boolean[] trackEnabled = {true, true};
+        final boolean[] trackSubscribed = {true, true};
+        final String dataTrackSid;
+
+        SimulatedParticipant(int index) {
+            identity = "sim-" + index;
+            sid = String.format("PA%030d", index);
+            trackSids[0] = String.format("MT%030d", index * 3);
+            trackSids[1] = String.format("MT%030d", index * 3 + 1);
+            dataTrackSid = String.format("MT%030d", index * 3 + 2);
+        }
+    }
+
+    private final Options options;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler dataHandler;
+    private final Random random = new Random();
+    private HandlerThread thread;
+    private Handler handler;
+    private Deflater deflater;
+
+    // Worker thread state
+    private final List<SimulatedParticipant> participants = new ArrayList<>();
+    private int nextParticipantIndex = 0;
+    private long startedAt;
+    private long lastTickAt;
+    private double pendingJoins;
+    private double pendingChurn;
+    private double pendingFlaps;
+    private double pendingMessages;
+    private int messageSequence = 0;
+    private int joined = 0;
+    private int left = 0;
+    private int flaps = 0;
+    private volatile boolean running = false;
+
+    // Main thread state
+    private long mainThreadNs = 0;
+
+    // Data track thread state
+    private long dataThreadNs = 0;
+
+    // Written from both, guarded by latencySamples
+    private final long[] latencySamples = new long[MAX_LATENCY_SAMPLES];
+    private int latencySampleCount = 0;
+    private long eventCount = 0;
+    private long maxLatencyNs = 0;
+    private long allocatedAtStart;
+    private long heapAtStart;
+
+    private final String roomName;
+    private final String roomSid;
+
+    public SimulatedRoomDriver(Options options, Listener listener, Handler dataHandler) {
+        this.options = options;
+        this.listener = listener;
+        this.dataHandler = dataHandler;
+        this.roomName = "simulated-" + Long.toHexString(System.currentTimeMillis());
+        this.roomSid = String.format("RM%030d", System.currentTimeMillis() % 1000000000L);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        allocatedAtStart = getAllocatedBytes();
+        heapAtStart = getUsedHeapBytes();
+        startedAt = SystemClock.elapsedRealtime();
+        lastTickAt = startedAt;
+
+        thread = new HandlerThread(THREAD_NAME);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        deflater = new Deflater();
+        dispatch(() -> listener.onConnected(roomName, roomSid));
+        handler.postDelayed(tick, TICK_MS);
+    }
+
+    /*
+     * Ends the run early, the report is delivered after every event already generated.
+     */
+    public void stop() {
+        if (!running || handler == null) {
+            return;
+        }
+        handler.removeCallbacks(tick);
+        handler.post(this::finish);
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtime();
+            double elapsedSeconds = (now - lastTickAt) / 1000.0;
+            lastTickAt = now;
+
+            if (participants.size() < options.participants) {
+                pendingJoins += options.joinsPerSecond * elapsedSeconds;
+                while (pendingJoins >= 1 && participants.size() < options.participants) {
+                    pendingJoins--;
+                    join();
+                }
+            } else if (!participants.isEmpty()) {
+                // Only churn once the room is full, a leave is followed by a join
+                pendingChurn += options.churnPerSecond * elapsedSeconds;
+                while (pendingChurn >= 1) {
+                    pendingChurn--;
+                    leave(participants.get(random.nextInt(participants.size())));
+                    join();
+                }
+            }
+
+            pendingFlaps += options.trackFlapsPerSecond * elapsedSeconds;
+            while (pendingFlaps >= 1) {
+                pendingFlaps--;
+                flap();
+            }
+
+            pendingMessages += options.dataMessagesPerSecond * elapsedSeconds;
+            while (pendingMessages >= 1) {
+                pendingMessages--;
+                sendMessage();
+            }
+
+            if (now - startedAt >= options.durationMs) {
+                finish();
+            } else {
+                handler.postDelayed(this, TICK_MS);
+            }
+        }
+    };
+
+    private void join() {
+        final SimulatedParticipant p = new SimulatedParticipant(nextParticipantIndex++);
+        participants.add(p);
+        joined++;
+        dispatch(() -> listener.onParticipantConnected(p.identity, p.sid));
+        dispatch(() -> listener.onTrackSubscribed(p.identity, p.sid, KIND_AUDIO, p.trackSids[0], "audio"));
+        dispatch(() -> listener.onTrackSubscribed(p.identity, p.sid, KIND_VIDEO, p.trackSids[1], "video"));
+        dispatch(() -> listener.onTrackSubscribed(p.identity, p.sid, KIND_DATA, p.dataTrackSid, "data"));
+    }
+
+    private void leave(final SimulatedParticipant p) {
+        participants.remove(p);
+        left++;
+        for (int i = 0; i < p.trackSids.length; i++) {
+            if (p.trackSubscribed[i]) {
+                final String kind = i == 0 ? KIND_AUDIO : KIND_VIDEO;
+                final String trackSid = p.trackSids[i];
+                dispatch(() -> listener.onTrackUnsubscribed(p.identity, p.sid, kind, trackSid, kind));
+            }
+        }
+        dispatch(() -> listener.onTrackUnsubscribed(p.identity, p.sid, KIND_DATA, p.dataTrackSid, "data"));
+        dispatch(() -> listener.onParticipantDisconnected(p.identity, p.sid));
+    }
+
+    /*
+     * Every fourth flap drops and restores the subscription, the others toggle enabled.
+     */
+    private void flap() {
+        if (participants.isEmpty()) {
+            return;
+        }
+        final SimulatedParticipant p = participants.get(random.nextInt(participants.size()));
+        final int i = random.nextInt(p.trackSids.length);
+        final String kind = i == 0 ? KIND_AUDIO : KIND_VIDEO;
+        final String trackSid = p.trackSids[i];
+        flaps++;
+        if (flaps % 4 == 0) {
+            p.trackSubscribed[i] = !p.trackSubscribed[i];
+            if (p.trackSubscribed[i]) {
+                dispatch(() -> listener.onTrackSubscribed(p.identity, p.sid, kind, trackSid, kind));
+            } else {
+                dispatch(() -> listener.onTrackUnsubscribed(p.identity, p.sid, kind, trackSid, kind));
+            }
+        } else if (p.trackSubscribed[i]) {
+            p.trackEnabled[i] = !p.trackEnabled[i];
+            final boolean enabled = p.trackEnabled[i];
+            dispatch(() -> listener.onTrackEnabledChanged(p.identity, p.sid, kind, trackSid, kind, enabled));
+        }
+    }
+
+    private void sendMessage() {
+        int sequence = messageSequence++;
+        StringBuilder builder = new StringBuilder(options.dataMessageSize);
+        builder.append(sequence).append(':');
+        while (builder.length() < options.dataMessageSize) {
+            builder.append('x');
+        }
+        final String message = builder.toString();
+        final ByteBuffer frame;
+        switch (sequence % 4) {
+            case 1:
+                frame = compressedTextFrame(message);
+                break;
+            case 2:
+                frame = rpcRequestFrame(sequence, message);
+                break;
+            case 3:
+                frame = transferStartFrame(sequence, message);
+                break;
+            default:
+                frame = null;
+                break;
+        }
+        if (frame != null) {
+            dispatchData(() -> listener.onDataMessage(frame));
+        } else {
+            dispatchData(() -> listener.onDataMessage(message));
+        }
+    }
+
+    // ===== FRAMES ================================================================================
+
+    /*
+     * The frames a remote participant's DataTrackCompressor, DataTrackRpc and
+     * DataTrackTransfers would send.
+     */
+
+    private ByteBuffer compressedTextFrame(String message) {
+        byte[] text = message.getBytes(UTF_8);
+        // zlib's deflateBound with room to spare, one deflate call always finishes
+        byte[] deflated = new byte[text.length + (text.length >> 12) + (text.length >> 14) + 64];
+        deflater.reset();
+        deflater.setInput(text);
+        deflater.finish();
+        int length = deflater.deflate(deflated);
+        ByteBuffer frame = ByteBuffer.allocate(1 + 4 + length);
+        frame.put(DataTrackCompressor.FRAME_COMPRESSED_TEXT);
+        frame.putInt(text.length);
+        frame.put(deflated, 0, length);
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer rpcRequestFrame(long id, String payload) {
+        byte[] body = payload.getBytes(UTF_8);
+        // No target, every participant may answer
+        ByteBuffer frame = ByteBuffer.allocate(1 + 8 + 2 + body.length);
+        frame.put(DataTrackRpc.FRAME_REQUEST);
+        frame.putLong(id);
+        frame.putShort((short) 0);
+        frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer transferStartFrame(long id, String text) {
+        byte[] name = ("simulated-" + id + ".txt").getBytes(UTF_8);
+        int totalBytes = text.getBytes(UTF_8).length;
+        ByteBuffer frame = ByteBuffer.allocate(1 + 8 + 8 + 4 + 1 + name.length);
+        frame.put(DataTrackTransfers.FRAME_TRANSFER_START);
+        frame.putLong(id);
+        frame.putLong(totalBytes);
+        frame.putInt((totalBytes + DataTrackTransfers.CHUNK_SIZE - 1) / DataTrackTransfers.CHUNK_SIZE);
+        // Text
+        frame.put((byte) 0x01);
+        frame.put(name);
+        frame.flip();
+        return frame;
+    }
+
+    private void finish() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        handler.removeCallbacks(tick);
+        final long durationMs = SystemClock.elapsedRealtime() - startedAt;
+        final int participantsJoined = joined;
+        final int participantsLeft = left;
+        final int trackFlaps = flaps;
+        final int dataMessages = messageSequence;
+        participants.clear();
+        deflater.end();
+        dispatch(() -> listener.onDisconnected(roomName, roomSid));
+        // Behind the data messages still queued on the data track thread
+        dataHandler.post(() -> mainHandler.post(() -> {
+            WritableMap report = new WritableNativeMap();
+            report.putString("roomName", roomName);
+            report.putDouble("durationMs", durationMs);
+            report.putDouble("events", getEventCount());
+            report.putInt("participantsJoined", participantsJoined);
+            report.putInt("participantsLeft", participantsLeft);
+            report.putInt("trackFlaps", trackFlaps);
+            report.putInt("dataMessages", dataMessages);
+            report.putMap("dispatchLatencyMs", buildLatencyReport());
+            report.putDouble("mainThreadMs", mainThreadNs / 1000000.0);
+            report.putDouble("mainThreadUtilization", durationMs > 0 ? mainThreadNs / 1000000.0 / durationMs : 0);
+            report.putDouble("dataThreadMs", getDataThreadNs() / 1000000.0);
+            long allocatedAtEnd = getAllocatedBytes();
+            report.putDouble("allocatedBytes", allocatedAtStart >= 0 && allocatedAtEnd >= 0
+                    ? allocatedAtEnd - allocatedAtStart : -1);
+            report.putDouble("heapGrowthBytes", getUsedHeapBytes() - heapAtStart);
+            listener.onFinished(report);
+        }));
+        thread.quit();
+    }
+
+    /*
+     * Latency is measured from the moment the event is generated to the moment its
+     * handler on the main thread returns.
+     */
+    private void dispatch(final Runnable event) {
+        final long generatedAt = System.nanoTime();
+        mainHandler.post(() -> {
+            long handledAt = System.nanoTime();
+            event.run();
+            long finishedAt = System.nanoTime();
+            mainThreadNs += finishedAt - handledAt;
+            recordLatency(finishedAt - generatedAt);
+        });
+    }
+
+    /*
+     * Same as dispatch, for the data track thread.
+     */
+    private void dispatchData(final Runnable event) {
+        final long generatedAt = System.nanoTime();
+        dataHandler.post(() -> {
+            long handledAt = System.nanoTime();
+            event.run();
+            long finishedAt = System.nanoTime();
+            synchronized (latencySamples) {
+                dataThreadNs += finishedAt - handledAt;
+            }
+            recordLatency(finishedAt - generatedAt);
+        });
+    }
+
+    private long getEventCount() {
+        synchronized (latencySamples) {
+            return eventCount;
+        }
+    }
+
+    private long getDataThreadNs() {
+        synchronized (latencySamples) {
+            return dataThreadNs;
+        }
+    }
+
+    // Reservoir sampling keeps the percentiles representative on long runs
+    private void recordLatency(long latencyNs) {
+        synchronized (latencySamples) {
+            eventCount++;
+            maxLatencyNs = Math.max(maxLatencyNs, latencyNs);
+            if (latencySampleCount < MAX_LATENCY_SAMPLES) {
+                latencySamples[latencySampleCount++] = latencyNs;
+            } else {
+                long slot = (long) (random.nextDouble() * eventCount);
+                if (slot < MAX_LATENCY_SAMPLES) {
+                    latencySamples[(int) slot] = latencyNs;
+                }
+            }
+        }
+    }
+
+    private WritableMap buildLatencyReport() {
+        long[] sorted;
+        long maxNs;
+        synchronized (latencySamples) {
+            sorted = Arrays.copyOf(latencySamples, latencySampleCount);
+            maxNs = maxLatencyNs;
+        }
+        Arrays.sort(sorted);
+        WritableMap latency = new WritableNativeMap();
+        latency.putDouble("p50", percentile(sorted, 0.50));
+        latency.putDouble("p95", percentile(sorted, 0.95));
+        latency.putDouble("p99", percentile(sorted, 0.99));
+        latency.putDouble("max", maxNs / 1000000.0);
+        return latency;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index] / 1000000.0;
+    }
+
+    /*
+     * Bytes allocated by the whole process since it started, -1 before Marshmallow.
+     */
+    private static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+            if (value != null) {
+                try {
+                    return Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long getUsedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
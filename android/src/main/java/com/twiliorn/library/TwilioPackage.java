@@ -19,9 +19,26 @@ import java.util.Collections;
 import java.util.List;
 
 public class TwilioPackage implements ReactPackage {
+    private final boolean warmUp;
+
+    public TwilioPackage() {
+        this(false);
+    }
+
+    /*
+     * With warmUp the native library and audio device are initialized on a background thread
+     * as soon as the module is created, instead of on the first connect.
+     */
+    public TwilioPackage(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
     @Override
     public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+        if (warmUp) {
+            VideoSdkWarmUp.start(reactContext);
+        }
+        return Collections.<NativeModule>singletonList(new TwilioVideoModule(reactContext));
     }
 
     // Deprecated by RN 0.47
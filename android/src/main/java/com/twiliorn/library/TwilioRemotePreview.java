@@ -16,13 +16,24 @@ public class TwilioRemotePreview extends RNVideoViewGroup {
 
     private static final String TAG = "TwilioRemotePreview";
 
+    private final TwilioVideoSession session;
 
     public TwilioRemotePreview(ThemedReactContext context, String trackSid) {
         super(context);
         Log.i("CustomTwilioVideoView", "Remote Prview Construct");
         Log.i("CustomTwilioVideoView", trackSid);
 
+        session = TwilioVideoSession.acquire();
+        session.registerPrimaryVideoView(this.getSurfaceViewRenderer(), trackSid);
+    }
+
+    public void setTrackSid(String trackSid) {
+        session.registerPrimaryVideoView(this.getSurfaceViewRenderer(), trackSid);
+    }
 
-        CustomTwilioVideoView.registerPrimaryVideoView(this.getSurfaceViewRenderer(), trackSid);
+    public void releaseSession() {
+        session.unregisterPrimaryVideoView(this.getSurfaceViewRenderer());
+        session.release();
+        recycleRenderer();
     }
 }
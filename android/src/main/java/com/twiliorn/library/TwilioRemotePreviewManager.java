@@ -41,13 +41,21 @@ public class TwilioRemotePreviewManager extends SimpleViewManager<TwilioRemotePr
       }
     }
 
+    /*
+     * Caps the render frame rate of this tile, 0 renders every frame.
+     */
+    @ReactProp(name = "maxFps", defaultInt = 0)
+    public void setMaxFps(TwilioRemotePreview view, int maxFps) {
+        view.getSurfaceViewRenderer().setMaxFps(maxFps);
+    }
+
     @ReactProp(name = "trackSid")
     public void setTrackId(TwilioRemotePreview view, @Nullable String trackSid) {
 
         Log.i("CustomTwilioVideoView", "Initialize Twilio REMOTE");
         Log.i("CustomTwilioVideoView", trackSid);
         myTrackSid = trackSid;
-        CustomTwilioVideoView.registerPrimaryVideoView(view.getSurfaceViewRenderer(), trackSid);
+        view.setTrackSid(trackSid);
     }
 
 
@@ -56,6 +64,12 @@ public class TwilioRemotePreviewManager extends SimpleViewManager<TwilioRemotePr
         return new TwilioRemotePreview(reactContext, myTrackSid);
     }
 
+    @Override
+    public void onDropViewInstance(TwilioRemotePreview view) {
+        super.onDropViewInstance(view);
+        view.releaseSession();
+    }
+
     @Override
     public Map getExportedCustomBubblingEventTypeConstants() {
       return MapBuilder.builder()
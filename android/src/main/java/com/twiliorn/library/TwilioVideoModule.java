@@ -0,0 +1,357 @@
+/**
+ * Command path to the active video view that does not go through UIManager.
+ * <p>
+ * View manager commands wait behind pending UI operations and cannot return
+ * anything, so a mute during a heavy re-render can lag noticeably. The
+ * methods here are posted straight to the main thread, where the room and
+ * track state of the view lives, and settle a promise with the result. They
+ * act on whichever view currently drives the session, no view handle needed.
+ * Connect and disconnect go through here as well, so every command runs in
+ * the order JS issued it. Commands issued before the view has been created
+ * wait for it, in order, for up to VIEW_WAIT_MS. Disconnect and getStats
+ * only need the session, they still work while no view is mounted.
+ */
+
+package com.twiliorn.library;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.uimanager.IllegalViewOperationException;
+import com.facebook.react.uimanager.UIManagerModule;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+public class TwilioVideoModule extends ReactContextBaseJavaModule {
+    static final String NAME = "TwilioVideoCommands";
+    static final String E_NO_ACTIVE_VIEW = "E_NO_ACTIVE_VIEW";
+    static final String E_NOT_CONNECTED = "E_NOT_CONNECTED";
+    static final String E_CONNECT_FAILED = "E_CONNECT_FAILED";
+    static final String E_COMMAND_FAILED = "E_COMMAND_FAILED";
+    static final String E_DUMP_FAILED = "E_DUMP_FAILED";
+
+    // A view created in the same render as the first command shows up within a few frames
+    private static final int VIEW_WAIT_MS = 1000;
+    private static final int VIEW_POLL_MS = 16;
+
+    private interface Command {
+        void run(CustomTwilioVideoView view, Promise promise);
+    }
+
+    private static class PendingCommand {
+        final Promise promise;
+        final Command command;
+        final boolean needsView;
+        final long queuedAt = SystemClock.uptimeMillis();
+
+        PendingCommand(Promise promise, Command command, boolean needsView) {
+            this.promise = promise;
+            this.command = command;
+            this.needsView = needsView;
+        }
+    }
+
+    private final Handler commandHandler = new Handler(Looper.getMainLooper());
+    // Only touched on the main thread
+    private final ArrayDeque<PendingCommand> pendingCommands = new ArrayDeque<>();
+    private final Runnable drainPendingCommands = this::drainPendingCommands;
+
+    public TwilioVideoModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /*
+     * Room callbacks and the view's track state are confined to the main thread, commands
+     * are serialized there rather than on a thread of their own.
+     */
+    private void execute(final Promise promise, final Command command) {
+        enqueue(new PendingCommand(promise, command, true));
+    }
+
+    /*
+     * Runs in order like execute, but with a null view when none is mounted.
+     */
+    private void executeWithoutView(final Promise promise, final Command command) {
+        enqueue(new PendingCommand(promise, command, false));
+    }
+
+    private void enqueue(final PendingCommand pending) {
+        commandHandler.post(() -> {
+            pendingCommands.add(pending);
+            drainPendingCommands();
+        });
+    }
+
+    /*
+     * Runs queued commands in order. The head waits for a view, and everything behind it
+     * waits with it.
+     */
+    private void drainPendingCommands() {
+        commandHandler.removeCallbacks(drainPendingCommands);
+        while (!pendingCommands.isEmpty()) {
+            PendingCommand pending = pendingCommands.peek();
+            TwilioVideoSession session = TwilioVideoSession.peek();
+            CustomTwilioVideoView view = session != null ? session.controller : null;
+            if (view == null && pending.needsView) {
+                if (SystemClock.uptimeMillis() - pending.queuedAt < VIEW_WAIT_MS) {
+                    commandHandler.postDelayed(drainPendingCommands, VIEW_POLL_MS);
+                    return;
+                }
+                pendingCommands.poll();
+                pending.promise.reject(E_NO_ACTIVE_VIEW, "No TwilioVideo view is mounted");
+                continue;
+            }
+            pendingCommands.poll();
+            try {
+                pending.command.run(view, pending.promise);
+            } catch (RuntimeException e) {
+                pending.promise.reject(E_COMMAND_FAILED, e);
+            }
+        }
+    }
+
+    /*
+     * Takes the same options as the JS connect call. Resolves with the room name once the
+     * connect has started and rejects when it could not start, the room events report how
+     * it went.
+     */
+    @ReactMethod
+    public void connect(final ReadableMap options, Promise promise) {
+        execute(promise, (view, p) -> {
+            boolean started = view.connectToRoomWrapper(
+                    getString(options, "roomName"),
+                    getString(options, "accessToken"),
+                    getBoolean(options, "enableAudio", true),
+                    getBoolean(options, "enableVideo", true),
+                    getBoolean(options, "enableRemoteAudio", true),
+                    getBoolean(options, "enableNetworkQualityReporting", false),
+                    getString(options, "localNetworkQualityVerbosity"),
+                    getString(options, "remoteNetworkQualityVerbosity"),
+                    getBoolean(options, "enableDevicePressureGovernor", false),
+                    getMap(options, "audioOptions"),
+                    getMap(options, "audioDevice"),
+                    getBoolean(options, "enableRoomSnapshot", false),
+                    getMap(options, "largeRoom"),
+                    getMap(options, "iceOptions"));
+            if (!started) {
+                p.reject(E_CONNECT_FAILED, "No camera is supported on this device");
+                return;
+            }
+            p.resolve(getString(options, "roomName"));
+        });
+    }
+
+    /*
+     * Releases the view with the given tag, not the active one, a remount may already have
+     * made another view the active one. A view that is already gone was released when it
+     * was dropped.
+     */
+    @ReactMethod
+    public void releaseResource(final int reactTag, Promise promise) {
+        enqueue(new PendingCommand(promise, (activeView, p) -> {
+            View view = null;
+            try {
+                UIManagerModule uiManager = getReactApplicationContext().getNativeModule(UIManagerModule.class);
+                view = uiManager != null ? uiManager.resolveView(reactTag) : null;
+            } catch (IllegalViewOperationException e) {
+                // Already dropped
+            }
+            if (view instanceof CustomTwilioVideoView) {
+                ((CustomTwilioVideoView) view).releaseResource();
+            }
+            p.resolve(null);
+        }, false));
+    }
+
+    private static String getString(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getString(key) : null;
+    }
+
+    private static boolean getBoolean(ReadableMap map, String key, boolean fallback) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getBoolean(key) : fallback;
+    }
+
+    private static ReadableMap getMap(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getMap(key) : null;
+    }
+
+    @ReactMethod
+    public void setLocalAudioEnabled(final boolean enabled, Promise promise) {
+        execute(promise, (view, p) -> p.resolve(view.toggleAudio(enabled)));
+    }
+
+    @ReactMethod
+    public void setLocalVideoEnabled(final boolean enabled, Promise promise) {
+        execute(promise, (view, p) -> p.resolve(view.toggleVideo(enabled)));
+    }
+
+    @ReactMethod
+    public void setRemoteAudioEnabled(final boolean enabled, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.toggleRemoteAudio(enabled);
+            p.resolve(enabled);
+        });
+    }
+
+    @ReactMethod
+    public void setBluetoothHeadsetConnected(final boolean enabled, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.toggleBluetoothHeadset(enabled);
+            p.resolve(enabled);
+        });
+    }
+
+    @ReactMethod
+    public void toggleSoundSetup(final boolean speaker, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.toggleSoundSetup(speaker);
+            p.resolve(speaker);
+        });
+    }
+
+    @ReactMethod
+    public void publishLocalAudio(final boolean enabled, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.publishLocalAudio(enabled);
+            p.resolve(enabled);
+        });
+    }
+
+    @ReactMethod
+    public void publishLocalVideo(final boolean enabled, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.publishLocalVideo(enabled);
+            p.resolve(enabled);
+        });
+    }
+
+    /*
+     * Resolves once the switch has started, onCameraSwitched still reports its completion.
+     */
+    @ReactMethod
+    public void switchCamera(final boolean freezeLastFrame, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.switchCamera(freezeLastFrame);
+            p.resolve(null);
+        });
+    }
+
+    @ReactMethod
+    public void sendString(final String message, Promise promise) {
+        execute(promise, (view, p) -> {
+            view.sendString(message);
+            p.resolve(null);
+        });
+    }
+
+    @ReactMethod
+    public void getStats(Promise promise) {
+        executeWithoutView(promise, (view, p) -> {
+            TwilioVideoSession session = TwilioVideoSession.peek();
+            if (session == null || session.room == null) {
+                p.reject(E_NOT_CONNECTED, "Not connected to a room");
+                return;
+            }
+            session.room.getStats(statsReports -> p.resolve(CustomTwilioVideoView.buildStatsEvent(statsReports)));
+        });
+    }
+
+    /*
+     * Settles with the first response to the request, or rejects once timeoutMs has passed.
+     * Without a targetSid any participant may answer.
+     */
+    @ReactMethod
+    public void request(final String targetSid, final String payload, final int timeoutMs, Promise promise) {
+        execute(promise, (view, p) -> view.getDataTrackRpc().request(targetSid, payload, timeoutMs, p));
+    }
+
+    @ReactMethod
+    public void respond(final String requestId, final String payload, final String error, Promise promise) {
+        execute(promise, (view, p) -> {
+            if (!view.getDataTrackRpc().respond(requestId, payload, error)) {
+                p.reject(E_NOT_CONNECTED, "Not connected to a room");
+                return;
+            }
+            p.resolve(null);
+        });
+    }
+
+    /*
+     * Sends a file of any size in chunks, resolves with the transfer id once the last chunk
+     * is out. onDataTrackTransferProgress reports progress on both ends.
+     */
+    @ReactMethod
+    public void sendFile(final String filePath, final String name, Promise promise) {
+        execute(promise, (view, p) -> view.getDataTrackTransfers().sendFile(filePath, name, p));
+    }
+
+    @ReactMethod
+    public void sendLargeString(final String data, final String name, Promise promise) {
+        execute(promise, (view, p) -> view.getDataTrackTransfers().sendText(data, name, p));
+    }
+
+    @ReactMethod
+    public void getRoomSnapshot(Promise promise) {
+        execute(promise, (view, p) -> p.resolve(view.buildRoomSnapshot()));
+    }
+
+    /*
+     * Writes the flight recorder to the cache dir. Needs no view, so it also works after the
+     * call has been torn down. Runs on the native modules thread, not the main thread.
+     */
+    @ReactMethod
+    public void dumpFlightRecorder(Promise promise) {
+        File file = new File(getReactApplicationContext().getCacheDir(),
+                "twilio-flight-recorder-" + System.currentTimeMillis() + ".tsv");
+        try {
+            int entries = FlightRecorder.dump(file);
+            WritableMap result = new WritableNativeMap();
+            result.putString("filePath", file.getAbsolutePath());
+            result.putInt("entries", entries);
+            result.putDouble("recorded", FlightRecorder.getRecordedCount());
+            promise.resolve(result);
+        } catch (IOException e) {
+            promise.reject(E_DUMP_FAILED, e);
+        }
+    }
+
+    /*
+     * State of the package warm-up, idle when TwilioPackage was created without it.
+     */
+    @ReactMethod
+    public void getWarmUpStatus(Promise promise) {
+        promise.resolve(VideoSdkWarmUp.getStatus());
+    }
+
+    /*
+     * Without a view only the room is left to leave, the local tracks go with the session.
+     */
+    @ReactMethod
+    public void disconnect(Promise promise) {
+        executeWithoutView(promise, (view, p) -> {
+            TwilioVideoSession session = TwilioVideoSession.peek();
+            if (view != null) {
+                view.disconnect();
+            } else if (session != null && session.room != null) {
+                session.room.disconnect();
+            }
+            p.resolve(null);
+        });
+    }
+}
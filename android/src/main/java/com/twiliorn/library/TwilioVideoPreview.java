@@ -13,9 +13,18 @@ public class TwilioVideoPreview extends RNVideoViewGroup {
 
     private static final String TAG = "TwilioVideoPreview";
 
+    private final TwilioVideoSession session;
+
     public TwilioVideoPreview(ThemedReactContext themedReactContext) {
         super(themedReactContext);
-        CustomTwilioVideoView.registerThumbnailVideoView(this.getSurfaceViewRenderer());
+        session = TwilioVideoSession.acquire();
+        session.registerThumbnailVideoView(this.getSurfaceViewRenderer());
         this.getSurfaceViewRenderer().applyZOrder(true);
     }
+
+    public void releaseSession() {
+        session.unregisterThumbnailVideoView(this.getSurfaceViewRenderer());
+        session.release();
+        recycleRenderer();
+    }
 }
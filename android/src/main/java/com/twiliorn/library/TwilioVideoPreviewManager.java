@@ -39,6 +39,14 @@ public class TwilioVideoPreviewManager extends SimpleViewManager<TwilioVideoPrev
       }
     }
 
+    /*
+     * Caps the render frame rate of this tile, 0 renders every frame.
+     */
+    @ReactProp(name = "maxFps", defaultInt = 0)
+    public void setMaxFps(TwilioVideoPreview view, int maxFps) {
+        view.getSurfaceViewRenderer().setMaxFps(maxFps);
+    }
+
     @Override
     @Nullable
     public Map getExportedCustomDirectEventTypeConstants() {
@@ -53,4 +61,10 @@ public class TwilioVideoPreviewManager extends SimpleViewManager<TwilioVideoPrev
     protected TwilioVideoPreview createViewInstance(ThemedReactContext reactContext) {
         return new TwilioVideoPreview(reactContext);
     }
+
+    @Override
+    public void onDropViewInstance(TwilioVideoPreview view) {
+        super.onDropViewInstance(view);
+        view.releaseSession();
+    }
 }
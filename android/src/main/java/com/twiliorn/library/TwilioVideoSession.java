@@ -0,0 +1,383 @@
+/**
+ * Owner of the room, the local video track, the camera capturer and the
+ * renderers attached to them.
+ * <p>
+ * The video view and every preview hold a reference on the current session.
+ * The session lives as long as one of them does and is torn down when the
+ * last reference is released, so nothing outlives the views that used it and
+ * the next call starts from a clean session.
+ * <p>
+ * The count is kept for the session, not for every track and renderer. Each
+ * of them has exactly one slot here: one room, one local track, one capturer,
+ * one thumbnail and one binding per remote renderer. A count per object would
+ * never go past one, so taking the object out of its slot is what releases it.
+ * Renderers are detached when their view unregisters and the rest goes in
+ * dispose. Only the pointer to the current session is static, so the command
+ * module and the previews can find it without a view. The state lives in the
+ * instance and is dropped with it.
+ */
+
+package com.twiliorn.library;
+
+import android.view.View;
+
+import com.twilio.video.CameraCapturer;
+import com.twilio.video.LocalVideoTrack;
+import com.twilio.video.NetworkQualityLevel;
+import com.twilio.video.RemoteAudioTrack;
+import com.twilio.video.RemoteAudioTrackPublication;
+import com.twilio.video.RemoteDataTrack;
+import com.twilio.video.RemoteDataTrackPublication;
+import com.twilio.video.RemoteParticipant;
+import com.twilio.video.RemoteVideoTrack;
+import com.twilio.video.RemoteVideoTrackPublication;
+import com.twilio.video.Room;
+import com.twilio.video.TwilioException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TwilioVideoSession {
+    private static TwilioVideoSession current;
+
+    private int references = 0;
+    private boolean disposed = false;
+
+    /*
+     * A Room represents communication between the client and one or more participants.
+     */
+    Room room;
+
+    /*
+     * A VideoView receives frames from a local or remote video track and renders them
+     * to an associated view.
+     */
+    PatchedVideoView thumbnailVideoView;
+    LocalVideoTrack localVideoTrack;
+    CameraCapturerCompat cameraCapturer;
+
+    /*
+     * Remote renderers in binding order. Only the first maxRemoteRenderers are attached to
+     * their track, the rest stay parked until the limit is raised again.
+     */
+    final Map<PatchedVideoView, String> remoteRendererBindings = new LinkedHashMap<>();
+    int maxRemoteRenderers = Integer.MAX_VALUE;
+    // Frame rate cap for every bound remote renderer while the device is under pressure, 0 for none
+    private int remoteRendererMaxFps = 0;
+
+    // Last-N selection of remote video in large-room mode, null otherwise
+    LargeRoomPolicy largeRoomPolicy;
+
+    // The video view driving the room, the command module routes through it
+    CustomTwilioVideoView controller;
+
+    // Map used to map remote data tracks to remote participants, written from the data track thread
+    final Map<RemoteDataTrack, RemoteParticipant> dataTrackRemoteParticipantMap =
+            new ConcurrentHashMap<>();
+
+    private TwilioVideoSession() {
+    }
+
+    /*
+     * Returns the current session, creating one if the previous one was torn down.
+     * Every acquire has to be balanced by a release.
+     */
+    public static synchronized TwilioVideoSession acquire() {
+        if (current == null) {
+            current = new TwilioVideoSession();
+        }
+        current.references++;
+        return current;
+    }
+
+    /*
+     * The current session without taking a reference, null when there is none.
+     */
+    public static synchronized TwilioVideoSession peek() {
+        return current;
+    }
+
+    public void release() {
+        synchronized (TwilioVideoSession.class) {
+            if (disposed || references == 0) {
+                return;
+            }
+            references--;
+            if (references > 0) {
+                return;
+            }
+            if (current == this) {
+                current = null;
+            }
+            disposed = true;
+        }
+        dispose();
+    }
+
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    // ===== REMOTE RENDERERS ======================================================================
+
+    public void registerPrimaryVideoView(PatchedVideoView v, String trackSid) {
+        if (disposed) {
+            return;
+        }
+        remoteRendererBindings.remove(v);
+        remoteRendererBindings.put(v, trackSid);
+        v.setPressureMaxFps(remoteRendererMaxFps);
+        refreshActiveVideoTracks();
+    }
+
+    public void unregisterPrimaryVideoView(PatchedVideoView v) {
+        if (remoteRendererBindings.remove(v) != null) {
+            v.setPressureMaxFps(0);
+            detachRemoteRenderer(v);
+            refreshActiveVideoTracks();
+        }
+    }
+
+    void setRemoteRendererMaxFps(int maxFps) {
+        remoteRendererMaxFps = maxFps;
+        for (PatchedVideoView v : remoteRendererBindings.keySet()) {
+            v.setPressureMaxFps(maxFps);
+        }
+    }
+
+    /*
+     * Re-runs the large-room selection before applying the bindings, tracks that fell out of
+     * the active set get their renderers parked.
+     */
+    void refreshActiveVideoTracks() {
+        if (largeRoomPolicy != null && room != null
+                && largeRoomPolicy.update(room, remoteRendererBindings.values())
+                && controller != null) {
+            controller.onActiveVideoTracksChanged(largeRoomPolicy);
+        }
+        applyRemoteRendererBindings();
+    }
+
+    void applyRemoteRendererBindings() {
+        if (room == null) {
+            return;
+        }
+        int index = 0;
+        for (Map.Entry<PatchedVideoView, String> binding : remoteRendererBindings.entrySet()) {
+            PatchedVideoView v = binding.getKey();
+            String trackSid = index++ < maxRemoteRenderers ? binding.getValue() : null;
+            if (trackSid != null && largeRoomPolicy != null && !largeRoomPolicy.isActive(trackSid)) {
+                trackSid = null;
+            }
+
+            for (RemoteParticipant participant : room.getRemoteParticipants()) {
+                for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
+                    RemoteVideoTrack track = publication.getRemoteVideoTrack();
+                    if (track == null) {
+                        continue;
+                    }
+                    if (publication.getTrackSid().equals(trackSid)) {
+                        track.addRenderer(v);
+                    } else {
+                        track.removeRenderer(v);
+                    }
+                }
+            }
+        }
+    }
+
+    private void detachRemoteRenderer(PatchedVideoView v) {
+        if (room == null) {
+            return;
+        }
+        for (RemoteParticipant participant : room.getRemoteParticipants()) {
+            for (RemoteVideoTrackPublication publication : participant.getRemoteVideoTracks()) {
+                RemoteVideoTrack track = publication.getRemoteVideoTrack();
+                if (track != null) {
+                    track.removeRenderer(v);
+                }
+            }
+        }
+    }
+
+    // ===== LOCAL RENDERER ========================================================================
+
+    public void registerThumbnailVideoView(PatchedVideoView v) {
+        if (disposed) {
+            return;
+        }
+        thumbnailVideoView = v;
+        if (localVideoTrack != null) {
+            localVideoTrack.addRenderer(v);
+        }
+        updateThumbnailMirror();
+    }
+
+    public void unregisterThumbnailVideoView(PatchedVideoView v) {
+        if (thumbnailVideoView != v) {
+            return;
+        }
+        if (localVideoTrack != null) {
+            localVideoTrack.removeRenderer(v);
+        }
+        thumbnailVideoView = null;
+    }
+
+    void updateThumbnailMirror() {
+        if (cameraCapturer != null) {
+            CameraCapturer.CameraSource cameraSource = cameraCapturer.getCameraSource();
+            final boolean isBackCamera = (cameraSource == CameraCapturer.CameraSource.BACK_CAMERA);
+            if (thumbnailVideoView != null && thumbnailVideoView.getVisibility() == View.VISIBLE) {
+                thumbnailVideoView.setMirror(!isBackCamera);
+            }
+        }
+    }
+
+    // ===== PARTICIPANTS ==========================================================================
+
+    /*
+     * The SDK does not accept a null listener, swapping in a detached one drops the
+     * reference the participant holds on the view that was listening.
+     */
+    void detachParticipant(RemoteParticipant participant) {
+        participant.setListener(DETACHED_PARTICIPANT_LISTENER);
+        Iterator<RemoteParticipant> iterator = dataTrackRemoteParticipantMap.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == participant) {
+                iterator.remove();
+            }
+        }
+    }
+
+    void onRoomDisconnected(Room disconnectedRoom) {
+        for (RemoteParticipant participant : disconnectedRoom.getRemoteParticipants()) {
+            participant.setListener(DETACHED_PARTICIPANT_LISTENER);
+        }
+        dataTrackRemoteParticipantMap.clear();
+        if (room == disconnectedRoom) {
+            room = null;
+            largeRoomPolicy = null;
+        }
+    }
+
+    // ===== TEARDOWN ==============================================================================
+
+    private void dispose() {
+        controller = null;
+        for (PatchedVideoView v : remoteRendererBindings.keySet()) {
+            v.setPressureMaxFps(0);
+            detachRemoteRenderer(v);
+        }
+        remoteRendererBindings.clear();
+        maxRemoteRenderers = Integer.MAX_VALUE;
+        remoteRendererMaxFps = 0;
+
+        if (localVideoTrack != null) {
+            if (thumbnailVideoView != null) {
+                localVideoTrack.removeRenderer(thumbnailVideoView);
+            }
+            localVideoTrack.release();
+            localVideoTrack = null;
+        }
+        thumbnailVideoView = null;
+
+        if (cameraCapturer != null) {
+            cameraCapturer.stopCapture();
+            cameraCapturer = null;
+        }
+
+        if (room != null) {
+            Room disconnectingRoom = room;
+            onRoomDisconnected(disconnectingRoom);
+            if (disconnectingRoom.getState() != Room.State.DISCONNECTED) {
+                disconnectingRoom.disconnect();
+            }
+        }
+        dataTrackRemoteParticipantMap.clear();
+    }
+
+    private static final RemoteParticipant.Listener DETACHED_PARTICIPANT_LISTENER =
+            new RemoteParticipant.Listener() {
+        @Override
+        public void onAudioTrackPublished(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
+        }
+
+        @Override
+        public void onAudioTrackUnpublished(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
+        }
+
+        @Override
+        public void onAudioTrackSubscribed(RemoteParticipant participant, RemoteAudioTrackPublication publication, RemoteAudioTrack audioTrack) {
+        }
+
+        @Override
+        public void onAudioTrackSubscriptionFailed(RemoteParticipant participant, RemoteAudioTrackPublication publication, TwilioException twilioException) {
+        }
+
+        @Override
+        public void onAudioTrackUnsubscribed(RemoteParticipant participant, RemoteAudioTrackPublication publication, RemoteAudioTrack audioTrack) {
+        }
+
+        @Override
+        public void onVideoTrackPublished(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
+        }
+
+        @Override
+        public void onVideoTrackUnpublished(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
+        }
+
+        @Override
+        public void onVideoTrackSubscribed(RemoteParticipant participant, RemoteVideoTrackPublication publication, RemoteVideoTrack videoTrack) {
+        }
+
+        @Override
+        public void onVideoTrackSubscriptionFailed(RemoteParticipant participant, RemoteVideoTrackPublication publication, TwilioException twilioException) {
+        }
+
+        @Override
+        public void onVideoTrackUnsubscribed(RemoteParticipant participant, RemoteVideoTrackPublication publication, RemoteVideoTrack videoTrack) {
+        }
+
+        @Override
+        public void onDataTrackPublished(RemoteParticipant participant, RemoteDataTrackPublication publication) {
+        }
+
+        @Override
+        public void onDataTrackUnpublished(RemoteParticipant participant, RemoteDataTrackPublication publication) {
+        }
+
+        @Override
+        public void onDataTrackSubscribed(RemoteParticipant participant, RemoteDataTrackPublication publication, RemoteDataTrack dataTrack) {
+        }
+
+        @Override
+        public void onDataTrackSubscriptionFailed(RemoteParticipant participant, RemoteDataTrackPublication publication, TwilioException twilioException) {
+        }
+
+        @Override
+        public void onDataTrackUnsubscribed(RemoteParticipant participant, RemoteDataTrackPublication publication, RemoteDataTrack dataTrack) {
+        }
+
+        @Override
+        public void onAudioTrackEnabled(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
+        }
+
+        @Override
+        public void onAudioTrackDisabled(RemoteParticipant participant, RemoteAudioTrackPublication publication) {
+        }
+
+        @Override
+        public void onVideoTrackEnabled(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
+        }
+
+        @Override
+        public void onVideoTrackDisabled(RemoteParticipant participant, RemoteVideoTrackPublication publication) {
+        }
+
+        @Override
+        public void onNetworkQualityLevelChanged(RemoteParticipant participant, NetworkQualityLevel networkQualityLevel) {
+        }
+    };
+}
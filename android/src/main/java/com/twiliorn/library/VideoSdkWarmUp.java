@@ -0,0 +1,113 @@
+/**
+ * Opt-in background warm-up of the Video SDK, started by TwilioPackage.
+ * <p>
+ * The first track created in a process loads the native WebRTC library and
+ * builds the media factory with its audio device module, on whatever thread
+ * asked for it. Creating a data track on a background thread at package init
+ * does that work early. The track is held until the first video view has
+ * created its own, so the media factory stays alive in between. With the
+ * microphone permission granted, a disabled audio track is also created and
+ * released to warm up the audio path.
+ */
+
+package com.twiliorn.library;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.LocalAudioTrack;
+import com.twilio.video.LocalDataTrack;
+
+public class VideoSdkWarmUp {
+    private static final String TAG = "VideoSdkWarmUp";
+    private static final String THREAD_NAME = "TwilioVideoWarmUp";
+
+    static final String STATE_IDLE = "idle";
+    static final String STATE_RUNNING = "running";
+    static final String STATE_DONE = "done";
+    static final String STATE_FAILED = "failed";
+
+    private static String state = STATE_IDLE;
+    private static long durationMs = 0;
+    private static boolean audioWarmedUp = false;
+    private static LocalDataTrack heldTrack;
+    private static boolean handedOff = false;
+
+    private VideoSdkWarmUp() {
+    }
+
+    /*
+     * Only the first call does anything.
+     */
+    public static synchronized void start(Context context) {
+        if (!STATE_IDLE.equals(state)) {
+            return;
+        }
+        state = STATE_RUNNING;
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            warmUp(appContext);
+        }, THREAD_NAME);
+        thread.start();
+    }
+
+    private static void warmUp(Context context) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            LocalDataTrack track = LocalDataTrack.create(context);
+            boolean audio = false;
+            if (context.checkCallingOrSelfPermission(Manifest.permission.RECORD_AUDIO)
+                    == PackageManager.PERMISSION_GRANTED) {
+                LocalAudioTrack audioTrack = LocalAudioTrack.create(context, false);
+                if (audioTrack != null) {
+                    audioTrack.release();
+                    audio = true;
+                }
+            }
+            synchronized (VideoSdkWarmUp.class) {
+                durationMs = SystemClock.elapsedRealtime() - start;
+                audioWarmedUp = audio;
+                state = STATE_DONE;
+                if (handedOff) {
+                    // A view already has its own track, the media factory is in use
+                    track.release();
+                } else {
+                    heldTrack = track;
+                }
+            }
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            Log.w(TAG, "Warm-up failed", e);
+            synchronized (VideoSdkWarmUp.class) {
+                durationMs = SystemClock.elapsedRealtime() - start;
+                state = STATE_FAILED;
+            }
+        }
+    }
+
+    /*
+     * Called once a view holds its own track, the warm-up track is no longer needed to keep
+     * the media factory alive.
+     */
+    public static synchronized void handOff() {
+        handedOff = true;
+        if (heldTrack != null) {
+            heldTrack.release();
+            heldTrack = null;
+        }
+    }
+
+    public static synchronized WritableMap getStatus() {
+        WritableMap status = new WritableNativeMap();
+        status.putString("state", state);
+        status.putDouble("durationMs", durationMs);
+        status.putBoolean("audioWarmedUp", audioWarmedUp);
+        return status;
+    }
+}
@@ -0,0 +1,242 @@
+package com.twiliorn.library;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.uimanager.ThemedReactContext;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.twilio.video.AudioOptions;
+import com.twilio.video.CameraCapturer;
+import com.twilio.video.ConnectOptions;
+import com.twilio.video.LocalAudioTrack;
+import com.twilio.video.LocalDataTrack;
+import com.twilio.video.LocalParticipant;
+import com.twilio.video.LocalVideoTrack;
+import com.twilio.video.RemoteDataTrack;
+import com.twilio.video.RemoteDataTrackPublication;
+import com.twilio.video.RemoteParticipant;
+import com.twilio.video.Room;
+import com.twilio.video.Video;
+import com.twilio.video.VideoCapturer;
+import com.twilio.video.VideoConstraints;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.robolectric.Shadows.shadowOf;
+
+/*
+ * Runs the video view through back-to-back calls with the SDK mocked out and checks that
+ * nothing accumulates. Every cycle connects with audio and video, gets a participant with a
+ * subscribed data track, disconnects from JS and gets the SDK's onDisconnected.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class ConnectDisconnectSoakTest {
+    private static final int WARM_UP_CYCLES = 100;
+    private static final int CYCLES = 1000;
+    // About 2 KiB a cycle, less than one retained room with its participant and tracks
+    private static final long MAX_HEAP_GROWTH_BYTES = 2 * 1024 * 1024;
+
+    private MockedStatic<Video> video;
+    private MockedStatic<LocalAudioTrack> localAudioTrack;
+    private MockedStatic<LocalVideoTrack> localVideoTrack;
+    private MockedStatic<LocalDataTrack> localDataTrack;
+    private MockedStatic<CameraCapturerCompat> cameraCapturer;
+
+    private Room.Listener roomListener;
+    private CustomTwilioVideoView view;
+    private Looper workerLooper;
+
+    @BeforeClass
+    public static void initializeNativeMaps() throws ClassNotFoundException {
+        NativeMaps.initialize();
+    }
+
+    @Before
+    public void setUp() {
+        video = mockStatic(Video.class);
+        video.when(() -> Video.connect(any(Context.class), any(ConnectOptions.class), any(Room.Listener.class)))
+                .thenAnswer(invocation -> {
+                    roomListener = invocation.getArgument(2);
+                    return newRoom();
+                });
+        localAudioTrack = mockStatic(LocalAudioTrack.class);
+        localAudioTrack.when(() -> LocalAudioTrack.create(any(Context.class), anyBoolean(), any(AudioOptions.class)))
+                .thenAnswer(invocation -> mock(LocalAudioTrack.class, withSettings().stubOnly()));
+        localVideoTrack = mockStatic(LocalVideoTrack.class);
+        localVideoTrack.when(() -> LocalVideoTrack.create(any(Context.class), anyBoolean(),
+                nullable(VideoCapturer.class), any(VideoConstraints.class)))
+                .thenAnswer(invocation -> mock(LocalVideoTrack.class, withSettings().stubOnly()));
+        localDataTrack = mockStatic(LocalDataTrack.class);
+        localDataTrack.when(() -> LocalDataTrack.create(any(Context.class)))
+                .thenAnswer(invocation -> mock(LocalDataTrack.class, withSettings().stubOnly()));
+        cameraCapturer = mockStatic(CameraCapturerCompat.class);
+        cameraCapturer.when(() -> CameraCapturerCompat.create(any(Context.class),
+                nullable(CameraCapturer.CameraSource.class), anyBoolean(), any(CameraCapturerCompat.Listener.class)))
+                .thenAnswer(invocation -> mock(CameraCapturerCompat.class, withSettings().stubOnly()));
+
+        Context application = RuntimeEnvironment.application;
+        ThemedReactContext context = spy(new ThemedReactContext(new ReactApplicationContext(application), application));
+        doReturn(mock(RCTEventEmitter.class, withSettings().stubOnly())).when(context).getJSModule(RCTEventEmitter.class);
+
+        try (MockedConstruction<WritableNativeMap> ignoredMaps = NativeMaps.stubMaps();
+             MockedConstruction<WritableNativeArray> ignoredArrays = NativeMaps.stubArrays()) {
+            view = new CustomTwilioVideoView(context);
+        }
+        workerLooper = DataTrackWorker.acquire().getLooper();
+        DataTrackWorker.release();
+    }
+
+    @After
+    public void tearDown() {
+        if (view != null) {
+            releaseView();
+        }
+        cameraCapturer.close();
+        localDataTrack.close();
+        localVideoTrack.close();
+        localAudioTrack.close();
+        video.close();
+    }
+
+    @Test
+    public void connectDisconnectCyclesKeepMemoryFlat() {
+        for (int i = 0; i < WARM_UP_CYCLES; i++) {
+            runCycle(i);
+        }
+        long heapBefore = usedHeapAfterGc();
+
+        for (int i = 0; i < CYCLES; i++) {
+            runCycle(WARM_UP_CYCLES + i);
+        }
+        long growth = usedHeapAfterGc() - heapBefore;
+
+        assertTrue("Heap grew by " + growth + " bytes over " + CYCLES + " calls",
+                growth < MAX_HEAP_GROWTH_BYTES);
+    }
+
+    @Test
+    public void releasingTheViewDisposesTheSession() {
+        runCycle(0);
+        TwilioVideoSession session = TwilioVideoSession.peek();
+        assertNotNull(session);
+
+        releaseView();
+
+        assertTrue(session.isDisposed());
+        assertNull(TwilioVideoSession.peek());
+        assertTrue(session.dataTrackRemoteParticipantMap.isEmpty());
+    }
+
+    private void runCycle(int call) {
+        // A scope per call, a constructed-mock list that lives across calls would be the leak
+        try (MockedConstruction<WritableNativeMap> ignoredMaps = NativeMaps.stubMaps();
+             MockedConstruction<WritableNativeArray> ignoredArrays = NativeMaps.stubArrays()) {
+            view.connectToRoomWrapper("room-" + call, "token", true, true, true, false,
+                    null, null, false, null, null, false, null, null);
+            assertNotNull(roomListener);
+            TwilioVideoSession session = TwilioVideoSession.peek();
+            Room room = session.room;
+
+            roomListener.onConnected(room);
+            idle();
+            assertEquals(1, session.dataTrackRemoteParticipantMap.size());
+
+            view.disconnect();
+            roomListener.onDisconnected(room, null);
+            roomListener = null;
+            idle();
+
+            assertNull(session.room);
+            assertNull(session.localVideoTrack);
+            assertNull(session.cameraCapturer);
+            assertTrue(session.dataTrackRemoteParticipantMap.isEmpty());
+        }
+        // Invocation records on the static mocks would otherwise hold every call's arguments
+        video.clearInvocations();
+        localAudioTrack.clearInvocations();
+        localVideoTrack.clearInvocations();
+        localDataTrack.clearInvocations();
+        cameraCapturer.clearInvocations();
+    }
+
+    private void releaseView() {
+        try (MockedConstruction<WritableNativeMap> ignoredMaps = NativeMaps.stubMaps();
+             MockedConstruction<WritableNativeArray> ignoredArrays = NativeMaps.stubArrays()) {
+            view.releaseResource();
+        }
+        view = null;
+        // The worker quits behind the release, only the main thread is left to run
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static Room newRoom() {
+        RemoteDataTrackPublication publication = mock(RemoteDataTrackPublication.class, withSettings().stubOnly());
+        when(publication.isTrackSubscribed()).thenReturn(true);
+        when(publication.getRemoteDataTrack()).thenReturn(mock(RemoteDataTrack.class, withSettings().stubOnly()));
+
+        RemoteParticipant participant = mock(RemoteParticipant.class, withSettings().stubOnly());
+        when(participant.getSid()).thenReturn("PA-remote");
+        when(participant.getIdentity()).thenReturn("remote");
+        when(participant.getRemoteDataTracks()).thenReturn(Collections.singletonList(publication));
+
+        LocalParticipant localParticipant = mock(LocalParticipant.class, withSettings().stubOnly());
+        when(localParticipant.getSid()).thenReturn("PA-local");
+        when(localParticipant.getIdentity()).thenReturn("local");
+
+        Room room = mock(Room.class, withSettings().stubOnly());
+        when(room.getSid()).thenReturn("RM-soak");
+        when(room.getName()).thenReturn("soak");
+        when(room.getState()).thenReturn(Room.State.CONNECTED);
+        when(room.getLocalParticipant()).thenReturn(localParticipant);
+        when(room.getRemoteParticipants()).thenReturn(Collections.singletonList(participant));
+        return room;
+    }
+
+    /*
+     * Runs what the call posted to the main thread and to the data track worker.
+     */
+    private void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+        shadowOf(workerLooper).idle();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            System.runFinalization();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,140 @@
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.twilio.video.LocalDataTrack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DataTrackCompressorTest {
+    private static final int THRESHOLD_BYTES = 256;
+
+    private DataTrackCompressor compressor;
+    private LocalDataTrack track;
+
+    @Before
+    public void setUp() {
+        compressor = new DataTrackCompressor();
+        compressor.configure(options(THRESHOLD_BYTES));
+        track = mock(LocalDataTrack.class);
+    }
+
+    @After
+    public void tearDown() {
+        compressor.release();
+    }
+
+    @Test
+    public void messageBelowTheThresholdIsSentPlain() {
+        assertFalse(compressor.compressAndSend(repeat('a', THRESHOLD_BYTES - 1), track));
+        verify(track, never()).send(any(ByteBuffer.class));
+    }
+
+    @Test
+    public void messageAtTheThresholdRoundTrips() {
+        assertRoundTrip(repeat('a', THRESHOLD_BYTES));
+    }
+
+    @Test
+    public void multiByteTextRoundTrips() {
+        assertRoundTrip(repeat('\u20ac', THRESHOLD_BYTES));
+    }
+
+    @Test
+    public void incompressibleMessageIsSentPlain() {
+        compressor.configure(options(0));
+
+        // Deflate's block overhead alone makes a few bytes longer
+        assertFalse(compressor.compressAndSend("xyz", track));
+        verify(track, never()).send(any(ByteBuffer.class));
+    }
+
+    @Test
+    public void messageOfMaxMessageBytesRoundTrips() {
+        assertRoundTrip(repeat('a', DataTrackCompressor.MAX_MESSAGE_BYTES));
+    }
+
+    @Test
+    public void messageOverMaxMessageBytesIsSentPlain() {
+        assertFalse(compressor.compressAndSend(repeat('a', DataTrackCompressor.MAX_MESSAGE_BYTES + 1), track));
+        // Two-byte chars pass the length check but not the encoded one
+        assertFalse(compressor.compressAndSend(repeat('\u00e9', DataTrackCompressor.MAX_MESSAGE_BYTES / 2 + 1), track));
+        verify(track, never()).send(any(ByteBuffer.class));
+    }
+
+    @Test
+    public void frameClaimingMoreThanMaxMessageBytesIsRejected() {
+        ByteBuffer frame = ByteBuffer.allocate(5 + 16);
+        frame.put(DataTrackCompressor.FRAME_COMPRESSED_TEXT);
+        frame.putInt(DataTrackCompressor.MAX_MESSAGE_BYTES + 1);
+        frame.position(0);
+
+        assertNull(compressor.decompress(frame));
+    }
+
+    @Test
+    public void laterMessagesDoNotChangeAnEarlierFrame() {
+        String first = repeat('a', THRESHOLD_BYTES * 4);
+        ByteBuffer frame = send(first);
+        byte[] sent = Arrays.copyOf(frame.array(), frame.array().length);
+
+        send(repeat('b', THRESHOLD_BYTES * 8));
+
+        assertTrue(Arrays.equals(sent, frame.array()));
+        assertEquals(first, compressor.decompress(frame));
+    }
+
+    // ===== HELPERS ===============================================================================
+
+    private void assertRoundTrip(String message) {
+        ByteBuffer frame = send(message);
+        assertTrue(DataTrackCompressor.isCompressedText(frame));
+        assertEquals(message, compressor.decompress(frame));
+    }
+
+    /*
+     * Compresses the message and returns the frame the track got, checking that it covers
+     * its whole backing array.
+     */
+    private ByteBuffer send(String message) {
+        track = mock(LocalDataTrack.class);
+        assertTrue(compressor.compressAndSend(message, track));
+        ArgumentCaptor<ByteBuffer> frame = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(track).send(frame.capture());
+
+        ByteBuffer sent = frame.getValue();
+        assertTrue(sent.hasArray());
+        assertEquals(0, sent.arrayOffset());
+        assertEquals(0, sent.position());
+        assertEquals(sent.array().length, sent.limit());
+        return sent;
+    }
+
+    private static ReadableMap options(int thresholdBytes) {
+        ReadableMap map = mock(ReadableMap.class);
+        when(map.hasKey("thresholdBytes")).thenReturn(true);
+        when(map.getInt("thresholdBytes")).thenReturn(thresholdBytes);
+        return map;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
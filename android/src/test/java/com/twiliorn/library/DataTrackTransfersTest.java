@@ -0,0 +1,209 @@
+package com.twiliorn.library;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.twilio.video.RemoteParticipant;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.MockedConstruction;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class DataTrackTransfersTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CHUNK = DataTrackTransfers.CHUNK_SIZE;
+    // Two full chunks and a short last one
+    private static final int TOTAL_BYTES = 2 * CHUNK + 100;
+    private static final long TRANSFER_ID = 0x1234L;
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private MockedConstruction<WritableNativeMap> maps;
+    private final List<WritableMap> events = new ArrayList<>();
+    private RemoteParticipant participant;
+    private DataTrackTransfers transfers;
+    private byte[] payload;
+
+    @BeforeClass
+    public static void initializeNativeMaps() throws ClassNotFoundException {
+        NativeMaps.initialize();
+    }
+
+    @Before
+    public void setUp() {
+        maps = NativeMaps.recordingMaps();
+        participant = mock(RemoteParticipant.class);
+        when(participant.getSid()).thenReturn("PA-sender");
+        when(participant.getIdentity()).thenReturn("sender");
+        transfers = new DataTrackTransfers(new Handler(Looper.getMainLooper()), frame -> true, events::add,
+                cacheDir.getRoot());
+        shadowOf(Looper.getMainLooper()).idle();
+
+        payload = new byte[TOTAL_BYTES];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        maps.close();
+    }
+
+    @Test
+    public void outOfOrderChunksAreReassembled() {
+        start();
+        chunk(2, lastChunkLength());
+        chunk(0, CHUNK);
+        chunk(1, CHUNK);
+
+        assertCompletedWithPayload();
+    }
+
+    @Test
+    public void duplicateChunksAreIgnored() {
+        start();
+        chunk(0, CHUNK);
+        chunk(0, CHUNK);
+        chunk(1, CHUNK);
+        chunk(1, CHUNK);
+        chunk(2, lastChunkLength());
+
+        assertCompletedWithPayload();
+        assertEquals(1, countEvents(DataTrackTransfers.STATE_COMPLETED));
+    }
+
+    @Test
+    public void oversizedChunkDropsTheTransfer() {
+        start();
+        sendChunk(0, new byte[CHUNK + 1]);
+
+        assertDropped();
+        // The transfer is gone, the rest of it is ignored
+        chunk(1, CHUNK);
+        chunk(2, lastChunkLength());
+        assertEquals(0, countEvents(DataTrackTransfers.STATE_COMPLETED));
+    }
+
+    @Test
+    public void shortMiddleChunkDropsTheTransfer() {
+        start();
+        chunk(0, CHUNK);
+        sendChunk(1, new byte[CHUNK - 1]);
+
+        assertDropped();
+    }
+
+    @Test
+    public void oversizedLastChunkDropsTheTransfer() {
+        start();
+        chunk(0, CHUNK);
+        chunk(1, CHUNK);
+        sendChunk(2, new byte[lastChunkLength() + 1]);
+
+        assertDropped();
+    }
+
+    @Test
+    public void shortLastChunkDropsTheTransfer() {
+        start();
+        chunk(0, CHUNK);
+        chunk(1, CHUNK);
+        sendChunk(2, new byte[lastChunkLength() - 1]);
+
+        assertDropped();
+    }
+
+    // ===== HELPERS ===============================================================================
+
+    private static int lastChunkLength() {
+        return TOTAL_BYTES - 2 * CHUNK;
+    }
+
+    private void start() {
+        byte[] name = "notes.txt".getBytes(UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(1 + 8 + 8 + 4 + 1 + name.length);
+        frame.put(DataTrackTransfers.FRAME_TRANSFER_START);
+        frame.putLong(TRANSFER_ID);
+        frame.putLong(TOTAL_BYTES);
+        frame.putInt(3);
+        // Text, so the result comes back inline
+        frame.put((byte) 0x01);
+        frame.put(name);
+        frame.flip();
+        transfers.handleFrame(participant, frame);
+    }
+
+    /*
+     * Sends the part of the payload that belongs at sequence.
+     */
+    private void chunk(int sequence, int length) {
+        byte[] data = new byte[length];
+        System.arraycopy(payload, sequence * CHUNK, data, 0, length);
+        sendChunk(sequence, data);
+    }
+
+    private void sendChunk(int sequence, byte[] data) {
+        ByteBuffer frame = ByteBuffer.allocate(1 + 8 + 4 + data.length);
+        frame.put(DataTrackTransfers.FRAME_TRANSFER_CHUNK);
+        frame.putLong(TRANSFER_ID);
+        frame.putInt(sequence);
+        frame.put(data);
+        frame.flip();
+        transfers.handleFrame(participant, frame);
+    }
+
+    private void assertCompletedWithPayload() {
+        WritableMap last = events.get(events.size() - 1);
+        assertEquals(DataTrackTransfers.STATE_COMPLETED, NativeMaps.getString(last, "state"));
+        assertEquals(new String(payload, UTF_8), NativeMaps.getString(last, "data"));
+        assertNoFilesLeft();
+    }
+
+    private void assertDropped() {
+        WritableMap last = events.get(events.size() - 1);
+        assertEquals(DataTrackTransfers.STATE_FAILED, NativeMaps.getString(last, "state"));
+        assertNull(NativeMaps.getString(last, "data"));
+        assertNoFilesLeft();
+    }
+
+    private int countEvents(String state) {
+        int count = 0;
+        for (WritableMap event : events) {
+            if (state.equals(NativeMaps.getString(event, "state"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void assertNoFilesLeft() {
+        String[] files = new File(cacheDir.getRoot(), "twilio-data-transfers").list();
+        assertTrue(files == null || files.length == 0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.twiliorn.library;
+
+import com.facebook.react.bridge.ReactBridge;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+import org.mockito.invocation.Invocation;
+
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.withSettings;
+
+/*
+ * React Native's native maps load the bridge library in their static initializer and hold
+ * native memory once constructed, neither of which exists in a JVM test. The classes are
+ * initialized once with the bridge mocked and every construction is replaced by a mock.
+ */
+final class NativeMaps {
+    private static boolean initialized = false;
+
+    private NativeMaps() {
+    }
+
+    static synchronized void initialize() throws ClassNotFoundException {
+        if (initialized) {
+            return;
+        }
+        try (MockedStatic<ReactBridge> ignored = mockStatic(ReactBridge.class)) {
+            Class.forName(WritableNativeMap.class.getName());
+            Class.forName(WritableNativeArray.class.getName());
+        }
+        initialized = true;
+    }
+
+    /*
+     * Maps that remember what was put into them, see getString.
+     */
+    static MockedConstruction<WritableNativeMap> recordingMaps() {
+        return mockConstruction(WritableNativeMap.class);
+    }
+
+    static MockedConstruction<WritableNativeMap> stubMaps() {
+        return mockConstruction(WritableNativeMap.class, withSettings().stubOnly());
+    }
+
+    static MockedConstruction<WritableNativeArray> stubArrays() {
+        return mockConstruction(WritableNativeArray.class, withSettings().stubOnly());
+    }
+
+    /*
+     * The last string put under key into a map from recordingMaps, null if there was none.
+     */
+    static String getString(WritableMap map, String key) {
+        String value = null;
+        for (Invocation invocation : mockingDetails(map).getInvocations()) {
+            if (invocation.getMethod().getName().equals("putString")
+                    && key.equals(invocation.getArgument(0))) {
+                value = invocation.getArgument(1);
+            }
+        }
+        return value;
+    }
+}
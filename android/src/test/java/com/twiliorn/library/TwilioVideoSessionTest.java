@@ -0,0 +1,83 @@
+package com.twiliorn.library;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TwilioVideoSessionTest {
+
+    /*
+     * The session is process-wide, drop whatever a failed test left behind.
+     */
+    @After
+    public void releaseLeftovers() {
+        TwilioVideoSession session;
+        while ((session = TwilioVideoSession.peek()) != null) {
+            session.release();
+        }
+    }
+
+    @Test
+    public void balancedAcquireAndReleaseShareOneSession() {
+        TwilioVideoSession first = TwilioVideoSession.acquire();
+        TwilioVideoSession second = TwilioVideoSession.acquire();
+        assertSame(first, second);
+
+        first.release();
+        assertFalse(first.isDisposed());
+        assertSame(first, TwilioVideoSession.peek());
+
+        second.release();
+        assertTrue(first.isDisposed());
+        assertNull(TwilioVideoSession.peek());
+    }
+
+    @Test
+    public void lastReleaseDisposesTheSession() {
+        TwilioVideoSession session = TwilioVideoSession.acquire();
+        session.maxRemoteRenderers = 2;
+
+        session.release();
+
+        assertTrue(session.isDisposed());
+        assertEquals(Integer.MAX_VALUE, session.maxRemoteRenderers);
+        assertTrue(session.remoteRendererBindings.isEmpty());
+        assertTrue(session.dataTrackRemoteParticipantMap.isEmpty());
+        assertNull(session.controller);
+    }
+
+    @Test
+    public void overReleaseIsIgnored() {
+        TwilioVideoSession session = TwilioVideoSession.acquire();
+        session.release();
+        session.release();
+        assertTrue(session.isDisposed());
+        assertNull(TwilioVideoSession.peek());
+
+        // A stale reference must not release the session that replaced it
+        TwilioVideoSession next = TwilioVideoSession.acquire();
+        session.release();
+        assertFalse(next.isDisposed());
+        assertSame(next, TwilioVideoSession.peek());
+        next.release();
+        assertTrue(next.isDisposed());
+    }
+
+    @Test
+    public void acquireAfterDisposeReturnsAFreshSession() {
+        TwilioVideoSession disposed = TwilioVideoSession.acquire();
+        disposed.release();
+
+        TwilioVideoSession fresh = TwilioVideoSession.acquire();
+        assertNotSame(disposed, fresh);
+        assertFalse(fresh.isDisposed());
+        assertSame(fresh, TwilioVideoSession.peek());
+        fresh.release();
+    }
+}
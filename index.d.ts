@@ -12,12 +12,16 @@ declare module "react-native-twilio-video-webrtc" {
     trackIdentifier: TrackIdentifier;
     ref?: React.Ref<any>;
     scaleType?: scaleType;
+    // Android only, 0 renders every frame
+    maxFps?: number;
   }
 
   interface TwilioVideoLocalViewProps extends ViewProps {
     enabled: boolean;
     ref?: React.Ref<any>;
     scaleType?: scaleType;
+    // Android only, 0 renders every frame
+    maxFps?: number;
   }
 
   interface Participant {
@@ -47,31 +51,405 @@ declare module "react-native-twilio-video-webrtc" {
     error: any;
   };
 
+  type ReconnectionCountersArgs = {
+    reconnectAttempts: number;
+    totalReconnectingMs: number;
+  };
+
+  export type RoomReconnectingEventArgs = RoomEventCommonArgs &
+    ReconnectionCountersArgs & {
+      error: string;
+      code: number;
+    };
+
+  export type RoomReconnectedEventArgs = RoomEventCommonArgs &
+    ReconnectionCountersArgs & {
+      elapsedMs: number;
+    };
+
   type RoomEventArgs = RoomEventCommonArgs & {
     participants: Participant[];
+    snapshot?: RoomSnapshotEventArgs;
   };
 
   type ParticipantEventArgs = RoomEventCommonArgs & {
     participant: Participant;
   };
 
+  type BackgroundVideoPolicy = "release" | "pause" | "reduced";
+
+  type NetworkQualityVerbosity = "none" | "minimal" | "detailed";
+
+  type NetworkQualityDirectionStats = {
+    tracks: number;
+    packetsLost: number;
+    packets: number;
+    bytes: number;
+    packetLossRatio: number;
+    jitter: number;
+    roundTripTime: number;
+    frameRate?: number;
+  };
+
+  type NetworkQualityMediaStats = {
+    send?: NetworkQualityDirectionStats;
+    recv: NetworkQualityDirectionStats;
+  };
+
   type NetworkLevelChangeEventArgs = {
     participant: Participant;
     isLocalUser: boolean;
     quality: number;
+    audio?: NetworkQualityMediaStats;
+    video?: NetworkQualityMediaStats;
+  };
+
+  type NetworkQualitySummary = {
+    participantSid: string;
+    samples: number;
+    latest: number;
+    min: number;
+    max: number;
+    average: number;
+    changes: number;
+    windowMs: number;
+  };
+
+  type NetworkQualitySummaryEventArgs = {
+    participants: NetworkQualitySummary[];
+  };
+
+  type CameraSwitchedEventArgs = {
+    isBackCamera: boolean;
+    latencyMs: number;
+    framesDropped: number;
+    error?: string;
+  };
+
+  type FlipCameraOptions = {
+    freezeLastFrame?: boolean;
+  };
+
+  type DevicePressureReason = "thermal" | "batterySaver" | "memory";
+
+  type DevicePressureChangedEventArgs = {
+    level: 0 | 1 | 2;
+    reasons: DevicePressureReason[];
+    // -1 when unlimited
+    maxRemoteRenderers: number;
+    // 0 when unlimited
+    thumbnailMaxFps: number;
+    // 0 when unlimited
+    remoteMaxFps: number;
+    // 0 when unlimited
+    maxVideoBitrateKbps: number;
+  };
+
+  type AudioOptions = {
+    echoCancellation?: boolean;
+    noiseSuppression?: boolean;
+    autoGainControl?: boolean;
+    highpassFilter?: boolean;
+    typingDetection?: boolean;
+    // use the device's built-in effect instead of the WebRTC software one
+    hardwareEchoCancellation?: boolean;
+    hardwareNoiseSuppression?: boolean;
+  };
+
+  type AudioProcessingStatsEventArgs = {
+    options: Required<AudioOptions> & {
+      hardwareEchoCancellationAvailable: boolean;
+      hardwareNoiseSuppressionAvailable: boolean;
+      deviceModel: string;
+    };
+    audioCpuMs: number;
+    elapsedMs: number;
+    cpuLoad: number;
+  };
+
+  type AudioDeviceOptions = {
+    backend?: "opensles" | "java";
+    // the voice engine uses 10 ms buffers, so this also sets the buffer size
+    sampleRate?: number;
+  };
+
+  type AudioLatencyMeasuredEventArgs = {
+    roundTripMs?: number;
+    cached?: boolean;
+    deviceModel: string;
+    nativeSampleRate: number;
+    outputFramesPerBuffer: number;
+    lowLatencyOutput: boolean;
+    error?: string;
+  };
+
+  type CallQualityMonitorOptions = {
+    intervalMs?: number;
+    // ascending band boundaries on the 1 to 5 score scale
+    thresholds?: number[];
+    targetFps?: number;
+  };
+
+  type CallQualityChangedEventArgs = {
+    scope: "track" | "call";
+    trackSid?: string;
+    kind?: "audio" | "video";
+    score: number;
+    band: number;
+    // -1 for the first report
+    previousBand: number;
+    packetLoss?: number;
+    jitter?: number;
+    frameRate?: number;
+    roundTripTime: number;
+  };
+
+  type RendererPoolStatsEventArgs = {
+    hits: number;
+    misses: number;
+    returned: number;
+    discarded: number;
+    pooled: number;
+    capacity: number;
+  };
+
+  type SimulatedRoomOptions = {
+    participants?: number;
+    joinsPerSecond?: number;
+    churnPerSecond?: number;
+    trackFlapsPerSecond?: number;
+    dataMessagesPerSecond?: number;
+    dataMessageSize?: number;
+    durationMs?: number;
+  };
+
+  type SimulationReportEventArgs = {
+    roomName?: string;
+    durationMs?: number;
+    events?: number;
+    participantsJoined?: number;
+    participantsLeft?: number;
+    trackFlaps?: number;
+    dataMessages?: number;
+    dispatchLatencyMs?: { p50: number; p95: number; p99: number; max: number };
+    mainThreadMs?: number;
+    mainThreadUtilization?: number;
+    dataThreadMs?: number;
+    // process wide, -1 when unavailable
+    allocatedBytes?: number;
+    heapGrowthBytes?: number;
+    error?: string;
+  };
+
+  // normalized 0 to 1 coordinates of the frame
+  type FrameRegion = {
+    x: number;
+    y: number;
+    width: number;
+    height: number;
+  };
+
+  type VideoPreprocessingConfig = {
+    crop?: FrameRegion;
+    blur?: {
+      radius?: number;
+      sharpRegion?: FrameRegion;
+    };
+  };
+
+  type PreprocessingStatsEventArgs = {
+    framesIn: number;
+    framesProcessed: number;
+    framesDropped: number;
+    framesPassedThrough: number;
+    budgetMs: number;
+    stages: {
+      name: string;
+      runs: number;
+      skipped: number;
+      averageMs: number;
+      maxMs: number;
+    }[];
+    error?: string;
+  };
+
+  type RoomSnapshotTrack = {
+    sid: string;
+    kind: "audio" | "video" | "data";
+    name: string;
+    enabled: boolean;
+    subscribed: boolean;
+  };
+
+  type RoomSnapshotParticipant = {
+    sid: string;
+    identity: string;
+    networkQuality: number;
+    tracks: RoomSnapshotTrack[];
+  };
+
+  type RoomSnapshotEventArgs = {
+    version: number;
+    roomName: string;
+    roomSid: string;
+    localParticipant?: RoomSnapshotParticipant;
+    participants: RoomSnapshotParticipant[];
+  };
+
+  type RoomStateChange = {
+    type:
+      | "participantConnected"
+      | "participantDisconnected"
+      | "trackPublished"
+      | "trackUnpublished"
+      | "trackSubscribed"
+      | "trackUnsubscribed"
+      | "trackEnabled"
+      | "trackDisabled"
+      | "networkQuality";
+    participantSid: string;
+    participant?: RoomSnapshotParticipant;
+    track?: RoomSnapshotTrack;
+    trackSid?: string;
+    level?: number;
+  };
+
+  type RoomStateChangedEventArgs = {
+    fromVersion: number;
+    version: number;
+    changes: RoomStateChange[];
+  };
+
+  type LargeRoomOptions = {
+    maxVideoTracks?: number;
+    mode?: "grid" | "collaboration" | "presentation";
+  };
+
+  type IceServerOptions = {
+    urls: string | string[];
+    username?: string;
+    credential?: string;
+  };
+
+  type IceOptions = {
+    iceServers?: IceServerOptions[];
+    transportPolicy?: "all" | "relay";
+  };
+
+  type ConnectionSetupTimingsEventArgs = {
+    transportPolicy: "all" | "relay";
+    iceServers: number;
+    connectedMs?: number;
+    firstCandidateMs?: number;
+    firstRelayCandidateMs?: number;
+    iceConnectedMs?: number;
+    connectivityChecksMs?: number;
+    timedOut: boolean;
+    selectedCandidatePair?: {
+      localCandidateType: string;
+      remoteCandidateType: string;
+      protocol: string;
+      relayProtocol?: string;
+      relayed: boolean;
+      roundTripTimeMs: number;
+    };
+  };
+
+  type DominantSpeakerChangedEventArgs = RoomEventCommonArgs & {
+    participant?: Participant;
+  };
+
+  type ActiveVideoTracksChangedEventArgs = {
+    trackSids: string[];
+    dominantSpeakerSid?: string;
+    maxVideoTracks: number;
+  };
+
+  type DataTrackRequestEventArgs = {
+    requestId: string;
+    participant?: Participant;
+    payload: string;
+  };
+
+  type DataTrackResponse = {
+    payload: string;
+    participant?: Participant;
+  };
+
+  type DataTrackRequestOptions = {
+    targetSid?: string;
+    timeoutMs?: number;
+  };
+
+  type DataTrackCompressionConfig = {
+    enabled?: boolean;
+    thresholdBytes?: number;
+    level?: number;
+  };
+
+  type DataTrackCompressionStatsEventArgs = {
+    enabled: boolean;
+    thresholdBytes: number;
+    messagesCompressed: number;
+    messagesSentPlain: number;
+    messagesDecompressed: number;
+    decompressionFailures: number;
+    bytesBeforeCompression: number;
+    bytesAfterCompression: number;
+    bytesSaved: number;
+    ratio: number;
+  };
+
+  type DataTrackTransferProgressEventArgs = {
+    transferId: string;
+    direction: "send" | "receive";
+    participant?: Participant;
+    name?: string;
+    bytesTransferred: number;
+    totalBytes: number;
+    state: "progress" | "completed" | "failed";
+    filePath?: string;
+    data?: string;
+    error?: string;
+  };
+
+  type FlightRecorderDump = {
+    filePath: string;
+    entries: number;
+    recorded: number;
+  };
+
+  type WarmUpStatus = {
+    state: "idle" | "running" | "done" | "failed";
+    durationMs: number;
+    audioWarmedUp: boolean;
+  };
+
+  type DataTrackWorkerStatsEventArgs = {
+    threads: number;
+    threadsStarted: number;
+    users: number;
+    messages?: number;
+    averageQueueLatencyMs?: number;
+    maxQueueLatencyMs?: number;
   };
 
   export type RoomEventCb = (p: RoomEventArgs) => void;
   export type RoomErrorEventCb = (t: RoomErrorEventArgs) => void;
+  export type RoomReconnectingEventCb = (t: RoomReconnectingEventArgs) => void;
+  export type RoomReconnectedEventCb = (t: RoomReconnectedEventArgs) => void;
 
   export type ParticipantEventCb = (p: ParticipantEventArgs) => void;
   
   export type NetworkLevelChangeEventCb = (p: NetworkLevelChangeEventArgs) => void;
 
+  export type NetworkQualitySummaryEventCb = (p: NetworkQualitySummaryEventArgs) => void;
+
   export type TwilioVideoProps = ViewProps & {
     onCameraDidStart?: () => void;
     onCameraDidStopRunning?: (err: any) => void;
     onCameraWasInterrupted?: () => void;
+    onCameraSwitched?: (p: CameraSwitchedEventArgs) => void;
     onParticipantAddedAudioTrack?: TrackEventCb;
     onParticipantAddedVideoTrack?: TrackEventCb;
     onParticipantDisabledVideoTrack?: TrackEventCb;
@@ -85,12 +463,31 @@ declare module "react-native-twilio-video-webrtc" {
     onRoomDidConnect?: RoomEventCb;
     onRoomDidDisconnect?: RoomErrorEventCb;
     onRoomDidFailToConnect?: RoomErrorEventCb;
+    onRoomIsReconnecting?: RoomReconnectingEventCb;
+    onRoomDidReconnect?: RoomReconnectedEventCb;
     onRoomParticipantDidConnect?: ParticipantEventCb;
     onRoomParticipantDidDisconnect?: ParticipantEventCb;
     onNetworkQualityLevelsChanged?: NetworkLevelChangeEventCb;
+    onNetworkQualitySummary?: NetworkQualitySummaryEventCb;
+    onDevicePressureChanged?: (p: DevicePressureChangedEventArgs) => void;
+    onAudioProcessingStats?: (p: AudioProcessingStatsEventArgs) => void;
+    onAudioLatencyMeasured?: (p: AudioLatencyMeasuredEventArgs) => void;
+    onCallQualityChanged?: (p: CallQualityChangedEventArgs) => void;
+    onRendererPoolStats?: (p: RendererPoolStatsEventArgs) => void;
+    onSimulationReport?: (p: SimulationReportEventArgs) => void;
+    onPreprocessingStats?: (p: PreprocessingStatsEventArgs) => void;
+    onRoomSnapshot?: (p: RoomSnapshotEventArgs) => void;
+    onRoomStateChanged?: (p: RoomStateChangedEventArgs) => void;
+    onDominantSpeakerDidChange?: (p: DominantSpeakerChangedEventArgs) => void;
+    onActiveVideoTracksChanged?: (p: ActiveVideoTracksChangedEventArgs) => void;
+    onDataTrackCompressionStats?: (p: DataTrackCompressionStatsEventArgs) => void;
+    onDataTrackTransferProgress?: (p: DataTrackTransferProgressEventArgs) => void;
+    onDataTrackWorkerStats?: (p: DataTrackWorkerStatsEventArgs) => void;
+    onConnectionSetupTimings?: (p: ConnectionSetupTimingsEventArgs) => void;
 
     onStatsReceived?: (data: any) => void;
     onDataTrackMessageReceived?: ({ message: string }) => void;
+    onDataTrackRequestReceived?: (p: DataTrackRequestEventArgs) => void;
     ref?: React.Ref<any>;
   };
 
@@ -115,6 +512,14 @@ declare module "react-native-twilio-video-webrtc" {
     enableVideo?: boolean;
     enableRemoteAudio?: boolean;
     enableNetworkQualityReporting?: boolean;
+    localNetworkQualityVerbosity?: NetworkQualityVerbosity;
+    remoteNetworkQualityVerbosity?: NetworkQualityVerbosity;
+    enableDevicePressureGovernor?: boolean;
+    audioOptions?: AudioOptions;
+    audioDevice?: AudioDeviceOptions;
+    enableRoomSnapshot?: boolean;
+    largeRoom?: LargeRoomOptions;
+    iceOptions?: IceOptions;
   };
 
   class TwilioVideo extends React.Component<TwilioVideoProps> {
@@ -124,14 +529,48 @@ declare module "react-native-twilio-video-webrtc" {
     setBluetoothHeadsetConnected: (enabled: boolean) => Promise<boolean>;
     connect: (options: iOSConnectParams | androidConnectParams) => void;
     disconnect: () => void;
-    flipCamera: () => void;
+    flipCamera: (options?: FlipCameraOptions) => void;
     toggleSoundSetup: (speaker: boolean) => void;
     getStats: () => void;
+    // Android only
+    fetchStats: () => Promise<any>;
+    getNetworkQualitySummary: () => void;
+    setAudioOptions: (options: AudioOptions) => void;
+    getAudioProcessingStats: () => void;
+    measureAudioLatency: (force?: boolean) => void;
+    startCallQualityMonitor: (options?: CallQualityMonitorOptions) => void;
+    stopCallQualityMonitor: () => void;
+    getRendererPoolStats: () => void;
+    startSimulatedRoom: (options?: SimulatedRoomOptions) => void;
+    stopSimulatedRoom: () => void;
+    setVideoPreprocessing: (config: VideoPreprocessingConfig | null) => void;
+    getPreprocessingStats: () => void;
+    getRoomSnapshot: () => void;
+    fetchRoomSnapshot: () => Promise<RoomSnapshotEventArgs>;
+    setPinnedParticipants: (participantSids: string[]) => void;
+    setBackgroundVideoPolicy: (
+      policy: BackgroundVideoPolicy,
+      bitrateKbps?: number
+    ) => void;
     publishLocalAudio: () => void;
     unpublishLocalAudio: () => void;
     publishLocalVideo: () => void;
     unpublishLocalVideo: () => void;
     sendString: (message: string) => void;
+    // Android only
+    request: (
+      payload: string,
+      options?: DataTrackRequestOptions
+    ) => Promise<DataTrackResponse>;
+    respond: (requestId: string, payload: string) => Promise<void>;
+    respondWithError: (requestId: string, message: string) => Promise<void>;
+    setDataTrackCompression: (config: DataTrackCompressionConfig | null) => void;
+    getDataTrackCompressionStats: () => void;
+    getDataTrackWorkerStats: () => void;
+    sendFile: (filePath: string, name?: string) => Promise<string>;
+    sendLargeString: (data: string, name?: string) => Promise<string>;
+    dumpFlightRecorder: () => Promise<FlightRecorderDump>;
+    getWarmUpStatus: () => Promise<WarmUpStatus>;
   }
 
   class TwilioVideoLocalView extends React.Component<
@@ -9,6 +9,7 @@
 
 import {
   requireNativeComponent,
+  NativeModules,
   View,
   Platform,
   UIManager,
@@ -17,10 +18,15 @@ import {
 import React, { Component } from 'react'
 import PropTypes from 'prop-types'
 
+// Control actions skip the UIManager command queue and settle with a result
+const { TwilioVideoCommands } = NativeModules
+
 const propTypes = {
   ...View.propTypes,
   /**
-   * Callback that is called when camera source changes
+   * Callback that is called when the camera switch has completed
+   *
+   * @param {{isBackCamera, latencyMs, framesDropped, error}}
    */
   onCameraSwitched: PropTypes.func,
 
@@ -49,6 +55,22 @@ const propTypes = {
    */
   onRoomDidDisconnect: PropTypes.func,
 
+  /**
+   * Callback that is called when the connection to the room is interrupted and
+   * the SDK starts reconnecting. Local and remote tracks stay in place, so the
+   * call does not need to be torn down.
+   *
+   * @param {{roomName, roomSid, error, code, reconnectAttempts, totalReconnectingMs}}
+   */
+  onRoomIsReconnecting: PropTypes.func,
+
+  /**
+   * Callback that is called when the room has reconnected.
+   *
+   * @param {{roomName, roomSid, elapsedMs, reconnectAttempts, totalReconnectingMs}}
+   */
+  onRoomDidReconnect: PropTypes.func,
+
   /**
    * Called when a new data track has been added
    *
@@ -70,6 +92,14 @@ const propTypes = {
    */
   onDataTrackMessageReceived: PropTypes.func,
 
+  /**
+   * Called when another participant sends a request with request(). Answer
+   * it with respond() or respondWithError() using the same requestId.
+   *
+   * @param {{requestId, participant, payload}}
+   */
+  onDataTrackRequestReceived: PropTypes.func,
+
   /**
    * Called when a new video track has been added
    *
@@ -138,7 +168,129 @@ const propTypes = {
   /**
    * Callback that is called when network quality levels are changed (only if enableNetworkQualityReporting in connect is set to true)
    */
-  onNetworkQualityLevelsChanged: PropTypes.func
+  onNetworkQualityLevelsChanged: PropTypes.func,
+  /**
+   * Callback that is called with the per participant network quality history (after calling getNetworkQualitySummary)
+   *
+   * @param {{participants}}
+   */
+  onNetworkQualitySummary: PropTypes.func,
+  /**
+   * Callback that is called when the device pressure level changes (only if
+   * enableDevicePressureGovernor in connect is set to true). Reports the
+   * reasons and the video bitrate, renderer and frame rate limits now in
+   * effect. The published track is kept, so subscribers see no track changes.
+   *
+   * @param {{level, reasons, maxRemoteRenderers, thumbnailMaxFps, remoteMaxFps, maxVideoBitrateKbps}}
+   */
+  onDevicePressureChanged: PropTypes.func,
+  /**
+   * Callback that is called with the audio options in use and the CPU time of
+   * the audio threads since they were applied (after calling getAudioProcessingStats)
+   *
+   * @param {{options, audioCpuMs, elapsedMs, cpuLoad}}
+   */
+  onAudioProcessingStats: PropTypes.func,
+  /**
+   * Callback that is called with the audio round-trip latency of the device
+   * (after calling measureAudioLatency)
+   *
+   * @param {{roundTripMs, cached, deviceModel, nativeSampleRate, outputFramesPerBuffer, lowLatencyOutput, error}}
+   */
+  onAudioLatencyMeasured: PropTypes.func,
+  /**
+   * Callback that is called when a track or the whole call moves to another
+   * quality band (after calling startCallQualityMonitor). Steady calls send nothing.
+   *
+   * @param {{scope, trackSid, kind, score, band, previousBand, packetLoss, jitter, frameRate, roundTripTime}}
+   */
+  onCallQualityChanged: PropTypes.func,
+  /**
+   * Callback that is called with the video renderer pool counters
+   * (after calling getRendererPoolStats)
+   *
+   * @param {{hits, misses, returned, discarded, pooled, capacity}}
+   */
+  onRendererPoolStats: PropTypes.func,
+  /**
+   * Callback that is called when a simulated room run ends
+   * (after calling startSimulatedRoom)
+   *
+   * @param {{roomName, durationMs, events, participantsJoined, participantsLeft, trackFlaps, dataMessages, dispatchLatencyMs, mainThreadMs, mainThreadUtilization, dataThreadMs, allocatedBytes, heapGrowthBytes, error}}
+   */
+  onSimulationReport: PropTypes.func,
+  /**
+   * Callback that is called with the local video preprocessing counters and
+   * per-stage timing (after calling getPreprocessingStats). Also called with
+   * an error by setVideoPreprocessing when the camera cannot be processed.
+   *
+   * @param {{framesIn, framesProcessed, framesDropped, framesPassedThrough, budgetMs, stages, error}}
+   */
+  onPreprocessingStats: PropTypes.func,
+  /**
+   * Callback that is called with the cached room state (after calling
+   * getRoomSnapshot). With enableRoomSnapshot in connect the same snapshot is
+   * also part of onRoomDidConnect.
+   *
+   * @param {{version, roomName, roomSid, localParticipant, participants: [{sid, identity, networkQuality, tracks: [{sid, kind, name, enabled, subscribed}]}]}}
+   */
+  onRoomSnapshot: PropTypes.func,
+  /**
+   * Callback that is called with a batch of room state changes when
+   * enableRoomSnapshot is set in connect. The per participant and per track
+   * callbacks are not called in that mode. When fromVersion does not match
+   * the last known version, call getRoomSnapshot to resync.
+   *
+   * @param {{fromVersion, version, changes: [{type, participantSid, participant, track, trackSid, level}]}}
+   */
+  onRoomStateChanged: PropTypes.func,
+  /**
+   * Callback that is called when the dominant speaker changes
+   * (when largeRoom is set in connect). participant is missing when nobody
+   * is speaking.
+   *
+   * @param {{roomName, roomSid, participant}}
+   */
+  onDominantSpeakerDidChange: PropTypes.func,
+  /**
+   * Callback that is called when the set of remote video tracks kept active
+   * in large-room mode changes. Previews bound to other tracks are parked.
+   *
+   * @param {{trackSids, dominantSpeakerSid, maxVideoTracks}}
+   */
+  onActiveVideoTracksChanged: PropTypes.func,
+  /**
+   * Callback that is called with the data track compression counters
+   * (after calling getDataTrackCompressionStats)
+   *
+   * @param {{enabled, thresholdBytes, messagesCompressed, messagesSentPlain, messagesDecompressed, decompressionFailures, bytesBeforeCompression, bytesAfterCompression, bytesSaved, ratio}}
+   */
+  onDataTrackCompressionStats: PropTypes.func,
+  /**
+   * Callback that is called while a sendFile or sendLargeString transfer is
+   * under way, on the sending and the receiving side. A completed receive
+   * has filePath set, or data for strings up to 1 MB.
+   *
+   * @param {{transferId, direction, participant, name, bytesTransferred, totalBytes, state, filePath, data, error}}
+   */
+  onDataTrackTransferProgress: PropTypes.func,
+  /**
+   * Callback that is called with the shared data track worker counters
+   * (after calling getDataTrackWorkerStats). The counters cover the worker's
+   * own messages, SDK data track deliveries are not counted.
+   *
+   * @param {{threads, threadsStarted, users, messages, averageQueueLatencyMs, maxQueueLatencyMs}}
+   */
+  onDataTrackWorkerStats: PropTypes.func,
+  /**
+   * Callback that is called once per connect with the time in ms since
+   * connect for each setup step, read from stats polled every 100 ms, and the
+   * selected candidate pair. timedOut is set when no media connection came up
+   * within 20 seconds.
+   *
+   * @param {{transportPolicy, iceServers, connectedMs, firstCandidateMs, firstRelayCandidateMs, iceConnectedMs, connectivityChecksMs, timedOut, selectedCandidatePair: {localCandidateType, remoteCandidateType, protocol, relayProtocol, relayed, roundTripTimeMs}}}
+   */
+  onConnectionSetupTimings: PropTypes.func
 }
 
 const nativeEvents = {
@@ -155,92 +307,313 @@ const nativeEvents = {
   toggleBluetoothHeadset: 11,
   sendString: 12,
   publishVideo: 13,
-  publishAudio: 14
+  publishAudio: 14,
+  getNetworkQualitySummary: 15,
+  setBackgroundVideoPolicy: 16,
+  setAudioOptions: 17,
+  getAudioProcessingStats: 18,
+  measureAudioLatency: 19,
+  startCallQualityMonitor: 20,
+  stopCallQualityMonitor: 21,
+  getRendererPoolStats: 22,
+  startSimulatedRoom: 23,
+  stopSimulatedRoom: 24,
+  setVideoPreprocessing: 25,
+  getPreprocessingStats: 26,
+  getRoomSnapshot: 27,
+  setPinnedParticipants: 28,
+  setDataTrackCompression: 29,
+  getDataTrackCompressionStats: 30,
+  getDataTrackWorkerStats: 31
 }
 
 class CustomTwilioVideoView extends Component {
+  /**
+   * Goes through the same native queue as the other control calls, so a
+   * mute or unpublish issued right after connect applies to the new tracks.
+   * Resolves with the room name once connecting has started and rejects with
+   * E_CONNECT_FAILED when it could not start. onRoomDidConnect and
+   * onRoomDidFailToConnect report the result.
+   */
   connect ({
     roomName,
     accessToken,
     enableAudio = true,
     enableVideo = true,
     enableRemoteAudio = true,
-    enableNetworkQualityReporting = false
+    enableNetworkQualityReporting = false,
+    localNetworkQualityVerbosity = 'minimal',
+    remoteNetworkQualityVerbosity = 'minimal',
+    enableDevicePressureGovernor = false,
+    audioOptions = null,
+    audioDevice = null,
+    enableRoomSnapshot = false,
+    largeRoom = null,
+    iceOptions = null
   }) {
-    this.runCommand(nativeEvents.connectToRoom, [
+    return TwilioVideoCommands.connect({
       roomName,
       accessToken,
       enableAudio,
       enableVideo,
       enableRemoteAudio,
-      enableNetworkQualityReporting
-    ])
+      enableNetworkQualityReporting,
+      localNetworkQualityVerbosity,
+      remoteNetworkQualityVerbosity,
+      enableDevicePressureGovernor,
+      audioOptions,
+      audioDevice,
+      enableRoomSnapshot,
+      largeRoom,
+      iceOptions
+    })
   }
 
   sendString (message) {
-    this.runCommand(nativeEvents.sendString, [
-      message
-    ])
+    return TwilioVideoCommands.sendString(message)
+  }
+
+  /**
+   * Sends a request over the data track and resolves with the first
+   * response, `{ payload, participant }`. Without targetSid any participant
+   * may answer.
+   */
+  request (payload, { targetSid = null, timeoutMs = 10000 } = {}) {
+    return TwilioVideoCommands.request(targetSid, payload, timeoutMs)
+  }
+
+  respond (requestId, payload) {
+    return TwilioVideoCommands.respond(requestId, payload, null)
+  }
+
+  respondWithError (requestId, message) {
+    return TwilioVideoCommands.respond(requestId, null, message)
+  }
+
+  /**
+   * Sends a file over the data track in chunks. Resolves with the transfer
+   * id once everything is sent.
+   */
+  sendFile (filePath, name = null) {
+    return TwilioVideoCommands.sendFile(filePath, name)
+  }
+
+  sendLargeString (data, name = null) {
+    return TwilioVideoCommands.sendLargeString(data, name)
+  }
+
+  /**
+   * Writes the last SDK callbacks to a file for bug reports and resolves with
+   * `{ filePath, entries, recorded }`.
+   */
+  dumpFlightRecorder () {
+    return TwilioVideoCommands.dumpFlightRecorder()
+  }
+
+  /**
+   * Resolves with `{ state, durationMs, audioWarmedUp }` of the warm-up started
+   * by `new TwilioPackage(true)`. state is one of idle, running, done or failed.
+   */
+  getWarmUpStatus () {
+    return TwilioVideoCommands.getWarmUpStatus()
+  }
+
+  /**
+   * Deflates sendString messages of at least thresholdBytes, e.g.
+   * `{ thresholdBytes: 1024, level: 6 }`. Only turn this on when every
+   * participant runs a version that can read compressed messages. Pass null
+   * to turn it off.
+   */
+  setDataTrackCompression (config) {
+    this.runCommand(nativeEvents.setDataTrackCompression, [config || null])
+  }
+
+  getDataTrackCompressionStats () {
+    this.runCommand(nativeEvents.getDataTrackCompressionStats, [])
+  }
+
+  getDataTrackWorkerStats () {
+    this.runCommand(nativeEvents.getDataTrackWorkerStats, [])
   }
 
   publishLocalAudio () {
-    this.runCommand(nativeEvents.publishAudio, [true])
+    return TwilioVideoCommands.publishLocalAudio(true)
   }
 
   publishLocalVideo () {
-    this.runCommand(nativeEvents.publishVideo, [true])
+    return TwilioVideoCommands.publishLocalVideo(true)
   }
 
   unpublishLocalAudio () {
-    this.runCommand(nativeEvents.publishAudio, [false])
+    return TwilioVideoCommands.publishLocalAudio(false)
   }
 
   unpublishLocalVideo () {
-    this.runCommand(nativeEvents.publishVideo, [false])
+    return TwilioVideoCommands.publishLocalVideo(false)
   }
 
   disconnect () {
-    this.runCommand(nativeEvents.disconnect, [])
+    return TwilioVideoCommands.disconnect()
   }
 
   componentWillUnmount () {
-    this.runCommand(nativeEvents.releaseResource, [])
+    TwilioVideoCommands.releaseResource(findNodeHandle(this.refs.videoView))
+      .catch(() => {})
   }
 
-  flipCamera () {
-    this.runCommand(nativeEvents.switchCamera, [])
+  flipCamera ({ freezeLastFrame = false } = {}) {
+    return TwilioVideoCommands.switchCamera(freezeLastFrame)
   }
 
+  /**
+   * Resolves with whether the local video track is enabled afterwards.
+   */
   setLocalVideoEnabled (enabled) {
-    this.runCommand(nativeEvents.toggleVideo, [enabled])
-    return Promise.resolve(enabled)
+    return TwilioVideoCommands.setLocalVideoEnabled(enabled)
   }
 
+  /**
+   * Resolves with whether the local audio track is enabled afterwards.
+   */
   setLocalAudioEnabled (enabled) {
-    this.runCommand(nativeEvents.toggleSound, [enabled])
-    return Promise.resolve(enabled)
+    return TwilioVideoCommands.setLocalAudioEnabled(enabled)
   }
 
   setRemoteAudioEnabled (enabled) {
-    this.runCommand(nativeEvents.toggleRemoteSound, [enabled])
-    return Promise.resolve(enabled)
+    return TwilioVideoCommands.setRemoteAudioEnabled(enabled)
   }
 
   setBluetoothHeadsetConnected (enabled) {
-    this.runCommand(nativeEvents.toggleBluetoothHeadset, [enabled])
-    return Promise.resolve(enabled)
+    return TwilioVideoCommands.setBluetoothHeadsetConnected(enabled)
   }
 
   getStats () {
     this.runCommand(nativeEvents.getStats, [])
   }
 
+  /**
+   * Same report as onStatsReceived, returned as a promise.
+   */
+  fetchStats () {
+    return TwilioVideoCommands.getStats()
+  }
+
+  getRoomSnapshot () {
+    this.runCommand(nativeEvents.getRoomSnapshot, [])
+  }
+
+  fetchRoomSnapshot () {
+    return TwilioVideoCommands.getRoomSnapshot()
+  }
+
+  /**
+   * Keeps the video of the given participant sids active in large-room mode,
+   * ahead of the dominant speaker.
+   */
+  setPinnedParticipants (participantSids) {
+    this.runCommand(nativeEvents.setPinnedParticipants, [participantSids || []])
+  }
+
+  getNetworkQualitySummary () {
+    this.runCommand(nativeEvents.getNetworkQualitySummary, [])
+  }
+
+  /**
+   * Controls what happens to the local video track while the app is in the background:
+   * 'release' (default) unpublishes and releases it, 'pause' keeps it published but
+   * disabled, 'reduced' keeps it live with the video bitrate capped at `bitrateKbps`.
+   */
+  setBackgroundVideoPolicy (policy, bitrateKbps = 0) {
+    this.runCommand(nativeEvents.setBackgroundVideoPolicy, [policy, bitrateKbps])
+  }
+
+  setAudioOptions (audioOptions) {
+    this.runCommand(nativeEvents.setAudioOptions, [audioOptions])
+  }
+
+  getAudioProcessingStats () {
+    this.runCommand(nativeEvents.getAudioProcessingStats, [])
+  }
+
+  /**
+   * Measures the audio round-trip latency before joining a room. The result is
+   * cached per device model, pass `force` to measure again.
+   */
+  measureAudioLatency (force = false) {
+    this.runCommand(nativeEvents.measureAudioLatency, [force])
+  }
+
+  /**
+   * Scores every remote track and the call natively from the stats, on a
+   * MOS-like 1 to 5 scale. `thresholds` are the ascending band boundaries.
+   */
+  startCallQualityMonitor ({ intervalMs = 2000, thresholds = null, targetFps = 15 } = {}) {
+    this.runCommand(nativeEvents.startCallQualityMonitor, [intervalMs, thresholds, targetFps])
+  }
+
+  stopCallQualityMonitor () {
+    this.runCommand(nativeEvents.stopCallQualityMonitor, [])
+  }
+
+  /**
+   * Preview renderers are reused across mounts. A high miss count while
+   * scrolling a grid means more tiles are visible than the pool holds.
+   */
+  getRendererPoolStats () {
+    this.runCommand(nativeEvents.getRendererPoolStats, [])
+  }
+
+  /**
+   * Load tests the native event path with a local stand-in for a room. The
+   * usual room, participant, track and data message callbacks fire for the
+   * simulated participants. Data messages take the data track thread like
+   * real ones and take turns being plain strings, compressed text, RPC
+   * requests and transfer starts. Only available while not connected.
+   */
+  startSimulatedRoom ({
+    participants = 50,
+    joinsPerSecond = 5,
+    churnPerSecond = 1,
+    trackFlapsPerSecond = 2,
+    dataMessagesPerSecond = 20,
+    dataMessageSize = 64,
+    durationMs = 30000
+  } = {}) {
+    this.runCommand(nativeEvents.startSimulatedRoom, [{
+      participants,
+      joinsPerSecond,
+      churnPerSecond,
+      trackFlapsPerSecond,
+      dataMessagesPerSecond,
+      dataMessageSize,
+      durationMs
+    }])
+  }
+
+  stopSimulatedRoom () {
+    this.runCommand(nativeEvents.stopSimulatedRoom, [])
+  }
+
+  /**
+   * Processes the local video before it is sent. Regions are normalized to
+   * the frame, e.g. `{ crop: { x: 0.1, y: 0, width: 0.8, height: 1 } }` or
+   * `{ blur: { radius: 8, sharpRegion: { x: 0.25, y: 0.1, width: 0.5, height: 0.8 } } }`.
+   * Pass null to turn preprocessing off.
+   */
+  setVideoPreprocessing (config) {
+    this.runCommand(nativeEvents.setVideoPreprocessing, [config || null])
+  }
+
+  getPreprocessingStats () {
+    this.runCommand(nativeEvents.getPreprocessingStats, [])
+  }
+
   disableOpenSLES () {
     this.runCommand(nativeEvents.disableOpenSLES, [])
   }
 
   toggleSoundSetup (speaker) {
-    this.runCommand(nativeEvents.toggleSoundSetup, [speaker])
+    return TwilioVideoCommands.toggleSoundSetup(speaker)
   }
 
   runCommand (event, args) {
@@ -265,9 +638,12 @@ class CustomTwilioVideoView extends Component {
       'onRoomDidConnect',
       'onRoomDidFailToConnect',
       'onRoomDidDisconnect',
+      'onRoomIsReconnecting',
+      'onRoomDidReconnect',
       'onParticipantAddedDataTrack',
       'onParticipantRemovedDataTrack',
       'onDataTrackMessageReceived',
+      'onDataTrackRequestReceived',
       'onParticipantAddedVideoTrack',
       'onParticipantRemovedVideoTrack',
       'onParticipantAddedAudioTrack',
@@ -279,7 +655,23 @@ class CustomTwilioVideoView extends Component {
       'onParticipantEnabledAudioTrack',
       'onParticipantDisabledAudioTrack',
       'onStatsReceived',
-      'onNetworkQualityLevelsChanged'
+      'onNetworkQualityLevelsChanged',
+      'onNetworkQualitySummary',
+      'onDevicePressureChanged',
+      'onAudioProcessingStats',
+      'onAudioLatencyMeasured',
+      'onCallQualityChanged',
+      'onRendererPoolStats',
+      'onSimulationReport',
+      'onPreprocessingStats',
+      'onRoomSnapshot',
+      'onRoomStateChanged',
+      'onDominantSpeakerDidChange',
+      'onActiveVideoTracksChanged',
+      'onDataTrackCompressionStats',
+      'onDataTrackTransferProgress',
+      'onDataTrackWorkerStats',
+      'onConnectionSetupTimings'
     ].reduce((wrappedEvents, eventName) => {
       if (this.props[eventName]) {
         return {
@@ -6,10 +6,15 @@
  */
 
 import { requireNativeComponent, View } from 'react-native'
+import PropTypes from 'prop-types'
 import React from 'react'
 
 const propTypes = {
-  ...View.propTypes
+  ...View.propTypes,
+  /**
+   * Caps the render frame rate of the preview, 0 renders every frame.
+   */
+  maxFps: PropTypes.number
 }
 
 class TwilioVideoPreview extends React.Component {
@@ -19,6 +19,11 @@ class TwilioRemotePreview extends React.Component {
     }),
     onFrameDimensionsChanged: PropTypes.func,
     trackSid: PropTypes.string,
+    /**
+     * Caps the render frame rate of the tile, 0 renders every frame. Use a
+     * lower value for thumbnails and secondary tiles.
+     */
+    maxFps: PropTypes.number,
     renderToHardwareTextureAndroid: PropTypes.string,
     onLayout: PropTypes.string,
     accessibilityLiveRegion: PropTypes.string,